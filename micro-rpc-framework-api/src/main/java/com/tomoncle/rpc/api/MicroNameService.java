@@ -1,14 +1,16 @@
 package com.tomoncle.rpc.api;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.net.URI;
 import java.util.Collection;
+import java.util.List;
 
 /**
  * 注册中心
  * @author tomoncle
  */
-public interface MicroNameService {
+public interface MicroNameService extends Closeable {
     /**
      * 所有支持的协议
      */
@@ -26,10 +28,41 @@ public interface MicroNameService {
      */
     void registerService(String serviceName, URI uri) throws IOException;
 
+    /**
+     * 注销服务
+     * @param serviceName 服务名称
+     * @param uri 服务地址
+     */
+    void unregisterService(String serviceName, URI uri) throws IOException;
+
     /**
      * 查询服务地址
      * @param serviceName 服务名称
      * @return 服务地址
      */
     URI lookupService(String serviceName) throws IOException;
+
+    /**
+     * 查询服务的所有地址
+     * @param serviceName 服务名称
+     * @return 服务地址列表，没有服务提供者时返回空列表
+     */
+    List<URI> lookupAll(String serviceName) throws IOException;
+
+    /**
+     * 订阅服务提供者的变化
+     * <p>
+     * 订阅时先把当前所有的提供者作为新增的地址通知一次，之后只通知增量的变化。
+     * @param serviceName 服务名称
+     * @param listener 监听器
+     * @return 关闭后取消订阅
+     */
+    Closeable subscribe(String serviceName, NameServiceListener listener) throws IOException;
+
+    /**
+     * 关闭注册中心的连接
+     */
+    @Override
+    default void close() {
+    }
 }
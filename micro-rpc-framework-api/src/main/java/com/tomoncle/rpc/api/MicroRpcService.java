@@ -5,6 +5,10 @@ import com.tomoncle.rpc.api.spi.ServiceLoadSupport;
 import java.io.Closeable;
 import java.net.URI;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * RPC框架对外提供的服务接口
@@ -22,6 +26,62 @@ public interface MicroRpcService extends Closeable {
      */
     <T> T getRemoteService(URI uri, Class<T> serviceClass);
 
+    /**
+     * 客户端获取远程服务的引用，返回的serviceStub实例持有该服务的所有提供者，每次调用时做负载均衡
+     *
+     * @param nameService  注册中心，用于查询服务的所有提供者
+     * @param serviceClass 服务的接口类的Class，服务名称为它的全类名
+     * @param <T>          服务接口的类型
+     * @return 远程服务引用
+     */
+    <T> T getRemoteService(MicroNameService nameService, Class<T> serviceClass);
+
+    /**
+     * 客户端预热：在接收流量之前，查询每个服务的所有提供者并建立连接，生成服务的 stub，
+     * 之后的第一个请求不再需要等待 DNS 解析、建立连接和生成 stub
+     *
+     * @param nameService    注册中心，用于查询服务的所有提供者
+     * @param serviceClasses 需要预热的服务接口
+     * @return 服务接口 -> 远程服务引用，和 {@link #getRemoteService(MicroNameService, Class)} 返回的相同
+     */
+    default Map<Class<?>, Object> warmUp(MicroNameService nameService, Collection<Class<?>> serviceClasses) {
+        Map<Class<?>, Object> services = new LinkedHashMap<>();
+        for (Class<?> serviceClass : serviceClasses) {
+            services.put(serviceClass, getRemoteService(nameService, serviceClass));
+        }
+        return services;
+    }
+
+    /**
+     * 客户端预热一个服务，然后用它发送若干次预热调用，让调用路径上的代码在接收流量之前被 JIT 编译
+     * <p>
+     * 个别预热调用失败不影响预热，全部失败时抛出最后一次调用的异常。
+     *
+     * @param nameService  注册中心，用于查询服务的所有提供者
+     * @param serviceClass 服务的接口类的Class
+     * @param warmUpCall   一次预热调用，例如 {@code helloService -> helloService.sayHello("warm-up")}
+     * @param calls        预热调用的次数
+     * @param <T>          服务接口的类型
+     * @return 远程服务引用
+     */
+    default <T> T warmUp(MicroNameService nameService, Class<T> serviceClass, Consumer<? super T> warmUpCall, int calls) {
+        T service = serviceClass.cast(warmUp(nameService, Collections.<Class<?>>singletonList(serviceClass)).get(serviceClass));
+        RuntimeException lastFailure = null;
+        int failures = 0;
+        for (int i = 0; i < calls; i++) {
+            try {
+                warmUpCall.accept(service);
+            } catch (RuntimeException e) {
+                lastFailure = e;
+                failures++;
+            }
+        }
+        if (calls > 0 && failures == calls) {
+            throw lastFailure;
+        }
+        return service;
+    }
+
     /**
      * 服务端注册服务的实现实例, 并返回注册的服务地址
      *
@@ -0,0 +1,21 @@
+package com.tomoncle.rpc.api;
+
+import java.net.URI;
+import java.util.List;
+
+/**
+ * 服务提供者变化的监听器
+ *
+ * @author tomoncle
+ */
+@FunctionalInterface
+public interface NameServiceListener {
+    /**
+     * 服务的提供者发生了变化，只包含增量部分
+     *
+     * @param serviceName 服务名称
+     * @param added       新增的服务地址
+     * @param removed     下线的服务地址
+     */
+    void onChange(String serviceName, List<URI> added, List<URI> removed);
+}
@@ -0,0 +1,87 @@
+package com.tomoncle.rpc.api;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 当前线程的 RPC 调用上下文，保存调用的截止时间
+ * <p>
+ * 服务端在调用服务提供者之前设置客户端传来的截止时间，服务提供者可以用 {@link #getRemainingMillis()} 查看剩余的时间，
+ * 在服务提供者中发起的下游调用会自动继承这个截止时间。
+ * 调用方也可以用 {@link #withTimeout(long)} 为一段代码中的所有调用设置超时时间：
+ * <pre>
+ * try (RpcContext.Scope ignored = RpcContext.withTimeout(200)) {
+ *     helloService.sayHello("world");
+ * }
+ * </pre>
+ *
+ * @author tomoncle
+ */
+public final class RpcContext {
+    private static final ThreadLocal<Long/*System.nanoTime()*/> deadline = new ThreadLocal<>();
+
+    private RpcContext() {
+    }
+
+    /**
+     * @return 当前线程是否有截止时间
+     */
+    public static boolean hasDeadline() {
+        return null != deadline.get();
+    }
+
+    /**
+     * @return 截止时间，和 {@link System#nanoTime()} 比较，没有截止时间时返回 null
+     */
+    public static Long getDeadlineNanos() {
+        return deadline.get();
+    }
+
+    /**
+     * @return 剩余的时间，单位毫秒，已经过期返回 0，没有截止时间返回 {@link Long#MAX_VALUE}
+     */
+    public static long getRemainingMillis() {
+        Long deadlineNanos = deadline.get();
+        if (null == deadlineNanos) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0L, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()));
+    }
+
+    /**
+     * 设置超时时间，已经有更早的截止时间时保持不变
+     *
+     * @param timeoutMillis 超时时间，单位毫秒
+     * @return 关闭后恢复原来的截止时间
+     */
+    public static Scope withTimeout(long timeoutMillis) {
+        return withDeadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+    }
+
+    /**
+     * 设置截止时间，已经有更早的截止时间时保持不变
+     *
+     * @param deadlineNanos 截止时间，和 {@link System#nanoTime()} 比较
+     * @return 关闭后恢复原来的截止时间
+     */
+    public static Scope withDeadline(long deadlineNanos) {
+        Long previous = deadline.get();
+        if (null == previous || deadlineNanos - previous < 0) {
+            deadline.set(deadlineNanos);
+        }
+        return () -> {
+            if (null == previous) {
+                deadline.remove();
+            } else {
+                deadline.set(previous);
+            }
+        };
+    }
+
+    /**
+     * 截止时间的作用范围
+     */
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
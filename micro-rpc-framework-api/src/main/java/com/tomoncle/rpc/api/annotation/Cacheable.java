@@ -0,0 +1,41 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.api.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 标记服务接口中的幂等方法，客户端会缓存它的调用结果
+ * <p>
+ * 只适用于结果仅由参数决定的方法（例如配置、字典查询），
+ * 命中缓存时不会构建请求命令，也不会发生网络调用。
+ *
+ * @author tomoncle
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Cacheable {
+    /**
+     * 缓存结果的存活时间，单位毫秒
+     */
+    long ttlMillis() default 60_000L;
+
+    /**
+     * 该方法缓存占用内存的上限（参数与结果的字节数），单位字节
+     */
+    long maxBytes() default 16L * 1024 * 1024;
+}
@@ -0,0 +1,37 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.api.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 标记服务接口中的幂等方法，客户端对慢请求发送对冲请求（hedged request）
+ * <p>
+ * 请求发出后超过对冲延迟还没有响应，就把相同的请求再发给另一个提供者，使用先返回的响应，
+ * 另一个响应直接丢弃。这样单个提供者的 GC 停顿不会拖慢调用方的长尾延迟。
+ * 对冲请求的总量受全局预算限制，不会超过正常请求的一定比例。
+ *
+ * @author tomoncle
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Hedged {
+    /**
+     * 对冲延迟，单位毫秒；0 表示使用该方法最近响应时间的 p95
+     */
+    long delayMillis() default 0L;
+}
@@ -18,4 +18,14 @@ package com.tomoncle.rpc.api.spi;
  * @author tomoncle
  */
 class ServiceLoadException extends RuntimeException {
+    ServiceLoadException() {
+    }
+
+    ServiceLoadException(String message) {
+        super(message);
+    }
+
+    ServiceLoadException(String message, Throwable cause) {
+        super(message, cause);
+    }
 }
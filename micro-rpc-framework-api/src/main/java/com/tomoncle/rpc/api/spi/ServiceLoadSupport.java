@@ -13,12 +13,19 @@
  */
 package com.tomoncle.rpc.api.spi;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.ServiceLoader;
-import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * spi 类加载器
@@ -33,32 +40,178 @@ import java.util.stream.StreamSupport;
  *
  * 作用相当于 spring 的 ioc
  *
+ * 为了加快启动，编译时由 {@link SpiIndexProcessor} 把模块中所有的 META-INF/services/ 配置文件合并成一个索引文件
+ * （{@link SpiIndexProcessor#INDEX}），第一次加载时读取 CLASSPATH 中所有的索引文件。
+ * 查找一个接口时仍然按 CLASSPATH 的顺序列出它的所有配置文件，但只有所在的 jar（或目录）的索引中没有这个接口时
+ * （例如没有经过注解处理器编译的 jar），才读取配置文件的内容，否则使用同一个 jar 中索引的内容，
+ * 结果和 {@link java.util.ServiceLoader} 完全相同。每个接口的实现类只查找一次，之后直接创建实例，不需要加锁。
+ * 设置系统属性 micro.rpc.spi.index=false 可以不使用索引。
+ *
  * @author tomoncle
  */
 public final class ServiceLoadSupport {
+    private static final String SERVICES = "META-INF/services/";
+    private static final boolean USE_INDEX = !"false".equalsIgnoreCase(System.getProperty("micro.rpc.spi.index"));
+    // 接口 -> 实现类，按配置文件中的顺序
+    private static final Map<Class<?>, List<Class<?>>> providers = new ConcurrentHashMap<>();
     private final static Map<String, Object> singletonServices = new HashMap<>();
+    // jar（或目录）的根路径 -> 它的索引：接口 -> 实现类
+    private static volatile Map<String, Map<String, List<String>>> index;
+
+    private ServiceLoadSupport() {
+    }
+
+    public static <S> S load(Class<S> service) {
+        List<Class<?>> classes = providers(service);
+        if (classes.isEmpty()) {
+            throw new ServiceLoadException("No provider of " + service.getName());
+        }
+        return newInstance(service, classes.get(0));
+    }
+
+    public static <S> Collection<S> loadAll(Class<S> service) {
+        List<Class<?>> classes = providers(service);
+        List<S> services = new ArrayList<>(classes.size());
+        for (Class<?> clazz : classes) {
+            services.add(newInstance(service, clazz));
+        }
+        return services;
+    }
 
-    public synchronized static <S> S load(Class<S> service) {
-        return StreamSupport.
-                stream(ServiceLoader.load(service).spliterator(), false)
-                .map(ServiceLoadSupport::singletonFilter)
-                .findFirst().orElseThrow(ServiceLoadException::new);
+    private static List<Class<?>> providers(Class<?> service) {
+        List<Class<?>> classes = providers.get(service);
+        if (null == classes) {
+            // 并发加载同一个接口时可能重复查找，结果是一样的
+            classes = findProviders(service);
+            List<Class<?>> existing = providers.putIfAbsent(service, classes);
+            if (null != existing) {
+                classes = existing;
+            }
+        }
+        return classes;
     }
 
-    public synchronized static <S> Collection<S> loadAll(Class<S> service) {
-        return StreamSupport.
-                stream(ServiceLoader.load(service).spliterator(), false)
-                .map(ServiceLoadSupport::singletonFilter).collect(Collectors.toList());
+    private static List<Class<?>> findProviders(Class<?> service) {
+        ClassLoader classLoader = classLoader();
+        Set<String> classNames = readServiceFiles(classLoader, SERVICES + service.getName(), index(classLoader));
+        List<Class<?>> classes = new ArrayList<>(classNames.size());
+        for (String className : classNames) {
+            try {
+                Class<?> clazz = Class.forName(className, false, classLoader);
+                if (!service.isAssignableFrom(clazz)) {
+                    throw new ServiceLoadException(className + " is not a subtype of " + service.getName());
+                }
+                classes.add(clazz);
+            } catch (ClassNotFoundException e) {
+                throw new ServiceLoadException("Provider " + className + " of " + service.getName() + " not found", e);
+            }
+        }
+        return Collections.unmodifiableList(classes);
     }
 
     @SuppressWarnings("unchecked")
-    private static <S> S singletonFilter(S service) {
-        if (service.getClass().isAnnotationPresent(Singleton.class)) {
-            String className = service.getClass().getCanonicalName();
-            Object singletonInstance = singletonServices.putIfAbsent(className, service);
-            return singletonInstance == null ? service : (S) singletonInstance;
-        } else {
-            return service;
+    private static <S> S newInstance(Class<S> service, Class<?> clazz) {
+        if (!clazz.isAnnotationPresent(Singleton.class)) {
+            return service.cast(instantiate(clazz));
+        }
+        // 单例的构造函数中可能再加载其他单例，用可重入的锁
+        synchronized (singletonServices) {
+            Object singletonInstance = singletonServices.get(clazz.getCanonicalName());
+            if (null == singletonInstance) {
+                singletonInstance = instantiate(clazz);
+                singletonServices.put(clazz.getCanonicalName(), singletonInstance);
+            }
+            return (S) singletonInstance;
+        }
+    }
+
+    private static Object instantiate(Class<?> clazz) {
+        try {
+            return clazz.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new ServiceLoadException("Create instance of " + clazz.getName() + " failed", e);
+        }
+    }
+
+    private static Map<String, Map<String, List<String>>> index(ClassLoader classLoader) {
+        Map<String, Map<String, List<String>>> index = ServiceLoadSupport.index;
+        if (null == index) {
+            index = USE_INDEX ? readIndex(classLoader) : Collections.emptyMap();
+            ServiceLoadSupport.index = index;
+        }
+        return index;
+    }
+
+    /**
+     * 读取 CLASSPATH 中所有的索引文件，每一行是 "接口的全类名=实现类的全类名,实现类的全类名"，
+     * 每个索引只代表它所在的 jar（或目录）中的配置文件
+     */
+    private static Map<String, Map<String, List<String>>> readIndex(ClassLoader classLoader) {
+        Map<String, Map<String, List<String>>> index = new HashMap<>();
+        try {
+            Enumeration<URL> resources = classLoader.getResources(SpiIndexProcessor.INDEX);
+            while (resources.hasMoreElements()) {
+                URL url = resources.nextElement();
+                Map<String, List<String>> services = index.computeIfAbsent(root(url, SpiIndexProcessor.INDEX), key -> new HashMap<>());
+                try (InputStream inputStream = url.openStream()) {
+                    for (String line : SpiIndexProcessor.readLines(inputStream)) {
+                        int separator = line.indexOf('=');
+                        if (separator <= 0) {
+                            continue;
+                        }
+                        List<String> classNames = services.computeIfAbsent(line.substring(0, separator).trim(), key -> new ArrayList<>());
+                        for (String className : line.substring(separator + 1).split(",")) {
+                            if (!className.trim().isEmpty()) {
+                                classNames.add(className.trim());
+                            }
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new ServiceLoadException("Read " + SpiIndexProcessor.INDEX + " failed", e);
         }
+        return index;
+    }
+
+    /**
+     * 按 CLASSPATH 的顺序读取所有同名的配置文件，去掉注释、空行和重复的类名，和 {@link java.util.ServiceLoader} 的格式相同；
+     * 配置文件所在的 jar（或目录）的索引中有这个接口时，直接使用索引的内容，不再读取配置文件
+     */
+    private static Set<String> readServiceFiles(ClassLoader classLoader, String name,
+                                                Map<String, Map<String, List<String>>> index) {
+        String service = name.substring(SERVICES.length());
+        Set<String> lines = new LinkedHashSet<>();
+        try {
+            Enumeration<URL> resources = classLoader.getResources(name);
+            while (resources.hasMoreElements()) {
+                URL url = resources.nextElement();
+                Map<String, List<String>> indexed = index.get(root(url, name));
+                List<String> classNames = null == indexed ? null : indexed.get(service);
+                if (null != classNames) {
+                    lines.addAll(classNames);
+                    continue;
+                }
+                try (InputStream inputStream = url.openStream()) {
+                    lines.addAll(SpiIndexProcessor.readLines(inputStream));
+                }
+            }
+        } catch (IOException e) {
+            throw new ServiceLoadException("Read " + name + " failed", e);
+        }
+        return lines;
+    }
+
+    /**
+     * @return 资源所在的 jar（或目录）的根路径
+     */
+    private static String root(URL url, String name) {
+        String path = url.toString();
+        return path.endsWith(name) ? path.substring(0, path.length() - name.length()) : path;
+    }
+
+    private static ClassLoader classLoader() {
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        return null == classLoader ? ServiceLoadSupport.class.getClassLoader() : classLoader;
     }
 }
@@ -0,0 +1,126 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.api.spi;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 编译时生成 SPI 索引的注解处理器
+ * <p>
+ * 依赖 micro-rpc-framework-api 的模块编译时自动执行（在 META-INF/services/javax.annotation.processing.Processor 中注册），
+ * 编译结束时把输出目录中 META-INF/services/ 下的所有配置文件合并成一个索引文件 {@link #INDEX}，
+ * 每一行是 "接口的全类名=实现类的全类名,实现类的全类名"。
+ * 运行时 {@link ServiceLoadSupport} 只需要读取索引文件，不需要为每个接口查找一遍 CLASSPATH。
+ * <p>
+ * 配置文件由 maven-resources-plugin 在编译之前复制到输出目录，模块中没有配置文件时不生成索引。
+ * 不处理任何注解，也不影响其他注解处理器。
+ *
+ * @author tomoncle
+ */
+@SupportedAnnotationTypes("*")
+public class SpiIndexProcessor extends AbstractProcessor {
+    /**
+     * 索引文件在 CLASSPATH 中的路径
+     */
+    public static final String INDEX = "META-INF/micro-rpc/spi.index";
+    private static final String SERVICES = "META-INF/services";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            try {
+                writeIndex();
+            } catch (IOException | RuntimeException e) {
+                // 生成索引失败不影响编译，运行时读取 META-INF/services/ 下的配置文件
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "生成 SPI 索引失败: " + e);
+            }
+        }
+        return false;
+    }
+
+    private void writeIndex() throws IOException {
+        // Filer 不能直接获取目录，通过目录中的一个文件（不需要存在）找到输出目录中的 META-INF/services/
+        FileObject probe = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", SERVICES + "/.index");
+        File services = new File(probe.toUri()).getParentFile();
+        // 没有指定输出目录（javac -d）时 javac 会忽略文件名中的目录，把文件输出到当前目录，这时不生成索引
+        if (null == services || !services.getPath().replace(File.separatorChar, '/').endsWith(SERVICES)) {
+            return;
+        }
+        File[] files = services.listFiles(File::isFile);
+        if (null == files || files.length == 0) {
+            return;
+        }
+        Arrays.sort(files);
+        List<String> lines = new ArrayList<>(files.length);
+        for (File file : files) {
+            try (InputStream inputStream = new FileInputStream(file)) {
+                List<String> classNames = readLines(inputStream);
+                if (!classNames.isEmpty()) {
+                    lines.add(file.getName() + "=" + String.join(",", classNames));
+                }
+            }
+        }
+        FileObject index = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", INDEX);
+        try (Writer writer = index.openWriter()) {
+            for (String line : lines) {
+                writer.write(line);
+                writer.write('\n');
+            }
+        }
+    }
+
+    /**
+     * 按 {@link java.util.ServiceLoader} 的格式读取配置文件：去掉 # 之后的注释和空白，忽略空行
+     */
+    static List<String> readLines(InputStream inputStream) throws IOException {
+        List<String> lines = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+        String line;
+        while (null != (line = reader.readLine())) {
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            line = line.trim();
+            if (!line.isEmpty()) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,79 @@
+package com.tomoncle.rpc.benchmark;
+
+import com.tomoncle.rpc.core.transport.RequestHandlerRegistry;
+import com.tomoncle.rpc.core.transport.TransportServer;
+import com.tomoncle.rpc.core.transport.netty.NettyTransportServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 服务端建立连接的速率：多个线程不停地建立连接、立即关闭，模拟发布后大量客户端同时重连
+ * <p>
+ * acceptors 是服务端接受连接的线程数（见 NettyTransportServer 的 micro.rpc.server.acceptors），
+ * 大于 1 时用 SO_REUSEPORT 绑定多个监听 channel，需要 epoll。
+ * 客户端关闭连接时发送 RST（SO_LINGER 为 0），不留下 TIME_WAIT 状态的连接，否则很快会耗尽本机的临时端口。
+ * 接受连接的线程数超过 CPU 核数时没有意义，在核数较多的机器上运行；
+ * 核数太少时服务端的 IO 线程来不及关闭已经重置的连接，可能超过打开文件数的限制（ulimit -n），
+ * 出现 "Too many open files"。
+ * <p>
+ * 服务端固定监听 9999 端口，运行前确认端口没有被占用。
+ * <p>
+ * 运行：java -jar micro-rpc-framework-benchmarks-*-jar-with-dependencies.jar AcceptBenchmark
+ *
+ * @author tomoncle
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AcceptBenchmark {
+    private static final int PORT = 9999;
+
+    @Param({"1", "2", "4"})
+    private int acceptors;
+
+    private TransportServer server;
+    private InetSocketAddress address;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        // 每组参数在单独的 JVM 中运行，创建服务端之前设置
+        System.setProperty("micro.rpc.server.acceptors", String.valueOf(acceptors));
+        address = new InetSocketAddress("localhost", PORT);
+        server = new NettyTransportServer();
+        server.start(RequestHandlerRegistry.getInstance(), address);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Benchmark
+    @Threads(4)
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public void connect() throws IOException {
+        try (Socket socket = new Socket()) {
+            socket.setSoLinger(true, 0);
+            socket.connect(address);
+        }
+    }
+}
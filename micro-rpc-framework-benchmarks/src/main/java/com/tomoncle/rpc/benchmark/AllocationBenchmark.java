@@ -0,0 +1,95 @@
+package com.tomoncle.rpc.benchmark;
+
+import com.tomoncle.rpc.api.spi.ServiceLoadSupport;
+import com.tomoncle.rpc.core.client.ServiceTypes;
+import com.tomoncle.rpc.core.client.stubs.RpcRequest;
+import com.tomoncle.rpc.core.serialize.SerializeSupport;
+import com.tomoncle.rpc.core.server.ServiceProviderRegistry;
+import com.tomoncle.rpc.core.transport.AdmissionController;
+import com.tomoncle.rpc.core.transport.RequestHandlerRegistry;
+import com.tomoncle.rpc.core.transport.command.Command;
+import com.tomoncle.rpc.core.transport.command.Header;
+import com.tomoncle.rpc.core.transport.netty.RequestInvocationHandler;
+import com.tomoncle.rpc.core.transport.netty.codec.request.RequestDecoder;
+import com.tomoncle.rpc.core.transport.netty.codec.request.RequestEncoder;
+import com.tomoncle.rpc.core.transport.netty.codec.response.ResponseDecoder;
+import com.tomoncle.rpc.core.transport.netty.codec.response.ResponseEncoder;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一次 RPC 在 Netty 请求路径上分配的内存（字节/次），用 -prof gc 的 gc.alloc.rate.norm 查看
+ * <p>
+ * 客户端的编解码器和服务端的 pipeline（RequestDecoder、ResponseEncoder、RequestInvocationHandler）
+ * 分别装在 {@link EmbeddedChannel} 中，请求编码后交给服务端，服务端在当前线程中处理（业务线程池换成直接执行），
+ * 响应编码后再交给客户端解码。包括编解码、请求的反序列化、服务端的分发和调用、响应的序列化，
+ * 不包括网络 IO、客户端 Stub 和等待响应的 Future；全部在一个线程中执行，结果是稳定的，
+ * 经过本机网络的测试（LoopbackBenchmark）中 IO 线程的分配会混在一起，波动很大。
+ * <p>
+ * pooled 是服务端是否复用解码得到的请求命令（见 RequestDecoder 的 micro.rpc.server.pooledRequests）。
+ * <p>
+ * 运行：java -jar micro-rpc-framework-benchmarks-*-jar-with-dependencies.jar AllocationBenchmark -prof gc
+ *
+ * @author tomoncle
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AllocationBenchmark {
+    @Param({"true", "false"})
+    private String pooled;
+
+    @Param({"64", "1024"})
+    private int payloadSize;
+
+    private EmbeddedChannel client;
+    private EmbeddedChannel server;
+    private Command request;
+
+    @Setup
+    public void setup() {
+        // 每组参数在单独的 JVM 中运行，加载 RequestDecoder 之前设置
+        System.setProperty("micro.rpc.server.pooledRequests", pooled);
+        ServiceLoadSupport.load(ServiceProviderRegistry.class).addServiceProvider(EchoService.class, new EchoServiceImpl());
+        client = new EmbeddedChannel(new RequestEncoder(), new ResponseDecoder());
+        server = new EmbeddedChannel(new RequestDecoder(), new ResponseEncoder(),
+                new RequestInvocationHandler(RequestHandlerRegistry.getInstance(), new AdmissionController(), Runnable::run));
+        byte[] payload = SerializeSupport.serialize(new RpcRequest(EchoService.class.getCanonicalName(), "echo",
+                SerializeSupport.serialize(Payloads.string(payloadSize))));
+        request = new Command(new Header.Builder().setRequestId(1).setType(ServiceTypes.TYPE_RPC_REQUEST)
+                .setVersion(Header.VERSION_DEADLINE).setTimeoutMillis(0).build(), payload);
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.finishAndReleaseAll();
+        server.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public Command call() {
+        client.writeOutbound(request);
+        ByteBuf requestBytes = client.readOutbound();
+        server.writeInbound(requestBytes);
+        ByteBuf responseBytes = server.readOutbound();
+        client.writeInbound(responseBytes);
+        return client.readInbound();
+    }
+}
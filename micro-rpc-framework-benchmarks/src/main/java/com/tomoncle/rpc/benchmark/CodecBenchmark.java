@@ -0,0 +1,93 @@
+package com.tomoncle.rpc.benchmark;
+
+import com.tomoncle.rpc.core.client.ServiceTypes;
+import com.tomoncle.rpc.core.transport.command.Command;
+import com.tomoncle.rpc.core.transport.command.Header;
+import com.tomoncle.rpc.core.transport.command.ResponseHeader;
+import com.tomoncle.rpc.core.transport.netty.codec.request.RequestDecoder;
+import com.tomoncle.rpc.core.transport.netty.codec.request.RequestEncoder;
+import com.tomoncle.rpc.core.transport.netty.codec.response.ResponseDecoder;
+import com.tomoncle.rpc.core.transport.netty.codec.response.ResponseEncoder;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 请求和响应经过 {@link RequestEncoder}/{@link RequestDecoder}、{@link ResponseEncoder}/{@link ResponseDecoder}
+ * 编码再解码的开销
+ * <p>
+ * 编码器和解码器分别装在两个 {@link EmbeddedChannel} 中，编码得到的 ByteBuf 直接交给解码器，
+ * 测量的是编解码器本身（包括 ByteBuf 的分配和释放），不包括网络 IO。
+ * <p>
+ * 运行：java -jar micro-rpc-framework-benchmarks-*-jar-with-dependencies.jar CodecBenchmark -prof gc
+ *
+ * @author tomoncle
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+    @Param({"64", "1024", "16384"})
+    private int payloadSize;
+
+    private EmbeddedChannel requestEncoder;
+    private EmbeddedChannel requestDecoder;
+    private EmbeddedChannel responseEncoder;
+    private EmbeddedChannel responseDecoder;
+    private Command request;
+    private Command response;
+
+    @Setup
+    public void setup() {
+        requestEncoder = new EmbeddedChannel(new RequestEncoder());
+        requestDecoder = new EmbeddedChannel(new RequestDecoder());
+        responseEncoder = new EmbeddedChannel(new ResponseEncoder());
+        responseDecoder = new EmbeddedChannel(new ResponseDecoder());
+        request = new Command(new Header.Builder().setRequestId(1).setType(ServiceTypes.TYPE_RPC_REQUEST)
+                .setVersion(Header.VERSION_DEADLINE).setTimeoutMillis(1000).build(), new byte[payloadSize]);
+        response = new Command(new ResponseHeader.Builder().setHeader(request.getHeader()).build(),
+                new byte[payloadSize]);
+    }
+
+    @TearDown
+    public void tearDown() {
+        requestEncoder.finishAndReleaseAll();
+        requestDecoder.finishAndReleaseAll();
+        responseEncoder.finishAndReleaseAll();
+        responseDecoder.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public Command request() {
+        return roundTrip(requestEncoder, requestDecoder, request);
+    }
+
+    @Benchmark
+    public Command response() {
+        return roundTrip(responseEncoder, responseDecoder, response);
+    }
+
+    private static Command roundTrip(EmbeddedChannel encoder, EmbeddedChannel decoder, Command command) {
+        encoder.writeOutbound(command);
+        ByteBuf byteBuf = encoder.readOutbound();
+        // 解码器读完之后释放 ByteBuf
+        decoder.writeInbound(byteBuf);
+        return decoder.readInbound();
+    }
+}
@@ -0,0 +1,59 @@
+package com.tomoncle.rpc.benchmark;
+
+import com.tomoncle.rpc.core.client.ServiceTypes;
+import com.tomoncle.rpc.core.client.stubs.RpcRequest;
+import com.tomoncle.rpc.core.serialize.SerializeSupport;
+import com.tomoncle.rpc.core.server.RpcRequestHandler;
+import com.tomoncle.rpc.core.transport.command.Command;
+import com.tomoncle.rpc.core.transport.command.Header;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 服务端 {@link RpcRequestHandler} 处理一个请求的开销：
+ * 反序列化 RpcRequest、查找服务提供者、拦截器链、反射调用、序列化结果、记录指标和访问日志
+ * <p>
+ * 运行：java -jar micro-rpc-framework-benchmarks-*-jar-with-dependencies.jar DispatchBenchmark -prof gc
+ *
+ * @author tomoncle
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+    @Param({"64", "1024", "16384"})
+    private int payloadSize;
+
+    private RpcRequestHandler handler;
+    private Command request;
+
+    @Setup
+    public void setup() {
+        handler = new RpcRequestHandler();
+        handler.addServiceProvider(EchoService.class, new EchoServiceImpl());
+        RpcRequest rpcRequest = new RpcRequest(EchoService.class.getCanonicalName(), "echo",
+                SerializeSupport.serialize(Payloads.string(payloadSize)));
+        request = new Command(new Header.Builder().setRequestId(1).setType(ServiceTypes.TYPE_RPC_REQUEST)
+                .setVersion(Header.VERSION_DEADLINE).setTimeoutMillis(1000).build(),
+                SerializeSupport.serialize(rpcRequest));
+    }
+
+    @Benchmark
+    public Command handle() {
+        return handler.handle(request);
+    }
+}
@@ -0,0 +1,10 @@
+package com.tomoncle.rpc.benchmark;
+
+/**
+ * 基准测试使用的服务接口
+ *
+ * @author tomoncle
+ */
+public interface EchoService {
+    String echo(String message);
+}
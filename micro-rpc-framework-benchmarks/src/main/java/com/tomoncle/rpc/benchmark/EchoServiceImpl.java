@@ -0,0 +1,15 @@
+package com.tomoncle.rpc.benchmark;
+
+/**
+ * 基准测试使用的服务提供者，原样返回参数
+ * <p>
+ * 服务端通过反射调用服务提供者，这个类必须是 public 的
+ *
+ * @author tomoncle
+ */
+public class EchoServiceImpl implements EchoService {
+    @Override
+    public String echo(String message) {
+        return message;
+    }
+}
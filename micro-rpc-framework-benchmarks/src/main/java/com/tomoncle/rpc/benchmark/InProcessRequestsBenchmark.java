@@ -0,0 +1,89 @@
+package com.tomoncle.rpc.benchmark;
+
+import com.tomoncle.rpc.core.transport.InProcessRequests;
+import com.tomoncle.rpc.core.transport.ResponseFuture;
+import com.tomoncle.rpc.core.transport.command.Command;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 客户端 {@link InProcessRequests} 存入、删除一个在途请求的开销（信号量、ConcurrentHashMap、计数器）
+ * <p>
+ * 信号量只有 10 个许可，每个线程最多同时持有一个，线程数不超过 10 时不会阻塞，测量的是争用下的开销。
+ * <p>
+ * 运行：java -jar micro-rpc-framework-benchmarks-*-jar-with-dependencies.jar InProcessRequestsBenchmark -prof gc
+ *
+ * @author tomoncle
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InProcessRequestsBenchmark {
+    private final AtomicInteger threads = new AtomicInteger();
+    private InProcessRequests inProcessRequests;
+
+    @Setup
+    public void setup() {
+        inProcessRequests = new InProcessRequests();
+    }
+
+    @TearDown
+    public void tearDown() {
+        inProcessRequests.close();
+    }
+
+    /**
+     * 每个线程使用不同范围的请求 ID
+     */
+    @State(Scope.Thread)
+    public static class RequestIds {
+        private int next;
+
+        @Setup
+        public void setup(InProcessRequestsBenchmark benchmark) {
+            next = benchmark.threads.getAndIncrement() << 24;
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public ResponseFuture putRemove1(RequestIds ids) throws InterruptedException, TimeoutException {
+        return putRemove(ids);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public ResponseFuture putRemove4(RequestIds ids) throws InterruptedException, TimeoutException {
+        return putRemove(ids);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public ResponseFuture putRemove8(RequestIds ids) throws InterruptedException, TimeoutException {
+        return putRemove(ids);
+    }
+
+    private ResponseFuture putRemove(RequestIds ids) throws InterruptedException, TimeoutException {
+        int requestId = ids.next++;
+        inProcessRequests.put(new ResponseFuture(requestId, new CompletableFuture<Command>()));
+        return inProcessRequests.remove(requestId);
+    }
+}
@@ -0,0 +1,166 @@
+package com.tomoncle.rpc.benchmark;
+
+import com.tomoncle.rpc.core.client.DynamicStubFactory;
+import com.tomoncle.rpc.core.client.ServiceTypes;
+import com.tomoncle.rpc.core.client.stubs.RpcRequest;
+import com.tomoncle.rpc.core.interceptor.ClientChain;
+import com.tomoncle.rpc.core.interceptor.ClientInterceptor;
+import com.tomoncle.rpc.core.interceptor.Interceptors;
+import com.tomoncle.rpc.core.interceptor.RpcMethod;
+import com.tomoncle.rpc.core.interceptor.ServerChain;
+import com.tomoncle.rpc.core.interceptor.ServerInterceptor;
+import com.tomoncle.rpc.core.serialize.SerializeSupport;
+import com.tomoncle.rpc.core.transport.Transport;
+import com.tomoncle.rpc.core.transport.command.Command;
+import com.tomoncle.rpc.core.transport.command.Header;
+import com.tomoncle.rpc.core.transport.command.ResponseHeader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 拦截器链的开销：0、1、5 个拦截器
+ * <p>
+ * clientChain、serverChain 只测量拦截器链本身，最后一环直接返回；
+ * stubCall 测量一次完整的 Stub 调用（构建请求、拦截器链、指标记录、反序列化结果），Transport 直接返回响应，不经过网络。
+ * 5 个拦截器是 5 个不同的类，调用点不会被内联成单态调用。
+ * <p>
+ * 运行：java -jar micro-rpc-framework-benchmarks-*-jar-with-dependencies.jar InterceptorBenchmark -prof gc
+ *
+ * @author tomoncle
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InterceptorBenchmark {
+    private static final RpcMethod METHOD = new RpcMethod(EchoService.class.getName(), "echo");
+
+    @Param({"0", "1", "5"})
+    private int interceptors;
+
+    private ClientChain clientChain;
+    private ServerChain serverChain;
+    private EchoService stub;
+    private Command request;
+    private RpcRequest rpcRequest;
+    private Command response;
+    private CompletableFuture<Command> responseFuture;
+
+    /**
+     * 每个拦截器读取请求头，模拟取出 trace id 之类的操作
+     */
+    private long seen;
+
+    @Setup
+    public void setup() {
+        request = new Command(new Header.Builder().setRequestId(1).setType(ServiceTypes.TYPE_RPC_REQUEST)
+                .setVersion(Header.VERSION_DEADLINE).setTimeoutMillis(1000).build(), new byte[64]);
+        rpcRequest = new RpcRequest(METHOD.getServiceName(), METHOD.getMethodName(), SerializeSupport.serialize("hello"));
+        response = new Command(new ResponseHeader.Builder().setHeader(request.getHeader()).build(),
+                SerializeSupport.serialize("hello"));
+        responseFuture = CompletableFuture.completedFuture(response);
+
+        List<ClientInterceptor> clientInterceptors = new ArrayList<>(clientInterceptors().subList(0, interceptors));
+        List<ServerInterceptor> serverInterceptors = new ArrayList<>(serverInterceptors().subList(0, interceptors));
+        clientChain = Interceptors.clientChain(clientInterceptors, METHOD, r -> responseFuture);
+        serverChain = Interceptors.serverChain(serverInterceptors, METHOD, (rpcRequest, r) -> response);
+
+        // Stub 在创建时构建拦截器链，创建之后移除全局的拦截器不影响这个 Stub
+        clientInterceptors.forEach(Interceptors::addClientInterceptor);
+        try {
+            stub = new DynamicStubFactory().createStub(new DirectTransport(), EchoService.class);
+        } finally {
+            clientInterceptors.forEach(Interceptors::removeClientInterceptor);
+        }
+    }
+
+    @Benchmark
+    public CompletableFuture<Command> clientChain() {
+        return clientChain.proceed(request);
+    }
+
+    @Benchmark
+    public Command serverChain() {
+        return serverChain.proceed(rpcRequest, request);
+    }
+
+    @Benchmark
+    public String stubCall() {
+        return stub.echo("hello");
+    }
+
+    private List<ClientInterceptor> clientInterceptors() {
+        return Arrays.asList(
+                (method, request, next) -> {
+                    seen += request.getHeader().getRequestId();
+                    return next.proceed(request);
+                },
+                (method, request, next) -> {
+                    seen ^= request.getHeader().getTimeoutMillis();
+                    return next.proceed(request);
+                },
+                (method, request, next) -> {
+                    seen += method.getMethodName().length();
+                    return next.proceed(request);
+                },
+                (method, request, next) -> {
+                    seen += request.getPayload().length;
+                    return next.proceed(request);
+                },
+                (method, request, next) -> {
+                    seen ^= request.getHeader().getType();
+                    return next.proceed(request);
+                });
+    }
+
+    private List<ServerInterceptor> serverInterceptors() {
+        return Arrays.asList(
+                (method, rpcRequest, request, next) -> {
+                    seen += request.getHeader().getRequestId();
+                    return next.proceed(rpcRequest, request);
+                },
+                (method, rpcRequest, request, next) -> {
+                    seen ^= request.getHeader().getTimeoutMillis();
+                    return next.proceed(rpcRequest, request);
+                },
+                (method, rpcRequest, request, next) -> {
+                    seen += rpcRequest.getMethodName().length();
+                    return next.proceed(rpcRequest, request);
+                },
+                (method, rpcRequest, request, next) -> {
+                    seen += request.getPayload().length;
+                    return next.proceed(rpcRequest, request);
+                },
+                (method, rpcRequest, request, next) -> {
+                    seen ^= request.getHeader().getType();
+                    return next.proceed(rpcRequest, request);
+                });
+    }
+
+    /**
+     * 不经过网络，直接返回响应的 Transport
+     */
+    private final class DirectTransport implements Transport {
+        @Override
+        public CompletableFuture<Command> send(Command request) {
+            return responseFuture;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.tomoncle.rpc.benchmark;
+
+import com.tomoncle.rpc.api.MicroRpcService;
+import com.tomoncle.rpc.core.transport.netty.NettyMicroRpcService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一次完整的 RPC 调用：客户端 Stub -> 本机的 TCP 回环网络、Unix domain socket 或者共享内存 -> 服务端 -> 返回，
+ * 服务端和客户端在同一个进程中
+ * <p>
+ * throughputN 以 N 个线程并发调用，报告吞吐量（ops/s）；latencyN 以 N 个线程并发调用，
+ * 采样每次调用的响应时间，报告 p50、p90、p99、p99.9 等分位数。
+ * 一个连接的在途请求最多 10 个（见 InProcessRequests），16 个线程时有一部分线程在等待许可。
+ * <p>
+ * transport 是客户端和服务端之间的通信方式：
+ * tcp 经过本机 TCP 回环网络；unix 经过 Unix domain socket（需要 epoll）；
+ * shm、shmSpin 经过共享内存的环形缓冲区，没有数据时分别使用 park 和忙等策略；
+ * local 是本地调用（见 LocalTransport），不经过网络，直接交给服务端的业务线程池处理。
+ * <p>
+ * TCP 服务端固定监听 9999 端口，运行前确认端口没有被占用。
+ * <p>
+ * 运行：java -jar micro-rpc-framework-benchmarks-*-jar-with-dependencies.jar LoopbackBenchmark -prof gc
+ *
+ * @author tomoncle
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoopbackBenchmark {
+    @Param({"64", "1024", "16384"})
+    private int payloadSize;
+
+    @Param({"tcp", "unix", "shm", "shmSpin", "local"})
+    private String transport;
+
+    private MicroRpcService rpcService;
+    private Closeable server;
+    private EchoService stub;
+    private String message;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        switch (transport) {
+            case "tcp":
+                System.setProperty("micro.rpc.local.mode", "off");
+                break;
+            case "unix":
+                System.setProperty("micro.rpc.local.mode", "off");
+                File socket = File.createTempFile("micro_rpc_benchmark", ".sock");
+                socket.deleteOnExit();
+                System.setProperty("micro.rpc.server.unixSocket", socket.getAbsolutePath());
+                break;
+            case "shm":
+            case "shmSpin":
+                System.setProperty("micro.rpc.local.mode", "off");
+                System.setProperty("micro.rpc.shm.wait", "shm".equals(transport) ? "park" : "spin");
+                File directory = Files.createTempDirectory("micro_rpc_benchmark").toFile();
+                directory.deleteOnExit();
+                System.setProperty("micro.rpc.server.shm", directory.getAbsolutePath());
+                break;
+            case "local":
+                System.setProperty("micro.rpc.local.mode", "direct");
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown transport: " + transport);
+        }
+        rpcService = new NettyMicroRpcService();
+        URI uri = rpcService.addServiceProvider(new EchoServiceImpl(), EchoService.class);
+        server = rpcService.startServer();
+        stub = rpcService.getRemoteService(uri, EchoService.class);
+        message = Payloads.string(payloadSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        server.close();
+        rpcService.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public String throughput1() {
+        return stub.echo(message);
+    }
+
+    @Benchmark
+    @Threads(4)
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public String throughput4() {
+        return stub.echo(message);
+    }
+
+    @Benchmark
+    @Threads(16)
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public String throughput16() {
+        return stub.echo(message);
+    }
+
+    @Benchmark
+    @Threads(1)
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public String latency1() {
+        return stub.echo(message);
+    }
+
+    @Benchmark
+    @Threads(4)
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public String latency4() {
+        return stub.echo(message);
+    }
+
+    @Benchmark
+    @Threads(16)
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public String latency16() {
+        return stub.echo(message);
+    }
+}
@@ -0,0 +1,23 @@
+package com.tomoncle.rpc.benchmark;
+
+import java.util.Arrays;
+
+/**
+ * 基准测试使用的请求数据
+ *
+ * @author tomoncle
+ */
+final class Payloads {
+    private Payloads() {
+    }
+
+    /**
+     * @param size 字符数（都是 ASCII 字符，也是 UTF-8 编码后的字节数）
+     * @return 指定长度的字符串
+     */
+    static String string(int size) {
+        char[] chars = new char[size];
+        Arrays.fill(chars, 'x');
+        return new String(chars);
+    }
+}
@@ -0,0 +1,90 @@
+package com.tomoncle.rpc.benchmark;
+
+import com.tomoncle.rpc.core.client.stubs.RpcRequest;
+import com.tomoncle.rpc.core.nameservice.Metadata;
+import com.tomoncle.rpc.core.nameservice.NameServiceMessage;
+import com.tomoncle.rpc.core.serialize.SerializeSupport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link SerializeSupport} 序列化、反序列化每一种类型的开销
+ * <p>
+ * size 是序列化后的大致字节数：字符串和 RpcRequest 的参数是 size 个字符，
+ * Metadata 和注册中心的响应中是 size / 24 个服务地址。
+ * <p>
+ * 运行：java -jar micro-rpc-framework-benchmarks-*-jar-with-dependencies.jar SerializeBenchmark -prof gc
+ *
+ * @author tomoncle
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializeBenchmark {
+    @Param({"string", "rpcRequest", "metadata", "nameServiceMessage"})
+    private String type;
+
+    @Param({"64", "1024", "16384"})
+    private int size;
+
+    private Object entry;
+    private byte[] bytes;
+
+    @Setup
+    public void setup() {
+        String argument = Payloads.string(size);
+        List<URI> uris = new ArrayList<>();
+        for (int i = 0; i < Math.max(1, size / 24); i++) {
+            uris.add(URI.create("rpc://10.0." + (i >> 8) + "." + (i & 0xFF) + ":9999"));
+        }
+        switch (type) {
+            case "string":
+                entry = argument;
+                break;
+            case "rpcRequest":
+                entry = new RpcRequest(EchoService.class.getName(), "echo", SerializeSupport.serialize(argument));
+                break;
+            case "metadata":
+                Metadata metadata = new Metadata();
+                metadata.put(EchoService.class.getName(), uris);
+                entry = metadata;
+                break;
+            case "nameServiceMessage":
+                entry = new NameServiceMessage(NameServiceMessage.RESPONSE, 1L, null, null,
+                        Collections.singletonMap(EchoService.class.getName(), 1L),
+                        Collections.singletonMap(EchoService.class.getName(), uris));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown type: " + type);
+        }
+        bytes = SerializeSupport.serialize(entry);
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return SerializeSupport.serialize(entry);
+    }
+
+    @Benchmark
+    public Object parse() {
+        return SerializeSupport.parse(bytes);
+    }
+}
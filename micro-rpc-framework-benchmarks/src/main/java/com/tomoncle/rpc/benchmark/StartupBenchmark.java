@@ -0,0 +1,91 @@
+package com.tomoncle.rpc.benchmark;
+
+import com.tomoncle.rpc.api.MicroNameService;
+import com.tomoncle.rpc.api.MicroRpcService;
+import com.tomoncle.rpc.api.spi.ServiceLoadSupport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 冷启动的时间：每次测量都在一个新的 JVM 中进行，包含类加载、SPI 加载、Netty 初始化、生成 Stub 等所有一次性的开销
+ * <p>
+ * serverStartup 和 ServerApplication 一样：启动服务端、注册服务提供者、把服务地址注册到注册中心（本地文件）；
+ * firstCall 在此基础上和 ClientApplication 一样：从注册中心查询服务地址、获取远程服务的引用，直到第一次调用成功返回。
+ * 服务端和客户端在同一个进程中，客户端经过本机 TCP 回环网络访问服务端（关闭了本地调用）。
+ * <p>
+ * TCP 服务端固定监听 9999 端口，运行前确认端口没有被占用。
+ * <p>
+ * 运行：java -jar micro-rpc-framework-benchmarks-*-jar-with-dependencies.jar StartupBenchmark
+ *
+ * @author tomoncle
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(value = 10, jvmArgsAppend = "-Dmicro.rpc.local.mode=off")
+public class StartupBenchmark {
+    private File nameServiceFile;
+    private MicroRpcService server;
+    private Closeable serverCloseable;
+    private MicroRpcService client;
+
+    @Setup(Level.Iteration)
+    public void setup() throws IOException {
+        nameServiceFile = File.createTempFile("micro_rpc_startup", ".data");
+        //noinspection ResultOfMethodCallIgnored
+        nameServiceFile.delete();
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        if (null != client) {
+            client.close();
+        }
+        if (null != serverCloseable) {
+            serverCloseable.close();
+        }
+        if (null != server) {
+            server.close();
+        }
+        //noinspection ResultOfMethodCallIgnored
+        nameServiceFile.delete();
+    }
+
+    @Benchmark
+    public URI serverStartup() throws Exception {
+        server = ServiceLoadSupport.load(MicroRpcService.class);
+        serverCloseable = server.startServer();
+        URI uri = server.addServiceProvider(new EchoServiceImpl(), EchoService.class);
+        MicroNameService nameService = server.getNameService(nameServiceFile.toURI());
+        nameService.registerService(EchoService.class.getCanonicalName(), uri);
+        return uri;
+    }
+
+    @Benchmark
+    public String firstCall() throws Exception {
+        serverStartup();
+        client = ServiceLoadSupport.load(MicroRpcService.class);
+        MicroNameService nameService = client.getNameService(nameServiceFile.toURI());
+        URI uri = nameService.lookupService(EchoService.class.getCanonicalName());
+        EchoService echoService = client.getRemoteService(uri, EchoService.class);
+        return echoService.echo("hello");
+    }
+}
@@ -0,0 +1,54 @@
+package com.tomoncle.rpc.benchmark;
+
+import com.tomoncle.rpc.core.client.DynamicStubFactory;
+import com.tomoncle.rpc.core.transport.Transport;
+import com.tomoncle.rpc.core.transport.command.Command;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link DynamicStubFactory} 创建一个 Stub 的开销
+ * <p>
+ * compileStub 每次使用新的工厂，包含生成源代码、编译、加载类、创建实例，编译一次需要几十毫秒，每次迭代的时间设置得比较长；
+ * createStub 使用同一个工厂，桩类已经缓存，只有创建实例的开销。
+ * <p>
+ * 运行：java -jar micro-rpc-framework-benchmarks-*-jar-with-dependencies.jar StubFactoryBenchmark -prof gc
+ *
+ * @author tomoncle
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class StubFactoryBenchmark {
+    private final DynamicStubFactory stubFactory = new DynamicStubFactory();
+    private final Transport transport = new Transport() {
+        @Override
+        public CompletableFuture<Command> send(Command request) {
+            throw new UnsupportedOperationException();
+        }
+    };
+
+    @Benchmark
+    public EchoService compileStub() {
+        return new DynamicStubFactory().createStub(transport, EchoService.class);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public EchoService createStub() {
+        return stubFactory.createStub(transport, EchoService.class);
+    }
+}
@@ -0,0 +1,215 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.core.accesslog;
+
+import com.tomoncle.rpc.core.metrics.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 访问日志：每次调用一条结构化的记录，取代调用路径上逐条打印的 INFO 日志
+ * <p>
+ * 调用线程只把记录的字段写进预先分配的环形缓冲区（{@link AccessLogRing}），不格式化字符串、不加锁、不做 IO；
+ * 由一个后台线程取出记录，格式化后写到名为 {@value #LOGGER_NAME} 的日志中，可以在日志配置中把它输出到单独的文件。
+ * 缓冲区满时丢弃记录并计数（rpc_access_log_dropped_total），不会拖慢调用。
+ * <p>
+ * 用系统属性 micro.rpc.accesslog.mode 选择记录哪些调用，失败的调用（结果不是 SUCCESS）总是记录：
+ * <ul>
+ * <li>off：不记录</li>
+ * <li>slow（默认）：只记录耗时超过 micro.rpc.accesslog.slowMillis（默认 500）的调用</li>
+ * <li>sampled：按 micro.rpc.accesslog.sampleRate（默认 0.01）的比例随机记录</li>
+ * <li>all：记录所有调用</li>
+ * </ul>
+ * 缓冲区大小可以用 micro.rpc.accesslog.bufferSize（默认 8192）设置。
+ *
+ * @author tomoncle
+ */
+public final class AccessLog {
+    public static final String LOGGER_NAME = "com.tomoncle.rpc.accesslog";
+    private static final Logger logger = LoggerFactory.getLogger(LOGGER_NAME);
+    private static final String SUCCESS = "SUCCESS";
+    /**
+     * 缓冲区为空时写日志的线程等待的时间，连续为空时逐次加倍，直到 {@link #MAX_IDLE_PARK_NANOS}
+     */
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1L);
+    private static final long MAX_IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100L);
+
+    /**
+     * 记录哪些调用
+     */
+    public enum Mode {
+        OFF, SLOW, SAMPLED, ALL
+    }
+
+    private static final Mode MODE = parseMode(System.getProperty("micro.rpc.accesslog.mode"));
+    private static final long SLOW_NANOS = TimeUnit.MILLISECONDS.toNanos(Long.getLong("micro.rpc.accesslog.slowMillis", 500L));
+    private static final double SAMPLE_RATE = parseSampleRate(System.getProperty("micro.rpc.accesslog.sampleRate"));
+    private static final AccessLogRing ring = new AccessLogRing(Integer.getInteger("micro.rpc.accesslog.bufferSize", 8192));
+    private static final LongAdder dropped = Metrics.counter("rpc_access_log_dropped_total");
+    private static final LongAdder written = Metrics.counter("rpc_access_log_written_total");
+    private static volatile Thread writer = null;
+    /**
+     * 只在写日志的线程中使用
+     */
+    private static final StringBuilder line = new StringBuilder(256);
+    private static final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+    private static final Date date = new Date();
+
+    private AccessLog() {
+    }
+
+    /**
+     * 配置的值无效时输出警告，使用默认值，不能让类初始化失败
+     */
+    private static Mode parseMode(String value) {
+        if (null == value) {
+            return Mode.SLOW;
+        }
+        try {
+            return Mode.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            LoggerFactory.getLogger(AccessLog.class).warn("micro.rpc.accesslog.mode 的值无效: {}, 使用默认值: slow", value);
+            return Mode.SLOW;
+        }
+    }
+
+    private static double parseSampleRate(String value) {
+        if (null == value) {
+            return 0.01;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            LoggerFactory.getLogger(AccessLog.class).warn("micro.rpc.accesslog.sampleRate 的值无效: {}, 使用默认值: 0.01", value);
+            return 0.01;
+        }
+    }
+
+    /**
+     * @return 当前的记录模式
+     */
+    public static Mode getMode() {
+        return MODE;
+    }
+
+    /**
+     * 记录一次调用，根据记录模式决定是否写入
+     *
+     * @param server       是否是服务端的记录
+     * @param serviceName  接口名
+     * @param methodName   方法名
+     * @param requestId    请求序号，客户端一次调用可能发送多个请求（对冲、重试），传 -1
+     * @param outcome      结果，{@link com.tomoncle.rpc.core.transport.command.Code} 的名称等
+     * @param latencyNanos 耗时，单位纳秒
+     * @param bytesIn      收到的 payload 字节数
+     * @param bytesOut     发送的 payload 字节数
+     */
+    public static void record(boolean server, String serviceName, String methodName, int requestId,
+                              String outcome, long latencyNanos, long bytesIn, long bytesOut) {
+        if (!shouldRecord(outcome, latencyNanos) || !logger.isInfoEnabled()) {
+            return;
+        }
+        if (null == writer) {
+            startWriter();
+        }
+        if (!ring.offer(System.currentTimeMillis(), server, serviceName, methodName, requestId,
+                outcome, latencyNanos, bytesIn, bytesOut)) {
+            dropped.increment();
+        }
+    }
+
+    private static boolean shouldRecord(String outcome, long latencyNanos) {
+        switch (MODE) {
+            case OFF:
+                return false;
+            case ALL:
+                return true;
+            case SAMPLED:
+                return !SUCCESS.equals(outcome) || ThreadLocalRandom.current().nextDouble() < SAMPLE_RATE;
+            case SLOW:
+            default:
+                return !SUCCESS.equals(outcome) || latencyNanos >= SLOW_NANOS;
+        }
+    }
+
+    private static synchronized void startWriter() {
+        if (null != writer) {
+            return;
+        }
+        Thread thread = new Thread(AccessLog::drainLoop, "access-log-writer");
+        thread.setDaemon(true);
+        thread.start();
+        // 退出前把缓冲区中剩下的记录写完
+        Runtime.getRuntime().addShutdownHook(new Thread(AccessLog::drain, "access-log-flush"));
+        writer = thread;
+    }
+
+    private static void drainLoop() {
+        long parkNanos = IDLE_PARK_NANOS;
+        while (!Thread.currentThread().isInterrupted()) {
+            if (drain() > 0) {
+                parkNanos = IDLE_PARK_NANOS;
+            } else {
+                // 没有调用时不能每毫秒醒来一次，记录最多在缓冲区中等待 MAX_IDLE_PARK_NANOS
+                LockSupport.parkNanos(parkNanos);
+                parkNanos = Math.min(parkNanos * 2, MAX_IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    /**
+     * 写出缓冲区中的所有记录，只能由写日志的线程（或者退出时）调用
+     *
+     * @return 写出的记录数
+     */
+    private static synchronized int drain() {
+        int count = 0;
+        while (ring.poll(AccessLog::write)) {
+            count++;
+        }
+        written.add(count);
+        return count;
+    }
+
+    /**
+     * 一条记录一行，字段用空格分隔，例如：
+     * 2024-01-01T12:00:00.000+0800 SERVER com.x.HelloService#sayHello id=12 code=SUCCESS latency_us=532 in=14 out=18
+     */
+    private static void write(AccessLogRing.Slot slot) {
+        date.setTime(slot.timestampMillis);
+        line.setLength(0);
+        line.append(dateFormat.format(date))
+                .append(slot.server ? " SERVER " : " CLIENT ")
+                .append(slot.serviceName).append('#').append(slot.methodName)
+                .append(" id=");
+        if (slot.requestId < 0) {
+            line.append('-');
+        } else {
+            line.append(slot.requestId);
+        }
+        line.append(" code=").append(slot.outcome)
+                .append(" latency_us=").append(TimeUnit.NANOSECONDS.toMicros(slot.latencyNanos))
+                .append(" in=").append(slot.bytesIn)
+                .append(" out=").append(slot.bytesOut);
+        logger.info(line.toString());
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.core.accesslog;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 访问日志的环形缓冲区：多个生产者、一个消费者，有界、无锁
+ * <p>
+ * 每个槽位有一个序号（Vyukov 的有界队列）：生产者用 CAS 抢占写位置，把记录的字段写进槽位后再发布序号，
+ * 消费者看到序号发布后读取字段，再把序号推进一圈把槽位还给生产者。
+ * 槽位是预先分配的，记录一次访问日志不分配对象；缓冲区满时直接丢弃记录，不阻塞调用线程。
+ *
+ * @author tomoncle
+ */
+final class AccessLogRing {
+    private final Slot[] slots;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    /**
+     * 只有消费者线程读写
+     */
+    private long head = 0L;
+
+    AccessLogRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot(i);
+        }
+        mask = size - 1;
+    }
+
+    /**
+     * 写入一条记录
+     *
+     * @return 缓冲区满时返回 false
+     */
+    boolean offer(long timestampMillis, boolean server, String serviceName, String methodName, int requestId,
+                  String outcome, long latencyNanos, long bytesIn, long bytesOut) {
+        long position = tail.get();
+        while (true) {
+            Slot slot = slots[(int) position & mask];
+            long difference = slot.sequence - position;
+            if (difference == 0L) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    slot.timestampMillis = timestampMillis;
+                    slot.server = server;
+                    slot.serviceName = serviceName;
+                    slot.methodName = methodName;
+                    slot.requestId = requestId;
+                    slot.outcome = outcome;
+                    slot.latencyNanos = latencyNanos;
+                    slot.bytesIn = bytesIn;
+                    slot.bytesOut = bytesOut;
+                    slot.sequence = position + 1;
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0L) {
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * 消费者线程调用，取出一条记录交给 visitor，槽位在 visitor 返回后才还给生产者
+     *
+     * @return 没有已发布的记录时返回 false
+     */
+    boolean poll(Visitor visitor) {
+        Slot slot = slots[(int) head & mask];
+        if (slot.sequence != head + 1) {
+            return false;
+        }
+        visitor.visit(slot);
+        slot.serviceName = null;
+        slot.methodName = null;
+        slot.outcome = null;
+        slot.sequence = head + slots.length;
+        head++;
+        return true;
+    }
+
+    interface Visitor {
+        void visit(Slot slot);
+    }
+
+    static final class Slot {
+        volatile long sequence;
+        long timestampMillis;
+        boolean server;
+        String serviceName;
+        String methodName;
+        int requestId;
+        String outcome;
+        long latencyNanos;
+        long bytesIn;
+        long bytesOut;
+
+        private Slot(long sequence) {
+            this.sequence = sequence;
+        }
+    }
+}
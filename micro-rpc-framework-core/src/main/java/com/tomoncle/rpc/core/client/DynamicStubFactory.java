@@ -15,17 +15,23 @@ package com.tomoncle.rpc.core.client;
 
 
 import com.itranswarp.compiler.JavaStringCompiler;
+import com.tomoncle.rpc.api.spi.Singleton;
 import com.tomoncle.rpc.core.transport.Transport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 动态生成 xxxStub.class 文件
+ * <p>
+ * 编译一次桩的源代码需要上百毫秒，每个服务接口的桩类只生成一次（工厂是单例的，所有 MicroRpcService 共用），
+ * 之后创建桩只需要实例化缓存的桩类。
  *
  * @author tomoncle
  */
+@Singleton
 @SuppressWarnings("unchecked")
 public class DynamicStubFactory implements StubFactory {
 
@@ -60,9 +66,24 @@ public class DynamicStubFactory implements StubFactory {
                     "    }\n" +
                     "}";
 
+    // 服务接口 -> 编译好的桩类
+    private final Map<Class<?>, Class<?>> stubClasses = new ConcurrentHashMap<>();
 
     @Override
     public <T> T createStub(Transport transport, Class<T> serviceClass) {
+        try {
+            // 把Transport赋值给桩
+            ServiceStub stubInstance = (ServiceStub) stubClasses.computeIfAbsent(serviceClass, this::compileStub).newInstance();
+            stubInstance.initTransport(transport);
+            stubInstance.initServiceClass(serviceClass);
+            // 返回这个桩
+            return (T) stubInstance;
+        } catch (Throwable t) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    private Class<?> compileStub(Class<?> serviceClass) {
         try {
             // 填充模板
             String packageName = "com.tomoncle.rpc.core.client.stubs";
@@ -86,13 +107,7 @@ public class DynamicStubFactory implements StubFactory {
             JavaStringCompiler compiler = new JavaStringCompiler();
             Map<String, byte[]> results = compiler.compile(stubSimpleName + ".java", source);
             // 加载编译好的类
-            Class<?> clazz = compiler.loadClass(stubFullName, results);
-            // 把Transport赋值给桩
-            ServiceStub stubInstance = (ServiceStub) clazz.newInstance();
-            stubInstance.initTransport(transport);
-            // 返回这个桩
-            return (T) stubInstance;
-
+            return compiler.loadClass(stubFullName, results);
         } catch (Throwable t) {
             throw new RuntimeException(t);
         }
@@ -12,4 +12,10 @@ public interface ServiceStub {
      * @param transport  Transport 对象 {@link Transport}
      */
     void initTransport(Transport transport);
+
+    /**
+     * 初始化服务接口，Stub 根据接口方法上的注解准备每个方法的调用策略
+     * @param serviceClass 服务接口的Class
+     */
+    void initServiceClass(Class<?> serviceClass);
 }
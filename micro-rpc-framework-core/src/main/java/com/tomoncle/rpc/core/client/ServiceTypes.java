@@ -21,4 +21,9 @@ package com.tomoncle.rpc.core.client;
  */
 public class ServiceTypes {
     public final static int TYPE_RPC_REQUEST = 0;
+    public final static int TYPE_NAME_SERVICE = 1;
+    /**
+     * 心跳，由传输层直接处理，不注册请求处理器
+     */
+    public final static int TYPE_HEARTBEAT = 2;
 }
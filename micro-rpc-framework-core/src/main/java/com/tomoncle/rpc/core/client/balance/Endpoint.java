@@ -0,0 +1,105 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.core.client.balance;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 负载均衡中的一个服务提供者
+ * <p>
+ * 记录该提供者的在途请求数和响应时间的指数加权移动平均值（EWMA），
+ * 负载均衡时用 "EWMA * (在途请求数 + 1)" 估算把请求发给它的代价。
+ * EWMA 采用 peak 策略：比平均值慢的响应立即拉高平均值，比平均值快的响应按时间衰减慢慢拉低，
+ * 这样变慢的节点会被很快避开。
+ *
+ * @author tomoncle
+ */
+public class Endpoint {
+    /**
+     * EWMA 的衰减时间常数
+     */
+    private static final long DECAY_NANOS = TimeUnit.SECONDS.toNanos(10);
+    /**
+     * 还没有响应样本时使用的默认响应时间
+     */
+    private static final double INITIAL_RTT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    /**
+     * 请求失败时记为一次很慢的响应
+     */
+    static final long FAILURE_PENALTY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final URI uri;
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private double ewmaNanos = INITIAL_RTT_NANOS;
+    private long lastUpdateNanos = System.nanoTime();
+
+    Endpoint(URI uri) {
+        this.uri = uri;
+    }
+
+    public URI getUri() {
+        return uri;
+    }
+
+    /**
+     * @return 在途请求数
+     */
+    public int getOutstanding() {
+        return outstanding.get();
+    }
+
+    /**
+     * @return 响应时间的 EWMA，单位纳秒
+     */
+    public synchronized double getEwmaNanos() {
+        return ewmaNanos;
+    }
+
+    /**
+     * @return 把请求发给该提供者的代价
+     */
+    double cost() {
+        return getEwmaNanos() * (outstanding.get() + 1);
+    }
+
+    void start() {
+        outstanding.incrementAndGet();
+    }
+
+    /**
+     * 记录一次响应
+     *
+     * @param rttNanos 响应时间，单位纳秒
+     */
+    void complete(long rttNanos) {
+        outstanding.decrementAndGet();
+        long now = System.nanoTime();
+        synchronized (this) {
+            if (rttNanos > ewmaNanos) {
+                ewmaNanos = rttNanos;
+            } else {
+                double w = Math.exp(-(double) Math.max(0L, now - lastUpdateNanos) / DECAY_NANOS);
+                ewmaNanos = ewmaNanos * w + rttNanos * (1 - w);
+            }
+            lastUpdateNanos = now;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Endpoint(uri=%s, outstanding=%d, ewma=%.3fms)", uri, getOutstanding(), getEwmaNanos() / 1e6);
+    }
+}
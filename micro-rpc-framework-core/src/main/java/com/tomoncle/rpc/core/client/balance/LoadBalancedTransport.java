@@ -0,0 +1,318 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.core.client.balance;
+
+import com.tomoncle.rpc.api.NameServiceListener;
+import com.tomoncle.rpc.core.transport.Transport;
+import com.tomoncle.rpc.core.transport.command.Code;
+import com.tomoncle.rpc.core.transport.command.Command;
+import com.tomoncle.rpc.core.transport.command.ResponseHeader;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * 在一个服务的所有提供者之间做负载均衡的 Transport
+ * <p>
+ * 每次发送请求时随机挑选两个提供者（power of two choices），
+ * 把请求发给代价（响应时间 EWMA * (在途请求数 + 1)）较小的那个，
+ * 既能把负载分散开，又能避开变慢的节点，而且不需要维护全局有序的数据结构。
+ * <p>
+ * 提供者列表由注册中心推送的变化事件更新（订阅），或者定期从注册中心刷新（在后台线程中刷新，发送请求时不等待，
+ * 刷新完成之前继续使用当前的提供者列表），
+ * 新增的提供者会立即参与负载均衡，已下线的提供者不再分配请求，仍然存在的提供者保留它的统计数据。
+ * <p>
+ * 提供者返回 {@link Code#OVERLOADED} 时请求没有被处理，换一个提供者重试一次。
+ *
+ * @author tomoncle
+ */
+public class LoadBalancedTransport implements Transport, NameServiceListener {
+    private static final Logger logger = LoggerFactory.getLogger(LoadBalancedTransport.class);
+    private static final long REFRESH_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+    /**
+     * 过载重试和后台刷新提供者列表使用的线程池，不占用公共的 ForkJoinPool；
+     * 每个请求最多重试一次，同一时间每个服务最多一个刷新任务
+     */
+    private static final Executor executor = Executors.newCachedThreadPool(new DefaultThreadFactory("lb-worker", true));
+
+    private final String serviceName;
+    private final Callable<? extends Collection<URI>> providerLookup;
+    private final Function<URI, Transport> transportFactory;
+    private final AtomicBoolean refreshing = new AtomicBoolean(false);
+    private volatile Endpoint[] endpoints = new Endpoint[0];
+    private volatile long lastRefreshNanos;
+
+    /**
+     * 提供者列表由 {@link #onChange} 更新，需要把它订阅到注册中心
+     *
+     * @param serviceName      服务名称
+     * @param transportFactory 根据提供者地址获取 Transport 的函数
+     */
+    public LoadBalancedTransport(String serviceName, Function<URI, Transport> transportFactory) {
+        this.serviceName = serviceName;
+        this.providerLookup = null;
+        this.transportFactory = transportFactory;
+    }
+
+    /**
+     * 定期从注册中心刷新提供者列表
+     *
+     * @param serviceName      服务名称
+     * @param providerLookup   查询服务所有提供者地址的函数
+     * @param transportFactory 根据提供者地址获取 Transport 的函数
+     */
+    public LoadBalancedTransport(String serviceName,
+                                 Callable<? extends Collection<URI>> providerLookup,
+                                 Function<URI, Transport> transportFactory) {
+        this.serviceName = serviceName;
+        this.providerLookup = providerLookup;
+        this.transportFactory = transportFactory;
+        refresh();
+    }
+
+    @Override
+    public CompletableFuture<Command> send(Command request) {
+        return send(request, new ArrayList<>(2));
+    }
+
+    @Override
+    public CompletableFuture<Command> send(Command request, Collection<URI> tried) {
+        if (null != providerLookup && System.nanoTime() - lastRefreshNanos > REFRESH_INTERVAL_NANOS) {
+            refreshInBackground();
+        }
+        Endpoint endpoint = choose(tried);
+        if (null == endpoint) {
+            CompletableFuture<Command> future = new CompletableFuture<>();
+            future.completeExceptionally(new IllegalStateException("No provider of " + serviceName + "!"));
+            return future;
+        }
+        tried.add(endpoint.getUri());
+        CompletableFuture<Command> result = new CompletableFuture<>();
+        CompletableFuture<Command> first = send(endpoint, request);
+        first.whenComplete((response, throwable) -> {
+            if (null != throwable || !isOverloaded(response) || !hasUntried(tried)) {
+                complete(result, response, throwable);
+                return;
+            }
+            // 提供者过载时没有处理请求，换一个提供者重试一次；
+            // 发送可能因为背压阻塞，不能在 IO 线程中执行
+            executor.execute(() -> retry(request, response, tried, result));
+        });
+        // 调用方取消请求时（对冲请求中较慢的那个），取消还在等待响应的发送，归还它占用的在途请求许可
+        result.whenComplete((response, throwable) -> first.cancel(false));
+        return result;
+    }
+
+    /**
+     * @param overloaded 第一个提供者返回的过载响应，没有可以重试的提供者时作为结果返回
+     */
+    private void retry(Command request, Command overloaded, Collection<URI> tried, CompletableFuture<Command> result) {
+        if (result.isDone()) {
+            return;
+        }
+        try {
+            Endpoint retry = choose(tried);
+            if (null == retry) {
+                // 提供者列表在这期间被清空了
+                result.complete(overloaded);
+                return;
+            }
+            tried.add(retry.getUri());
+            CompletableFuture<Command> future = send(retry, request);
+            future.whenComplete((response, throwable) -> complete(result, response, throwable));
+            result.whenComplete((response, throwable) -> future.cancel(false));
+        } catch (Throwable t) {
+            result.completeExceptionally(t);
+        }
+    }
+
+    private static void complete(CompletableFuture<Command> result, Command response, Throwable throwable) {
+        if (null == throwable) {
+            result.complete(response);
+        } else {
+            result.completeExceptionally(throwable);
+        }
+    }
+
+    private CompletableFuture<Command> send(Endpoint endpoint, Command request) {
+        long start = System.nanoTime();
+        endpoint.start();
+        CompletableFuture<Command> future;
+        try {
+            future = transportFactory.apply(endpoint.getUri()).send(request);
+        } catch (Throwable t) {
+            endpoint.complete(Endpoint.FAILURE_PENALTY_NANOS);
+            future = new CompletableFuture<>();
+            future.completeExceptionally(t);
+            return future;
+        }
+        // 过载的响应和失败一样计入代价，之后的请求会避开它；被取消的请求至少这么慢，按已经等待的时间计入
+        future.whenComplete((response, throwable) ->
+                endpoint.complete(null == throwable && !isOverloaded(response) || throwable instanceof CancellationException
+                        ? System.nanoTime() - start : Endpoint.FAILURE_PENALTY_NANOS));
+        return future;
+    }
+
+    private static boolean isOverloaded(Command response) {
+        return response.getHeader() instanceof ResponseHeader
+                && ((ResponseHeader) response.getHeader()).getCode() == Code.OVERLOADED.getCode();
+    }
+
+    private boolean hasUntried(Collection<URI> tried) {
+        for (Endpoint endpoint : endpoints) {
+            if (!tried.contains(endpoint.getUri())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 在没有尝试过的提供者中选择，所有提供者都尝试过了，仍然按代价选择
+     */
+    private Endpoint choose(Collection<URI> tried) {
+        Endpoint[] endpoints = this.endpoints;
+        if (tried.isEmpty()) {
+            return choose(endpoints);
+        }
+        List<Endpoint> candidates = new ArrayList<>(endpoints.length);
+        for (Endpoint endpoint : endpoints) {
+            if (!tried.contains(endpoint.getUri())) {
+                candidates.add(endpoint);
+            }
+        }
+        return candidates.isEmpty() ? choose(endpoints) : choose(candidates.toArray(new Endpoint[0]));
+    }
+
+    /**
+     * power of two choices：随机选两个，取代价小的
+     */
+    private static Endpoint choose(Endpoint[] endpoints) {
+        int n = endpoints.length;
+        if (n == 0) {
+            return null;
+        }
+        if (n == 1) {
+            return endpoints[0];
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int a = random.nextInt(n);
+        int b = random.nextInt(n - 1);
+        if (b >= a) {
+            b++;
+        }
+        return endpoints[a].cost() <= endpoints[b].cost() ? endpoints[a] : endpoints[b];
+    }
+
+    /**
+     * 从注册中心刷新提供者列表，同一时刻只有一个线程刷新
+     */
+    public void refresh() {
+        if (null == providerLookup || !refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        doRefresh();
+    }
+
+    /**
+     * 在后台线程中刷新提供者列表，查询注册中心是一次远程调用，不能阻塞发送请求的线程
+     */
+    private void refreshInBackground() {
+        if (!refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(this::doRefresh);
+        } catch (Throwable t) {
+            refreshing.set(false);
+            throw t;
+        }
+    }
+
+    private void doRefresh() {
+        try {
+            updateProviders(providerLookup.call());
+        } catch (Exception e) {
+            logger.warn("刷新服务提供者失败: {}", serviceName, e);
+        } finally {
+            lastRefreshNanos = System.nanoTime();
+            refreshing.set(false);
+        }
+    }
+
+    /**
+     * 更新提供者列表，已存在的提供者保留统计数据
+     *
+     * @param uris 服务的所有提供者地址
+     */
+    public synchronized void updateProviders(Collection<URI> uris) {
+        Map<URI, Endpoint> current = new HashMap<>();
+        for (Endpoint endpoint : endpoints) {
+            current.put(endpoint.getUri(), endpoint);
+        }
+        Map<URI, Endpoint> updated = new HashMap<>();
+        for (URI uri : uris) {
+            Endpoint endpoint = current.get(uri);
+            updated.put(uri, null == endpoint ? new Endpoint(uri) : endpoint);
+        }
+        if (!updated.keySet().equals(current.keySet())) {
+            logger.info("服务提供者变化: {}, {} -> {}", serviceName, current.keySet(), updated.keySet());
+        }
+        this.endpoints = updated.values().toArray(new Endpoint[0]);
+    }
+
+    /**
+     * 注册中心推送的增量变化
+     */
+    @Override
+    public synchronized void onChange(String serviceName, List<URI> added, List<URI> removed) {
+        Map<URI, Endpoint> updated = new LinkedHashMap<>();
+        for (Endpoint endpoint : endpoints) {
+            updated.put(endpoint.getUri(), endpoint);
+        }
+        for (URI uri : removed) {
+            updated.remove(uri);
+        }
+        for (URI uri : added) {
+            updated.putIfAbsent(uri, new Endpoint(uri));
+        }
+        this.endpoints = updated.values().toArray(new Endpoint[0]);
+    }
+
+    /**
+     * @return 当前所有提供者及其统计数据
+     */
+    public List<Endpoint> getEndpoints() {
+        return Collections.unmodifiableList(Arrays.asList(endpoints));
+    }
+}
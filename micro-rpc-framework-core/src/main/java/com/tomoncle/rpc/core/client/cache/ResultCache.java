@@ -0,0 +1,232 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.core.client.cache;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 客户端调用结果缓存
+ * <p>
+ * 缓存的 key 是序列化后的参数，value 是序列化后的调用结果，所以内存占用可以精确地按字节计算。
+ * 为了减少锁竞争，缓存被分成若干个段（Segment），每个段是一个按访问顺序排列的 LinkedHashMap，
+ * 段内使用 LRU 淘汰，超过存活时间（TTL）的结果在读取时失效。
+ *
+ * @author tomoncle
+ */
+public class ResultCache {
+    /**
+     * 每个缓存项除了参数和结果之外的估算开销（对象头、引用、链表节点等）
+     */
+    private static final int ENTRY_OVERHEAD = 96;
+    private static final int SEGMENTS = 16;
+
+    private final String name;
+    private final long ttlNanos;
+    private final long maxBytes;
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    public ResultCache(String name, long ttlMillis, long maxBytes) {
+        if (ttlMillis <= 0 || maxBytes <= 0) {
+            throw new IllegalArgumentException("ttlMillis and maxBytes must be positive!");
+        }
+        this.name = name;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.maxBytes = maxBytes;
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(Math.max(1L, maxBytes / SEGMENTS));
+        }
+    }
+
+    /**
+     * 查询缓存
+     *
+     * @param serializedArguments 序列化后的参数
+     * @return 序列化后的调用结果，未命中返回 null
+     */
+    public byte[] get(byte[] serializedArguments) {
+        Key key = new Key(serializedArguments);
+        byte[] result = segmentFor(key).get(key, System.nanoTime());
+        if (null == result) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return result;
+    }
+
+    /**
+     * 存入调用结果
+     *
+     * @param serializedArguments 序列化后的参数
+     * @param result              序列化后的调用结果
+     */
+    public void put(byte[] serializedArguments, byte[] result) {
+        Key key = new Key(serializedArguments);
+        segmentFor(key).put(key, result, System.nanoTime() + ttlNanos);
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    private Segment segmentFor(Key key) {
+        int h = key.hash;
+        return segments[(h ^ (h >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public long getExpirationCount() {
+        return expirations.sum();
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return 当前缓存项占用的字节数（估算值）
+     */
+    public long getUsedBytes() {
+        long bytes = 0L;
+        for (Segment segment : segments) {
+            bytes += segment.usedBytes();
+        }
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ResultCache(name=%s, hits=%d, misses=%d, evictions=%d, expirations=%d, usedBytes=%d, maxBytes=%d)",
+                name, getHitCount(), getMissCount(), getEvictionCount(), getExpirationCount(), getUsedBytes(), maxBytes);
+    }
+
+    /**
+     * 以字节数组内容作为相等条件的 key，hash 只计算一次
+     */
+    private static final class Key {
+        private final byte[] bytes;
+        private final int hash;
+
+        private Key(byte[] bytes) {
+            this.bytes = bytes;
+            this.hash = Arrays.hashCode(bytes);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return this == o || (o instanceof Key && hash == ((Key) o).hash && Arrays.equals(bytes, ((Key) o).bytes));
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Entry {
+        private final byte[] value;
+        private final long expireAt;
+        private final int weight;
+
+        private Entry(byte[] value, long expireAt, int weight) {
+            this.value = value;
+            this.expireAt = expireAt;
+            this.weight = weight;
+        }
+    }
+
+    private final class Segment {
+        private final long capacity;
+        private final LinkedHashMap<Key, Entry> map = new LinkedHashMap<>(16, 0.75f, true);
+        private long used;
+
+        private Segment(long capacity) {
+            this.capacity = capacity;
+        }
+
+        synchronized byte[] get(Key key, long now) {
+            Entry entry = map.get(key);
+            if (null == entry) {
+                return null;
+            }
+            if (now - entry.expireAt >= 0) {
+                map.remove(key);
+                used -= entry.weight;
+                expirations.increment();
+                return null;
+            }
+            return entry.value;
+        }
+
+        synchronized void put(Key key, byte[] value, long expireAt) {
+            int weight = key.bytes.length + value.length + ENTRY_OVERHEAD;
+            if (weight > capacity) {
+                // 单个结果比整个段还大，不缓存
+                return;
+            }
+            Entry old = map.put(key, new Entry(value, expireAt, weight));
+            if (null != old) {
+                used -= old.weight;
+            }
+            used += weight;
+            // 按 LRU 顺序淘汰，直到内存占用回到上限以内
+            Iterator<Map.Entry<Key, Entry>> iterator = map.entrySet().iterator();
+            while (used > capacity && iterator.hasNext()) {
+                Map.Entry<Key, Entry> eldest = iterator.next();
+                iterator.remove();
+                used -= eldest.getValue().weight;
+                evictions.increment();
+            }
+        }
+
+        synchronized void clear() {
+            map.clear();
+            used = 0L;
+        }
+
+        synchronized long usedBytes() {
+            return used;
+        }
+    }
+}
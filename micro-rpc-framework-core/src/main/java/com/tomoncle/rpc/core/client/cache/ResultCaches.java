@@ -0,0 +1,110 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.core.client.cache;
+
+import com.tomoncle.rpc.api.annotation.Cacheable;
+import com.tomoncle.rpc.core.metrics.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 客户端结果缓存的注册中心
+ * <p>
+ * 缓存按 "接口名#方法名" 全局共享，同一个接口的多个 Stub 使用同一份缓存。
+ * 方法可以通过 {@link Cacheable} 注解开启缓存，也可以在创建 Stub 之前调用 {@link #configure} 开启。
+ *
+ * @author tomoncle
+ */
+public final class ResultCaches {
+    private static final Logger logger = LoggerFactory.getLogger(ResultCaches.class);
+    private static final Map<String/*接口名#方法名*/, ResultCache> caches = new ConcurrentHashMap<>();
+
+    static {
+        Metrics.collector(samples -> {
+            for (ResultCache cache : caches.values()) {
+                String name = cache.getName();
+                samples.put(Metrics.name("rpc_cache_hits_total", "method", name), (double) cache.getHitCount());
+                samples.put(Metrics.name("rpc_cache_misses_total", "method", name), (double) cache.getMissCount());
+                samples.put(Metrics.name("rpc_cache_evictions_total", "method", name), (double) cache.getEvictionCount());
+                samples.put(Metrics.name("rpc_cache_expirations_total", "method", name), (double) cache.getExpirationCount());
+                samples.put(Metrics.name("rpc_cache_used_bytes", "method", name), (double) cache.getUsedBytes());
+            }
+        });
+    }
+
+    private ResultCaches() {
+    }
+
+    /**
+     * 通过配置为方法开启结果缓存
+     *
+     * @param serviceClass 服务接口
+     * @param methodName   方法名
+     * @param ttlMillis    缓存存活时间，单位毫秒
+     * @param maxBytes     缓存占用内存上限，单位字节
+     * @return 缓存对象
+     */
+    public static ResultCache configure(Class<?> serviceClass, String methodName, long ttlMillis, long maxBytes) {
+        String name = cacheName(serviceClass.getName(), methodName);
+        ResultCache cache = new ResultCache(name, ttlMillis, maxBytes);
+        caches.put(name, cache);
+        logger.info("开启结果缓存: {}, ttl: {}ms, maxBytes: {}", name, ttlMillis, maxBytes);
+        return cache;
+    }
+
+    /**
+     * 返回方法的结果缓存，注解声明的缓存在这里创建
+     *
+     * @param serviceClass 服务接口
+     * @param method       接口方法
+     * @return 缓存对象，没有开启缓存返回 null
+     */
+    public static ResultCache forMethod(Class<?> serviceClass, Method method) {
+        String name = cacheName(serviceClass.getName(), method.getName());
+        ResultCache cache = caches.get(name);
+        Cacheable cacheable = method.getAnnotation(Cacheable.class);
+        if (null == cache && null != cacheable) {
+            cache = caches.computeIfAbsent(name, k -> new ResultCache(k, cacheable.ttlMillis(), cacheable.maxBytes()));
+        }
+        return cache;
+    }
+
+    /**
+     * 查询缓存
+     *
+     * @param serviceClass 服务接口
+     * @param methodName   方法名
+     * @return 缓存对象，没有开启缓存返回 null
+     */
+    public static ResultCache get(Class<?> serviceClass, String methodName) {
+        return caches.get(cacheName(serviceClass.getName(), methodName));
+    }
+
+    /**
+     * @return 所有缓存，用于查看命中率等指标
+     */
+    public static Collection<ResultCache> all() {
+        return new ArrayList<>(caches.values());
+    }
+
+    private static String cacheName(String interfaceName, String methodName) {
+        return interfaceName + "#" + methodName;
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.core.client.flight;
+
+import com.tomoncle.rpc.core.transport.command.Command;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 合并同一个方法中正在进行中的相同请求（single-flight）
+ * <p>
+ * 缓存失效的瞬间，往往有大量线程用相同的参数调用同一个方法，每个调用都会占用一个请求序号并发送一个请求命令。
+ * 开启合并之后，第一个调用正常发送请求，在它返回之前到达的相同请求直接共享它的 CompletableFuture，
+ * 请求返回后立即从进行中的列表中删除，之后的调用会重新发送请求。
+ *
+ * @author tomoncle
+ */
+public class SingleFlightGroup {
+    private final String name;
+    private final Map<Key, CompletableFuture<Command>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder executions = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    public SingleFlightGroup(String name) {
+        this.name = name;
+    }
+
+    /**
+     * 发送请求，如果有相同参数的请求正在进行中，则直接返回它的结果
+     *
+     * @param serializedArguments 序列化后的参数
+     * @param sender              真正发送请求的函数
+     * @return 响应命令的 Future
+     */
+    public CompletableFuture<Command> execute(byte[] serializedArguments, Supplier<CompletableFuture<Command>> sender) {
+        Key key = new Key(serializedArguments);
+        CompletableFuture<Command> existing = inFlight.get(key);
+        if (null != existing) {
+            coalesced.increment();
+            return existing;
+        }
+        CompletableFuture<Command> future = new CompletableFuture<>();
+        existing = inFlight.putIfAbsent(key, future);
+        if (null != existing) {
+            coalesced.increment();
+            return existing;
+        }
+        executions.increment();
+        try {
+            sender.get().whenComplete((response, throwable) -> {
+                // 先删除再完成，保证完成之后到达的调用会发送新的请求
+                inFlight.remove(key, future);
+                if (null != throwable) {
+                    future.completeExceptionally(throwable);
+                } else {
+                    future.complete(response);
+                }
+            });
+        } catch (Throwable t) {
+            inFlight.remove(key, future);
+            future.completeExceptionally(t);
+        }
+        return future;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return 真正发送的请求数
+     */
+    public long getExecutionCount() {
+        return executions.sum();
+    }
+
+    /**
+     * @return 被合并（没有发送）的请求数
+     */
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    /**
+     * @return 当前正在进行中的请求数
+     */
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SingleFlightGroup(name=%s, executions=%d, coalesced=%d, inFlight=%d)",
+                name, getExecutionCount(), getCoalescedCount(), getInFlightCount());
+    }
+
+    private static final class Key {
+        private final byte[] bytes;
+        private final int hash;
+
+        private Key(byte[] bytes) {
+            this.bytes = bytes;
+            this.hash = Arrays.hashCode(bytes);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return this == o || (o instanceof Key && hash == ((Key) o).hash && Arrays.equals(bytes, ((Key) o).bytes));
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.core.client.flight;
+
+import com.tomoncle.rpc.api.annotation.SingleFlight;
+import com.tomoncle.rpc.core.metrics.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 请求合并的注册中心
+ * <p>
+ * 按 "接口名#方法名" 全局共享，同一个接口的多个 Stub 之间也会合并相同的请求。
+ * 方法可以通过 {@link SingleFlight} 注解开启，也可以在创建 Stub 之前调用 {@link #enable} 开启。
+ *
+ * @author tomoncle
+ */
+public final class SingleFlights {
+    private static final Logger logger = LoggerFactory.getLogger(SingleFlights.class);
+    private static final Map<String/*接口名#方法名*/, SingleFlightGroup> groups = new ConcurrentHashMap<>();
+
+    static {
+        Metrics.collector(samples -> {
+            for (SingleFlightGroup group : groups.values()) {
+                String name = group.getName();
+                samples.put(Metrics.name("rpc_single_flight_executions_total", "method", name), (double) group.getExecutionCount());
+                samples.put(Metrics.name("rpc_single_flight_coalesced_total", "method", name), (double) group.getCoalescedCount());
+                samples.put(Metrics.name("rpc_single_flight_in_flight", "method", name), (double) group.getInFlightCount());
+            }
+        });
+    }
+
+    private SingleFlights() {
+    }
+
+    /**
+     * 通过配置为方法开启请求合并
+     *
+     * @param serviceClass 服务接口
+     * @param methodName   方法名
+     * @return 请求合并对象
+     */
+    public static SingleFlightGroup enable(Class<?> serviceClass, String methodName) {
+        String name = groupName(serviceClass.getName(), methodName);
+        logger.info("开启请求合并: {}", name);
+        return groups.computeIfAbsent(name, SingleFlightGroup::new);
+    }
+
+    /**
+     * 返回方法的请求合并对象，注解声明的在这里创建
+     *
+     * @param serviceClass 服务接口
+     * @param method       接口方法
+     * @return 请求合并对象，没有开启返回 null
+     */
+    public static SingleFlightGroup forMethod(Class<?> serviceClass, Method method) {
+        String name = groupName(serviceClass.getName(), method.getName());
+        SingleFlightGroup group = groups.get(name);
+        if (null == group && method.isAnnotationPresent(SingleFlight.class)) {
+            group = groups.computeIfAbsent(name, SingleFlightGroup::new);
+        }
+        return group;
+    }
+
+    /**
+     * @return 所有请求合并对象，用于查看合并次数等指标
+     */
+    public static Collection<SingleFlightGroup> all() {
+        return new ArrayList<>(groups.values());
+    }
+
+    private static String groupName(String interfaceName, String methodName) {
+        return interfaceName + "#" + methodName;
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.core.client.hedge;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 全局的对冲预算（令牌桶）
+ * <p>
+ * 每个开启了对冲的调用往桶里存入 ratio 个令牌，每发送一个对冲请求取出一个令牌，
+ * 因此对冲请求最多是正常请求的 ratio 倍（默认 5%）。桶的容量限制了突发的对冲请求数，
+ * 所有提供者都变慢时不会因为对冲而把负载放大。
+ * <p>
+ * 比例可以用系统属性 micro.rpc.hedge.budget 设置。
+ *
+ * @author tomoncle
+ */
+public final class HedgeBudget {
+    /**
+     * 令牌用千分之一为单位保存，避免浮点数的 CAS
+     */
+    private static final long UNIT = 1000L;
+    private static final double RATIO = Double.parseDouble(System.getProperty("micro.rpc.hedge.budget", "0.05"));
+    private static final long DEPOSIT = Math.round(RATIO * UNIT);
+    private static final long CAPACITY = 100L * UNIT;
+    /**
+     * 刚启动时就可以发送少量对冲请求
+     */
+    private static final long INITIAL = 10L * UNIT;
+    private static final AtomicLong tokens = new AtomicLong(INITIAL);
+    private static final LongAdder throttled = new LongAdder();
+
+    private HedgeBudget() {
+    }
+
+    /**
+     * 记录一次调用，存入令牌
+     */
+    static void deposit() {
+        long current;
+        do {
+            current = tokens.get();
+            if (current >= CAPACITY) {
+                return;
+            }
+        } while (!tokens.compareAndSet(current, Math.min(CAPACITY, current + DEPOSIT)));
+    }
+
+    /**
+     * 取出一个令牌
+     *
+     * @return 预算用完时返回 false，不能发送对冲请求
+     */
+    static boolean tryAcquire() {
+        long current;
+        do {
+            current = tokens.get();
+            if (current < UNIT) {
+                throttled.increment();
+                return false;
+            }
+        } while (!tokens.compareAndSet(current, current - UNIT));
+        return true;
+    }
+
+    /**
+     * @return 对冲请求占正常请求的比例上限
+     */
+    public static double getRatio() {
+        return RATIO;
+    }
+
+    /**
+     * @return 当前可以发送的对冲请求数
+     */
+    public static double getAvailable() {
+        return (double) tokens.get() / UNIT;
+    }
+
+    /**
+     * @return 因为预算用完而没有发送的对冲请求数
+     */
+    public static long getThrottledCount() {
+        return throttled.sum();
+    }
+}
@@ -0,0 +1,172 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.core.client.hedge;
+
+import com.tomoncle.rpc.core.transport.command.Command;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.net.URI;
+import java.util.Collection;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * 一个方法的对冲策略
+ * <p>
+ * 请求发出后在时间轮上登记一个定时任务，超过对冲延迟还没有响应时，
+ * 在预算允许的情况下把请求再发给另一个提供者，先返回的响应作为结果，另一个请求被取消（归还它占用的在途请求许可）。
+ * 对冲延迟可以固定，默认使用该方法最近响应时间的 p95，样本不够时不发送对冲请求。
+ * <p>
+ * 发送请求可能阻塞（背压、刷新提供者列表），时间轮的线程只负责把对冲请求交给发送线程池，不直接发送。
+ *
+ * @author tomoncle
+ */
+public class HedgePolicy {
+    /**
+     * 所有方法共用一个时间轮，精度 1ms，只有在有定时任务时才会启动线程
+     */
+    private static final Timer timer = new HashedWheelTimer(
+            new DefaultThreadFactory("hedge-timer", true), 1L, TimeUnit.MILLISECONDS);
+    /**
+     * 发送对冲请求的线程池，对冲请求的数量受预算限制
+     */
+    private static final Executor executor = Executors.newCachedThreadPool(new DefaultThreadFactory("hedge-sender", true));
+    private static final double DEFAULT_QUANTILE = 0.95;
+
+    private final String name;
+    private final long delayNanos;
+    private final LatencyTracker latency = new LatencyTracker(DEFAULT_QUANTILE);
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+
+    /**
+     * @param name        方法名
+     * @param delayMillis 对冲延迟，0 表示使用 p95
+     */
+    public HedgePolicy(String name, long delayMillis) {
+        this.name = name;
+        this.delayNanos = TimeUnit.MILLISECONDS.toNanos(delayMillis);
+    }
+
+    /**
+     * 发送请求，慢请求发送对冲请求
+     *
+     * @param sender 真正发送请求的函数，参数是已经尝试过的提供者，见 {@link com.tomoncle.rpc.core.transport.Transport#send(Command, Collection)}
+     * @return 先返回的响应命令的 Future
+     */
+    public CompletableFuture<Command> execute(Function<Collection<URI>, CompletableFuture<Command>> sender) {
+        calls.increment();
+        HedgeBudget.deposit();
+        // 原请求的重试和对冲请求可能同时选择提供者
+        Collection<URI> tried = new CopyOnWriteArrayList<>();
+        CompletableFuture<Command> result = new CompletableFuture<>();
+        // 还没有返回的请求数，所有请求都失败了才返回异常
+        AtomicInteger outstanding = new AtomicInteger(1);
+        attempt(sender, tried, result, outstanding, false);
+        long delay = getDelayNanos();
+        if (delay > 0 && !result.isDone()) {
+            Timeout timeout = timer.newTimeout(t -> {
+                if (result.isDone() || !HedgeBudget.tryAcquire()) {
+                    return;
+                }
+                outstanding.incrementAndGet();
+                hedges.increment();
+                executor.execute(() -> attempt(sender, tried, result, outstanding, true));
+            }, delay, TimeUnit.NANOSECONDS);
+            result.whenComplete((response, throwable) -> timeout.cancel());
+        }
+        return result;
+    }
+
+    private void attempt(Function<Collection<URI>, CompletableFuture<Command>> sender, Collection<URI> tried,
+                         CompletableFuture<Command> result, AtomicInteger outstanding, boolean hedge) {
+        if (result.isDone()) {
+            // 排队等待发送时另一个请求已经返回
+            return;
+        }
+        long start = System.nanoTime();
+        CompletableFuture<Command> future;
+        try {
+            future = sender.apply(tried);
+        } catch (Throwable t) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(t);
+        }
+        future.whenComplete((response, throwable) -> {
+            if (null == throwable) {
+                latency.record(System.nanoTime() - start);
+                if (result.complete(response) && hedge) {
+                    hedgeWins.increment();
+                }
+            } else if (throwable instanceof CancellationException) {
+                // 被取消的请求至少这么慢，仍然计入响应时间，否则 p95 会偏低
+                latency.record(System.nanoTime() - start);
+            } else if (outstanding.decrementAndGet() == 0) {
+                result.completeExceptionally(throwable);
+            }
+        });
+        // 先返回的请求完成结果后，取消另一个还没有返回的请求
+        CompletableFuture<Command> attempt = future;
+        result.whenComplete((response, throwable) -> attempt.cancel(false));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return 当前的对冲延迟，单位纳秒；没有固定延迟并且样本不够时返回 -1
+     */
+    public long getDelayNanos() {
+        return delayNanos > 0 ? delayNanos : latency.getQuantileNanos();
+    }
+
+    /**
+     * @return 调用次数
+     */
+    public long getCallCount() {
+        return calls.sum();
+    }
+
+    /**
+     * @return 发送的对冲请求数
+     */
+    public long getHedgeCount() {
+        return hedges.sum();
+    }
+
+    /**
+     * @return 对冲请求先于原请求返回的次数
+     */
+    public long getHedgeWinCount() {
+        return hedgeWins.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("HedgePolicy(name=%s, delay=%.3fms, calls=%d, hedges=%d, hedgeWins=%d)",
+                name, getDelayNanos() / 1e6, getCallCount(), getHedgeCount(), getHedgeWinCount());
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.core.client.hedge;
+
+import com.tomoncle.rpc.api.annotation.Hedged;
+import com.tomoncle.rpc.core.metrics.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 对冲策略的注册中心
+ * <p>
+ * 按 "接口名#方法名" 全局共享，同一个接口的多个 Stub 共用响应时间的统计。
+ * 方法可以通过 {@link Hedged} 注解开启，也可以在创建 Stub 之前调用 {@link #enable} 开启。
+ * 所有方法共用一个对冲预算，见 {@link HedgeBudget}。
+ *
+ * @author tomoncle
+ */
+public final class Hedges {
+    private static final Logger logger = LoggerFactory.getLogger(Hedges.class);
+    private static final Map<String/*接口名#方法名*/, HedgePolicy> policies = new ConcurrentHashMap<>();
+
+    static {
+        Metrics.collector(samples -> {
+            for (HedgePolicy policy : policies.values()) {
+                String name = policy.getName();
+                samples.put(Metrics.name("rpc_hedge_calls_total", "method", name), (double) policy.getCallCount());
+                samples.put(Metrics.name("rpc_hedge_hedges_total", "method", name), (double) policy.getHedgeCount());
+                samples.put(Metrics.name("rpc_hedge_wins_total", "method", name), (double) policy.getHedgeWinCount());
+                samples.put(Metrics.name("rpc_hedge_delay_seconds", "method", name), policy.getDelayNanos() / 1e9);
+            }
+            samples.put("rpc_hedge_budget_available", HedgeBudget.getAvailable());
+            samples.put("rpc_hedge_throttled_total", (double) HedgeBudget.getThrottledCount());
+        });
+    }
+
+    private Hedges() {
+    }
+
+    /**
+     * 通过配置为方法开启对冲
+     *
+     * @param serviceClass 服务接口
+     * @param methodName   方法名
+     * @param delayMillis  对冲延迟，单位毫秒，0 表示使用 p95
+     * @return 对冲策略
+     */
+    public static HedgePolicy enable(Class<?> serviceClass, String methodName, long delayMillis) {
+        String name = policyName(serviceClass.getName(), methodName);
+        logger.info("开启对冲请求: {}, delay: {}ms", name, delayMillis);
+        return policies.computeIfAbsent(name, k -> new HedgePolicy(k, delayMillis));
+    }
+
+    /**
+     * 返回方法的对冲策略，注解声明的在这里创建
+     *
+     * @param serviceClass 服务接口
+     * @param method       接口方法
+     * @return 对冲策略，没有开启返回 null
+     */
+    public static HedgePolicy forMethod(Class<?> serviceClass, Method method) {
+        String name = policyName(serviceClass.getName(), method.getName());
+        HedgePolicy policy = policies.get(name);
+        Hedged hedged = method.getAnnotation(Hedged.class);
+        if (null == policy && null != hedged) {
+            policy = policies.computeIfAbsent(name, k -> new HedgePolicy(k, hedged.delayMillis()));
+        }
+        return policy;
+    }
+
+    /**
+     * @return 所有对冲策略，用于查看对冲次数等指标
+     */
+    public static Collection<HedgePolicy> all() {
+        return new ArrayList<>(policies.values());
+    }
+
+    private static String policyName(String interfaceName, String methodName) {
+        return interfaceName + "#" + methodName;
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.core.client.hedge;
+
+import java.util.Arrays;
+
+/**
+ * 记录一个方法最近的响应时间，估算分位数
+ * <p>
+ * 最近的样本保存在一个环形数组中，每记录一批样本重新排序计算一次分位数，
+ * 查询分位数只是一次 volatile 读。
+ *
+ * @author tomoncle
+ */
+class LatencyTracker {
+    private static final int SAMPLES = 1024;
+    private static final int RECOMPUTE_INTERVAL = 64;
+    /**
+     * 样本太少时分位数不可信
+     */
+    private static final int MIN_SAMPLES = 100;
+
+    private final double quantile;
+    private final long[] samples = new long[SAMPLES];
+    private long count = 0L;
+    private volatile long quantileNanos = -1L;
+
+    LatencyTracker(double quantile) {
+        this.quantile = quantile;
+    }
+
+    /**
+     * 记录一个响应时间
+     */
+    void record(long nanos) {
+        long[] sorted = null;
+        synchronized (this) {
+            samples[(int) (count % SAMPLES)] = nanos;
+            count++;
+            if (count >= MIN_SAMPLES && count % RECOMPUTE_INTERVAL == 0) {
+                sorted = Arrays.copyOf(samples, (int) Math.min(count, SAMPLES));
+            }
+        }
+        if (null != sorted) {
+            // 在锁外排序，不阻塞其他调用
+            Arrays.sort(sorted);
+            quantileNanos = sorted[(int) Math.min(sorted.length - 1, Math.ceil(quantile * sorted.length) - 1)];
+        }
+    }
+
+    /**
+     * @return 分位数，单位纳秒；样本不够时返回 -1
+     */
+    long getQuantileNanos() {
+        return quantileNanos;
+    }
+}
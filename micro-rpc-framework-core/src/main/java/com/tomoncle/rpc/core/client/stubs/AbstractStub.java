@@ -15,9 +15,16 @@ package com.tomoncle.rpc.core.client.stubs;
 
 
 
+import com.tomoncle.rpc.api.RpcContext;
+import com.tomoncle.rpc.core.accesslog.AccessLog;
 import com.tomoncle.rpc.core.client.RequestIdSupport;
 import com.tomoncle.rpc.core.client.ServiceStub;
 import com.tomoncle.rpc.core.client.ServiceTypes;
+import com.tomoncle.rpc.core.client.cache.ResultCache;
+import com.tomoncle.rpc.core.client.flight.SingleFlightGroup;
+import com.tomoncle.rpc.core.client.hedge.HedgePolicy;
+import com.tomoncle.rpc.core.interceptor.ClientChain;
+import com.tomoncle.rpc.core.metrics.MethodMetrics;
 import com.tomoncle.rpc.core.serialize.SerializeSupport;
 import com.tomoncle.rpc.core.transport.RequestHandlerRegistry;
 import com.tomoncle.rpc.core.transport.Transport;
@@ -28,7 +35,16 @@ import com.tomoncle.rpc.core.transport.command.ResponseHeader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 
 /**
@@ -43,43 +59,151 @@ import java.util.concurrent.ExecutionException;
  */
 public abstract class AbstractStub implements ServiceStub {
     private static final Logger logger = LoggerFactory.getLogger(AbstractStub.class);
+    /**
+     * 默认的超时时间，可以用系统属性 micro.rpc.client.timeoutMillis 设置
+     */
+    private static final long TIMEOUT_MILLIS = Long.getLong("micro.rpc.client.timeoutMillis", 10_000L);
     private Transport transport;
+    private Map<String/*方法名*/, StubMethod> methods = Collections.emptyMap();
+    /**
+     * 拦截器链的最后一环，对冲调用的请求带着已经尝试过的提供者
+     */
+    private final ClientChain transportChain = request -> request instanceof HedgeRequestCommand
+            ? transport.send(request, ((HedgeRequestCommand) request).getTried())
+            : transport.send(request);
 
     /**
      * 调用服务端，返回处理的结果
+     * <p>
+     * 开启了结果缓存的方法先查询缓存，命中时直接返回，不会构建请求命令；
+     * 开启了请求合并的方法，如果相同参数的请求正在进行中，直接等待它的结果；
+     * 开启了对冲的方法，请求太慢时再发一个请求给另一个提供者，使用先返回的结果。
+     * <p>
+     * 调用的截止时间取默认超时时间和当前线程 {@link RpcContext} 中截止时间的较早者，
+     * 剩余的时间随请求发给服务端，服务端不会再处理已经过期的请求。
+     * <p>
+     * 每次发送请求都会经过方法的客户端拦截器链（见 {@link com.tomoncle.rpc.core.interceptor.Interceptors}）。
+     * 每次远程调用（不包括命中缓存的调用）的响应时间、结果和收发的字节数记录在方法的 {@link MethodMetrics} 中，
+     * 并按配置写入访问日志（{@link AccessLog}）。
      *
      * @param request RPC请求对象 {@link RpcRequest}
      * @return 调用结果的序列化数组
      */
     public byte [] invokeRemote(RpcRequest request) {
-        // 组装命令
-        Header header = new Header.Builder()
-                .setRequestId(RequestIdSupport.next())
-                .setType(ServiceTypes.TYPE_RPC_REQUEST)
-                .setVersion(1)
-                .build();
-        byte [] payload = SerializeSupport.serialize(request);
-        Command requestCommand = new Command(header, payload);
-        logger.info("构建数据：Header:{} ，Command:{}", header,requestCommand);
+        StubMethod method = methods.getOrDefault(request.getMethodName(), StubMethod.NONE);
+        ResultCache cache = method.getResultCache();
+        if (null == cache) {
+            return invoke(request, method);
+        }
+        byte [] result = cache.get(request.getSerializedArguments());
+        if (null == result) {
+            result = invoke(request, method);
+            cache.put(request.getSerializedArguments(), result);
+        }
+        return result;
+    }
+
+    private byte [] invoke(RpcRequest request, StubMethod method) {
+        MethodMetrics metrics = method.getMetrics(request);
+        long startNanos = metrics.start();
+        String outcome = MethodMetrics.OUTCOME_ERROR;
+        int bytesOut = 0;
+        int bytesIn = 0;
         try {
-            // 调用服务端
-            Command responseCommand = transport.send(requestCommand).get();
+            long deadlineNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MILLIS);
+            Long contextDeadline = RpcContext.getDeadlineNanos();
+            if (null != contextDeadline && contextDeadline - deadlineNanos < 0) {
+                deadlineNanos = contextDeadline;
+            }
+            if (deadlineNanos - System.nanoTime() <= 0) {
+                // 上游的截止时间已经过了，不再发送请求
+                outcome = MethodMetrics.OUTCOME_TIMEOUT;
+                throw new RuntimeException(new TimeoutException("Deadline exceeded before sending " + request.getMethodName()));
+            }
+            // 只序列化一次，重试和对冲请求共用
+            byte [] payload = SerializeSupport.serialize(request);
+            bytesOut = payload.length;
+            Command responseCommand;
+            try {
+                responseCommand = send(request, payload, method, deadlineNanos)
+                        .get(Math.max(0L, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof TimeoutException) {
+                    outcome = MethodMetrics.OUTCOME_TIMEOUT;
+                }
+                throw new RuntimeException(e.getCause());
+            } catch (TimeoutException e) {
+                outcome = MethodMetrics.OUTCOME_TIMEOUT;
+                throw new RuntimeException(e);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
             ResponseHeader responseHeader = (ResponseHeader) responseCommand.getHeader();
+            outcome = MethodMetrics.outcome(responseHeader.getCode());
+            bytesIn = responseCommand.getPayload().length;
             // 如果正常返回序列化后的数组
             if(responseHeader.getCode() == Code.SUCCESS.getCode()) {
                 return responseCommand.getPayload();
             } else {
-                throw new Exception(responseHeader.getError());
+                throw new RuntimeException(new Exception(responseHeader.getError()));
             }
-        } catch (ExecutionException e) {
-            throw new RuntimeException(e.getCause());
-        } catch (Throwable e) {
-            throw new RuntimeException(e);
+        } finally {
+            metrics.addBytesOut(bytesOut);
+            metrics.addBytesIn(bytesIn);
+            long latencyNanos = metrics.complete(startNanos, outcome);
+            AccessLog.record(false, request.getInterfaceName(), request.getMethodName(), -1,
+                    outcome, latencyNanos, bytesIn, bytesOut);
         }
     }
 
+    private CompletableFuture<Command> send(RpcRequest request, byte [] payload, StubMethod method, long deadlineNanos) {
+        SingleFlightGroup singleFlightGroup = method.getSingleFlightGroup();
+        if (null == singleFlightGroup) {
+            return call(payload, method, deadlineNanos);
+        }
+        return singleFlightGroup.execute(request.getSerializedArguments(), () -> call(payload, method, deadlineNanos));
+    }
+
+    private CompletableFuture<Command> call(byte [] payload, StubMethod method, long deadlineNanos) {
+        HedgePolicy hedgePolicy = method.getHedgePolicy();
+        ClientChain chain = null == method.getChain() ? transportChain : method.getChain();
+        if (null == hedgePolicy) {
+            return chain.proceed(newRequestCommand(payload, deadlineNanos, null));
+        }
+        // 对冲请求使用新的请求序号，带上发送时剩余的时间
+        return hedgePolicy.execute(tried -> chain.proceed(newRequestCommand(payload, deadlineNanos, tried)));
+    }
+
+    /**
+     * @param tried 对冲调用已经尝试过的提供者，不是对冲调用时为 null
+     */
+    private Command newRequestCommand(byte [] payload, long deadlineNanos, Collection<URI> tried) {
+        // 剩余的时间向上取整，至少 1 毫秒，0 表示没有截止时间
+        long remainingNanos = Math.max(1L, deadlineNanos - System.nanoTime());
+        int timeoutMillis = (int) Math.min(Integer.MAX_VALUE, (remainingNanos + 999_999L) / 1_000_000L);
+        // 组装命令
+        Header header = new Header.Builder()
+                .setRequestId(RequestIdSupport.next())
+                .setType(ServiceTypes.TYPE_RPC_REQUEST)
+                .setVersion(Header.VERSION_DEADLINE)
+                .setTimeoutMillis(timeoutMillis)
+                .build();
+        Command requestCommand = null == tried ? new Command(header, payload) : new HedgeRequestCommand(header, payload, tried);
+        logger.debug("构建数据：Command:{}", requestCommand);
+        return requestCommand;
+    }
+
     @Override
     public void initTransport(Transport transport) {
         this.transport = transport;
     }
+
+    @Override
+    public void initServiceClass(Class<?> serviceClass) {
+        Map<String, StubMethod> methods = new HashMap<>();
+        for (Method method : serviceClass.getMethods()) {
+            methods.put(method.getName(), StubMethod.of(serviceClass, method, transportChain));
+        }
+        this.methods = methods;
+    }
 }
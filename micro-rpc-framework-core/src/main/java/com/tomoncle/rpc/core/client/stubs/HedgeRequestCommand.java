@@ -0,0 +1,45 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.core.client.stubs;
+
+import com.tomoncle.rpc.core.transport.command.Command;
+import com.tomoncle.rpc.core.transport.command.Header;
+
+import java.net.URI;
+import java.util.Collection;
+
+/**
+ * 对冲调用中的请求命令，带着这次调用已经尝试过的提供者
+ * <p>
+ * 对冲请求和普通请求经过同一条拦截器链，链的最后一环从请求中取出已经尝试过的提供者，
+ * 交给 {@link com.tomoncle.rpc.core.transport.Transport#send(Command, Collection)}，不需要为每次发送构建新的链。
+ * 拦截器替换了请求命令时，按普通请求发送。
+ *
+ * @author tomoncle
+ */
+final class HedgeRequestCommand extends Command {
+    private final Collection<URI> tried;
+
+    HedgeRequestCommand(Header header, byte [] payload, Collection<URI> tried) {
+        super(header, payload);
+        this.tried = tried;
+    }
+
+    /**
+     * @return 已经尝试过的提供者
+     */
+    Collection<URI> getTried() {
+        return tried;
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.core.client.stubs;
+
+import com.tomoncle.rpc.core.client.cache.ResultCache;
+import com.tomoncle.rpc.core.client.cache.ResultCaches;
+import com.tomoncle.rpc.core.client.flight.SingleFlightGroup;
+import com.tomoncle.rpc.core.client.flight.SingleFlights;
+import com.tomoncle.rpc.core.client.hedge.HedgePolicy;
+import com.tomoncle.rpc.core.client.hedge.Hedges;
+import com.tomoncle.rpc.core.interceptor.ClientChain;
+import com.tomoncle.rpc.core.interceptor.ClientInterceptor;
+import com.tomoncle.rpc.core.interceptor.Interceptors;
+import com.tomoncle.rpc.core.interceptor.RpcMethod;
+import com.tomoncle.rpc.core.metrics.MethodMetrics;
+import com.tomoncle.rpc.core.metrics.Metrics;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Stub 中每个方法的调用策略，在 Stub 初始化时创建一次，调用时不再解析注解
+ *
+ * @author tomoncle
+ */
+final class StubMethod {
+    /**
+     * 没有开启任何策略的方法
+     */
+    static final StubMethod NONE = new StubMethod(null, null, null, null, null, Collections.emptyList(), null);
+
+    private final ResultCache resultCache;
+    private final SingleFlightGroup singleFlightGroup;
+    private final HedgePolicy hedgePolicy;
+    private final MethodMetrics metrics;
+    private final ClientChain chain;
+
+    private StubMethod(ResultCache resultCache, SingleFlightGroup singleFlightGroup, HedgePolicy hedgePolicy,
+                       MethodMetrics metrics, RpcMethod rpcMethod, List<ClientInterceptor> interceptors,
+                       ClientChain terminal) {
+        this.resultCache = resultCache;
+        this.singleFlightGroup = singleFlightGroup;
+        this.hedgePolicy = hedgePolicy;
+        this.metrics = metrics;
+        this.chain = null == terminal ? null : Interceptors.clientChain(interceptors, rpcMethod, terminal);
+    }
+
+    /**
+     * @param terminal 拦截器链的最后一环，把请求交给 Stub 的 Transport 发送
+     */
+    static StubMethod of(Class<?> serviceClass, Method method, ClientChain terminal) {
+        RpcMethod rpcMethod = new RpcMethod(serviceClass.getName(), method.getName());
+        return new StubMethod(
+                ResultCaches.forMethod(serviceClass, method),
+                SingleFlights.forMethod(serviceClass, method),
+                Hedges.forMethod(serviceClass, method),
+                Metrics.client(rpcMethod.getServiceName(), rpcMethod.getMethodName()),
+                rpcMethod,
+                Interceptors.clientInterceptors(),
+                terminal);
+    }
+
+    /**
+     * @return 结果缓存，没有开启返回 null
+     */
+    ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * @return 请求合并，没有开启返回 null
+     */
+    SingleFlightGroup getSingleFlightGroup() {
+        return singleFlightGroup;
+    }
+
+    /**
+     * @return 对冲策略，没有开启返回 null
+     */
+    HedgePolicy getHedgePolicy() {
+        return hedgePolicy;
+    }
+
+    /**
+     * @return 创建时构建好的拦截器链，没有对应的方法时返回 null
+     */
+    ClientChain getChain() {
+        return chain;
+    }
+
+    /**
+     * @param request 调用请求，没有对应的方法时按请求中的接口名和方法名查找指标
+     * @return 方法在客户端的指标
+     */
+    MethodMetrics getMetrics(RpcRequest request) {
+        return null != metrics ? metrics : Metrics.client(request.getInterfaceName(), request.getMethodName());
+    }
+}
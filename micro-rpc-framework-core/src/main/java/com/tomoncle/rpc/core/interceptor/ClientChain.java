@@ -0,0 +1,35 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.core.interceptor;
+
+import com.tomoncle.rpc.core.transport.command.Command;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 客户端拦截器链中的下一环，最后一环把请求交给 {@link com.tomoncle.rpc.core.transport.Transport} 发送
+ *
+ * @author tomoncle
+ */
+@FunctionalInterface
+public interface ClientChain {
+
+    /**
+     * 继续发送请求
+     *
+     * @param request 请求命令
+     * @return 响应命令的 Future
+     */
+    CompletableFuture<Command> proceed(Command request);
+}
@@ -0,0 +1,38 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.core.interceptor;
+
+import com.tomoncle.rpc.core.transport.command.Command;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 客户端拦截器，在 Stub 构建好请求命令之后、交给 Transport 发送之前调用
+ * <p>
+ * 每次发送都会经过拦截器，包括对冲和重试的请求，每次发送的请求命令有自己的请求序号和剩余时间（见 {@link Command#getHeader()}）。
+ * 拦截器可以修改或者替换请求命令、直接返回响应而不发送，也可以在返回的 Future 上记录耗时和结果。
+ *
+ * @author tomoncle
+ */
+@FunctionalInterface
+public interface ClientInterceptor {
+
+    /**
+     * @param method  调用的方法
+     * @param request 请求命令
+     * @param next    拦截器链中的下一环，调用 {@link ClientChain#proceed} 继续发送
+     * @return 响应命令的 Future
+     */
+    CompletableFuture<Command> intercept(RpcMethod method, Command request, ClientChain next);
+}
@@ -0,0 +1,116 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.core.interceptor;
+
+import com.tomoncle.rpc.api.spi.ServiceLoadSupport;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 拦截器的注册中心
+ * <p>
+ * 拦截器可以通过 SPI 加载（META-INF/services/com.tomoncle.rpc.core.interceptor.ClientInterceptor 或者 ServerInterceptor，
+ * 按文件中的顺序），也可以调用 {@link #addClientInterceptor}、{@link #addServerInterceptor} 添加，排在 SPI 加载的拦截器之后。
+ * 先注册的拦截器在外层，先看到请求、后看到响应。
+ * <p>
+ * 拦截器链为每个方法构建一次（客户端在创建 Stub 时，服务端在注册服务提供者时），
+ * 调用时不再分配对象；没有拦截器时链就是最后一环本身，没有额外的开销。
+ * 构建之后注册的拦截器只对之后构建的链生效。
+ *
+ * @author tomoncle
+ */
+public final class Interceptors {
+    private static final List<ClientInterceptor> clientInterceptors =
+            new CopyOnWriteArrayList<>(ServiceLoadSupport.loadAll(ClientInterceptor.class));
+    private static final List<ServerInterceptor> serverInterceptors =
+            new CopyOnWriteArrayList<>(ServiceLoadSupport.loadAll(ServerInterceptor.class));
+
+    private Interceptors() {
+    }
+
+    public static void addClientInterceptor(ClientInterceptor interceptor) {
+        clientInterceptors.add(interceptor);
+    }
+
+    public static void removeClientInterceptor(ClientInterceptor interceptor) {
+        clientInterceptors.remove(interceptor);
+    }
+
+    public static void addServerInterceptor(ServerInterceptor interceptor) {
+        serverInterceptors.add(interceptor);
+    }
+
+    public static void removeServerInterceptor(ServerInterceptor interceptor) {
+        serverInterceptors.remove(interceptor);
+    }
+
+    /**
+     * @return 当前注册的客户端拦截器
+     */
+    public static List<ClientInterceptor> clientInterceptors() {
+        return new ArrayList<>(clientInterceptors);
+    }
+
+    /**
+     * 用已注册的客户端拦截器构建拦截器链
+     *
+     * @param method   调用的方法
+     * @param terminal 最后一环
+     * @return 拦截器链，没有拦截器时返回 terminal
+     */
+    public static ClientChain clientChain(RpcMethod method, ClientChain terminal) {
+        return clientChain(clientInterceptors, method, terminal);
+    }
+
+    /**
+     * 用指定的客户端拦截器构建拦截器链
+     */
+    public static ClientChain clientChain(List<ClientInterceptor> interceptors, RpcMethod method, ClientChain terminal) {
+        ClientChain chain = terminal;
+        Object[] array = interceptors.toArray();
+        for (int i = array.length - 1; i >= 0; i--) {
+            ClientInterceptor interceptor = (ClientInterceptor) array[i];
+            ClientChain next = chain;
+            chain = request -> interceptor.intercept(method, request, next);
+        }
+        return chain;
+    }
+
+    /**
+     * 用已注册的服务端拦截器构建拦截器链
+     *
+     * @param method   调用的方法
+     * @param terminal 最后一环
+     * @return 拦截器链，没有拦截器时返回 terminal
+     */
+    public static ServerChain serverChain(RpcMethod method, ServerChain terminal) {
+        return serverChain(serverInterceptors, method, terminal);
+    }
+
+    /**
+     * 用指定的服务端拦截器构建拦截器链
+     */
+    public static ServerChain serverChain(List<ServerInterceptor> interceptors, RpcMethod method, ServerChain terminal) {
+        ServerChain chain = terminal;
+        Object[] array = interceptors.toArray();
+        for (int i = array.length - 1; i >= 0; i--) {
+            ServerInterceptor interceptor = (ServerInterceptor) array[i];
+            ServerChain next = chain;
+            chain = (rpcRequest, request) -> interceptor.intercept(method, rpcRequest, request, next);
+        }
+        return chain;
+    }
+}
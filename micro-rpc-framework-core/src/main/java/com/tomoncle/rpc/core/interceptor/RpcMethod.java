@@ -0,0 +1,34 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.core.interceptor;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 拦截器看到的方法标识，每个方法只创建一次
+ *
+ * @author tomoncle
+ */
+@AllArgsConstructor
+@Getter
+public class RpcMethod {
+    private final String serviceName;
+    private final String methodName;
+
+    @Override
+    public String toString() {
+        return serviceName + "#" + methodName;
+    }
+}
@@ -0,0 +1,35 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.core.interceptor;
+
+import com.tomoncle.rpc.core.client.stubs.RpcRequest;
+import com.tomoncle.rpc.core.transport.command.Command;
+
+/**
+ * 服务端拦截器链中的下一环，最后一环调用服务提供者
+ *
+ * @author tomoncle
+ */
+@FunctionalInterface
+public interface ServerChain {
+
+    /**
+     * 继续处理请求
+     *
+     * @param rpcRequest 反序列化后的请求
+     * @param request    请求命令
+     * @return 响应命令
+     */
+    Command proceed(RpcRequest rpcRequest, Command request);
+}
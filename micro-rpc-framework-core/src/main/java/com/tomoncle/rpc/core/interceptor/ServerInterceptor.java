@@ -0,0 +1,39 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.core.interceptor;
+
+import com.tomoncle.rpc.core.client.stubs.RpcRequest;
+import com.tomoncle.rpc.core.transport.command.Command;
+
+/**
+ * 服务端拦截器，在请求反序列化之后、调用服务提供者之前调用
+ * <p>
+ * 拦截器在业务线程中执行，可以检查请求（例如鉴权）后直接返回错误响应而不调用服务提供者，
+ * 也可以记录处理的耗时和结果；截止时间可以从 {@link com.tomoncle.rpc.api.RpcContext} 读取。
+ * 系统属性 micro.rpc.server.pooledRequests=true 时请求命令在处理完成后会被回收复用，拦截器不能在返回之后继续持有它。
+ *
+ * @author tomoncle
+ */
+@FunctionalInterface
+public interface ServerInterceptor {
+
+    /**
+     * @param method     调用的方法
+     * @param rpcRequest 反序列化后的请求
+     * @param request    请求命令
+     * @param next       拦截器链中的下一环，调用 {@link ServerChain#proceed} 继续处理
+     * @return 响应命令
+     */
+    Command intercept(RpcMethod method, RpcRequest rpcRequest, Command request, ServerChain next);
+}
@@ -0,0 +1,80 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.core.metrics;
+
+/**
+ * 直方图在某一时刻的快照，不会再变化
+ *
+ * @author tomoncle
+ */
+public class HistogramSnapshot {
+    private final long[] buckets;
+    private final long count;
+    private final long sumNanos;
+    private final long maxNanos;
+
+    HistogramSnapshot(long[] buckets, long count, long sumNanos, long maxNanos) {
+        this.buckets = buckets;
+        this.count = count;
+        this.sumNanos = sumNanos;
+        this.maxNanos = maxNanos;
+    }
+
+    /**
+     * @param quantile 分位数，0 到 1 之间，例如 0.99
+     * @return 分位数对应的响应时间（所在桶的上界，不超过最大值），单位纳秒；没有记录时返回 0
+     */
+    public long getValueAtQuantile(double quantile) {
+        if (count == 0L) {
+            return 0L;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(quantile * count));
+        long seen = 0L;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= rank) {
+                return Math.min(LatencyHistogram.highestValueOf(i), maxNanos);
+            }
+        }
+        return maxNanos;
+    }
+
+    /**
+     * @return 记录的值的个数
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return 所有值的和，单位纳秒
+     */
+    public long getSumNanos() {
+        return sumNanos;
+    }
+
+    /**
+     * @return 最大值，单位纳秒
+     */
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    /**
+     * @return 平均值，单位纳秒；没有记录时返回 0
+     */
+    public double getMeanNanos() {
+        return count == 0L ? 0D : (double) sumNanos / count;
+    }
+}
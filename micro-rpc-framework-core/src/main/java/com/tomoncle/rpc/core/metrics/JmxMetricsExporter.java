@@ -0,0 +1,136 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.core.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 把指标注册为一个 JMX MBean：com.tomoncle.rpc:type=Metrics，可以用 jconsole、jmc 等工具查看
+ * <p>
+ * 方法的指标按 "端.接口名#方法名.指标" 命名，例如 CLIENT.com.x.HelloService#hello.p99Micros，
+ * 响应时间的单位是微秒；其他指标使用注册时的名称。每次读取属性都会重新生成快照。
+ * <p>
+ * 默认开启，可以用系统属性 micro.rpc.metrics.jmx=false 关闭。
+ *
+ * @author tomoncle
+ */
+public class JmxMetricsExporter implements MetricsExporter, DynamicMBean {
+    private static final Logger logger = LoggerFactory.getLogger(JmxMetricsExporter.class);
+    private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("micro.rpc.metrics.jmx", "true"));
+    static final String OBJECT_NAME = "com.tomoncle.rpc:type=Metrics";
+
+    @Override
+    public void start() throws Exception {
+        if (!ENABLED) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        if (!server.isRegistered(name)) {
+            server.registerMBean(this, name);
+            logger.info("注册指标 MBean: {}", OBJECT_NAME);
+        }
+    }
+
+    /**
+     * @return 所有属性的当前值
+     */
+    static Map<String, Number> attributes(MetricsSnapshot snapshot) {
+        Map<String, Number> attributes = new LinkedHashMap<>();
+        for (MethodSnapshot method : snapshot.getMethods()) {
+            String prefix = method.getSide() + "." + method.getServiceName() + "#" + method.getMethodName() + ".";
+            HistogramSnapshot latency = method.getLatency();
+            attributes.put(prefix + "requests", method.getRequestCount());
+            method.getOutcomeCounts().forEach((outcome, count) -> attributes.put(prefix + "outcome." + outcome, count));
+            attributes.put(prefix + "inFlight", method.getInFlight());
+            attributes.put(prefix + "bytesIn", method.getBytesIn());
+            attributes.put(prefix + "bytesOut", method.getBytesOut());
+            attributes.put(prefix + "meanMicros", latency.getMeanNanos() / 1000D);
+            attributes.put(prefix + "p50Micros", micros(latency.getValueAtQuantile(0.5)));
+            attributes.put(prefix + "p90Micros", micros(latency.getValueAtQuantile(0.9)));
+            attributes.put(prefix + "p99Micros", micros(latency.getValueAtQuantile(0.99)));
+            attributes.put(prefix + "p999Micros", micros(latency.getValueAtQuantile(0.999)));
+            attributes.put(prefix + "maxMicros", micros(latency.getMaxNanos()));
+        }
+        attributes.putAll(snapshot.getGauges());
+        return attributes;
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Number value = attributes(Metrics.snapshot()).get(attribute);
+        if (null == value) {
+            throw new AttributeNotFoundException(attribute);
+        }
+        return value;
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] names) {
+        Map<String, Number> attributes = attributes(Metrics.snapshot());
+        AttributeList list = new AttributeList();
+        for (String name : names) {
+            Number value = attributes.get(name);
+            if (null != value) {
+                list.add(new Attribute(name, value));
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) {
+        throw new UnsupportedOperationException("Metrics are read-only!");
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) {
+        throw new UnsupportedOperationException(actionName);
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        Map<String, Number> attributes = attributes(Metrics.snapshot());
+        MBeanAttributeInfo[] infos = new MBeanAttributeInfo[attributes.size()];
+        int i = 0;
+        for (Map.Entry<String, Number> entry : attributes.entrySet()) {
+            infos[i++] = new MBeanAttributeInfo(entry.getKey(), entry.getValue().getClass().getName(),
+                    entry.getKey(), true, false, false);
+        }
+        return new MBeanInfo(getClass().getName(), "RPC metrics", infos, null, null, null);
+    }
+}
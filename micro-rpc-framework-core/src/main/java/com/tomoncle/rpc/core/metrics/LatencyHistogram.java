@@ -0,0 +1,115 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.core.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 响应时间直方图，和 HdrHistogram 一样按 "指数 + 线性子桶" 划分桶
+ * <p>
+ * 小于 {@link #SUB_BUCKETS} 纳秒的值每个值一个桶，更大的值按 2 的幂分段，每段再等分成 16 个子桶，
+ * 相对误差不超过 1/16，最大记录 {@link #MAX_VALUE_NANOS}（约 137 秒），超过的值计入最后一个桶。
+ * <p>
+ * 记录是无锁的：桶计数分成若干条带，不同线程按线程 ID 写不同的条带，读取快照时再合并，
+ * 热点桶不会让所有线程争用同一个缓存行。
+ *
+ * @author tomoncle
+ */
+public class LatencyHistogram {
+    static final int SUB_BUCKET_BITS = 5;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final long MAX_VALUE_NANOS = (1L << 37) - 1;
+    static final int BUCKETS = indexOf(MAX_VALUE_NANOS) + 1;
+    private static final int STRIPES = stripes();
+
+    private final AtomicLongArray[] stripes = new AtomicLongArray[STRIPES];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new AtomicLongArray(BUCKETS);
+        }
+    }
+
+    /**
+     * 记录一个响应时间
+     *
+     * @param nanos 响应时间，单位纳秒
+     */
+    public void record(long nanos) {
+        long value = Math.max(0L, Math.min(nanos, MAX_VALUE_NANOS));
+        stripes[(int) Thread.currentThread().getId() & (STRIPES - 1)].incrementAndGet(indexOf(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * 合并所有条带，快照期间仍在记录的值可能只计入了一部分（计数和桶之间不是严格一致的）
+     *
+     * @return 直方图的快照
+     */
+    public HistogramSnapshot snapshot() {
+        long[] buckets = new long[BUCKETS];
+        long total = 0L;
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < BUCKETS; i++) {
+                long n = stripe.get(i);
+                buckets[i] += n;
+                total += n;
+            }
+        }
+        return new HistogramSnapshot(buckets, total, sum.sum(), max.get());
+    }
+
+    /**
+     * @return 记录的值的个数
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        // value >> shift 落在 [SUB_BUCKETS / 2, SUB_BUCKETS) 之间
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        return ((shift + 1) << (SUB_BUCKET_BITS - 1)) + (int) (value >> shift) - (SUB_BUCKETS >> 1);
+    }
+
+    /**
+     * @return 桶中最大的值
+     */
+    static long highestValueOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index >> (SUB_BUCKET_BITS - 1)) - 1;
+        long subBucket = (index & ((SUB_BUCKETS >> 1) - 1)) + (SUB_BUCKETS >> 1);
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    private static int stripes() {
+        int stripes = 1;
+        while (stripes < Math.min(8, Runtime.getRuntime().availableProcessors())) {
+            stripes <<= 1;
+        }
+        return stripes;
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.core.metrics;
+
+import com.tomoncle.rpc.core.transport.command.Code;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 一个方法在客户端或者服务端的指标：响应时间直方图、按结果分类的请求数、在途请求数、收发的字节数
+ * <p>
+ * 所有计数器都是 {@link LongAdder}，多个线程同时记录时不会争用同一个变量。
+ *
+ * @author tomoncle
+ */
+public class MethodMetrics {
+    /**
+     * 客户端没有收到响应（超时、连接失败等）时的结果
+     */
+    public static final String OUTCOME_TIMEOUT = "TIMEOUT";
+    public static final String OUTCOME_ERROR = "ERROR";
+
+    private final Metrics.Side side;
+    private final String serviceName;
+    private final String methodName;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final Map<String/*结果*/, LongAdder> outcomes = new ConcurrentHashMap<>();
+    private final LongAdder inFlight = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+
+    MethodMetrics(Metrics.Side side, String serviceName, String methodName) {
+        this.side = side;
+        this.serviceName = serviceName;
+        this.methodName = methodName;
+    }
+
+    /**
+     * 开始一次请求
+     *
+     * @return 开始时间，传给 {@link #complete(long, String)}
+     */
+    public long start() {
+        inFlight.increment();
+        return System.nanoTime();
+    }
+
+    /**
+     * 完成一次请求，记录响应时间和结果
+     *
+     * @param startNanos {@link #start()} 返回的开始时间
+     * @param outcome    结果，{@link Code} 的名称或者 {@link #OUTCOME_TIMEOUT}、{@link #OUTCOME_ERROR}
+     * @return 响应时间，单位纳秒
+     */
+    public long complete(long startNanos, String outcome) {
+        long latencyNanos = System.nanoTime() - startNanos;
+        latency.record(latencyNanos);
+        inFlight.decrement();
+        LongAdder counter = outcomes.get(outcome);
+        if (null == counter) {
+            counter = outcomes.computeIfAbsent(outcome, k -> new LongAdder());
+        }
+        counter.increment();
+        return latencyNanos;
+    }
+
+    public void addBytesIn(long bytes) {
+        bytesIn.add(bytes);
+    }
+
+    public void addBytesOut(long bytes) {
+        bytesOut.add(bytes);
+    }
+
+    /**
+     * @param code 响应状态码
+     * @return 状态码对应的结果名称
+     */
+    public static String outcome(int code) {
+        Code value = Code.valueOf(code);
+        return null == value ? String.valueOf(code) : value.name();
+    }
+
+    public Metrics.Side getSide() {
+        return side;
+    }
+
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    public String getMethodName() {
+        return methodName;
+    }
+
+    /**
+     * @return 指标在某一时刻的快照
+     */
+    public MethodSnapshot snapshot() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        outcomes.forEach((outcome, counter) -> counts.put(outcome, counter.sum()));
+        return new MethodSnapshot(side, serviceName, methodName, latency.snapshot(),
+                Collections.unmodifiableMap(counts), inFlight.sum(), bytesIn.sum(), bytesOut.sum());
+    }
+}
@@ -0,0 +1,48 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.core.metrics;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Map;
+
+/**
+ * 一个方法的指标快照，见 {@link MethodMetrics}
+ *
+ * @author tomoncle
+ */
+@AllArgsConstructor
+@Getter
+public class MethodSnapshot {
+    private final Metrics.Side side;
+    private final String serviceName;
+    private final String methodName;
+    private final HistogramSnapshot latency;
+    private final Map<String/*结果*/, Long> outcomeCounts;
+    private final long inFlight;
+    private final long bytesIn;
+    private final long bytesOut;
+
+    /**
+     * @return 所有结果的请求数之和
+     */
+    public long getRequestCount() {
+        long total = 0L;
+        for (long count : outcomeCounts.values()) {
+            total += count;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,194 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.core.metrics;
+
+import com.tomoncle.rpc.api.spi.ServiceLoadSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.DoubleSupplier;
+
+/**
+ * 指标的注册中心
+ * <p>
+ * 每个方法在客户端和服务端各有一份 {@link MethodMetrics}，按 "接口名#方法名" 全局共享；
+ * 其他组件可以注册单个的指标（{@link #gauge}、{@link #counter}），或者注册一个收集器一次提供多个指标（{@link #collector}），
+ * 这些指标只在读取快照时计算，不影响调用的性能。
+ * <p>
+ * 指标可以用 {@link #snapshot()} 读取，也可以由 {@link MetricsExporter} 导出，
+ * 内置了 JMX（{@link JmxMetricsExporter}）和 Prometheus 文本格式的 HTTP 端点（{@link PrometheusMetricsExporter}）。
+ * <p>
+ * 指标名称使用 Prometheus 的格式，可以带标签，例如 rpc_hedge_calls_total{method="HelloService#hello"}，见 {@link #name}。
+ *
+ * @author tomoncle
+ */
+public final class Metrics {
+    private static final Logger logger = LoggerFactory.getLogger(Metrics.class);
+    private static final Map<String/*端#接口名#方法名*/, MethodMetrics> methods = new ConcurrentHashMap<>();
+    private static final Map<String/*指标名称*/, DoubleSupplier> gauges = new ConcurrentHashMap<>();
+    private static final List<Consumer<Map<String, Double>>> collectors = new CopyOnWriteArrayList<>();
+    private static boolean exportersStarted = false;
+
+    /**
+     * 指标属于调用的哪一端
+     */
+    public enum Side {
+        CLIENT, SERVER
+    }
+
+    private Metrics() {
+    }
+
+    /**
+     * @return 方法在客户端的指标
+     */
+    public static MethodMetrics client(String serviceName, String methodName) {
+        return method(Side.CLIENT, serviceName, methodName);
+    }
+
+    /**
+     * @return 方法在服务端的指标
+     */
+    public static MethodMetrics server(String serviceName, String methodName) {
+        return method(Side.SERVER, serviceName, methodName);
+    }
+
+    private static MethodMetrics method(Side side, String serviceName, String methodName) {
+        String key = side + "#" + serviceName + "#" + methodName;
+        MethodMetrics metrics = methods.get(key);
+        if (null == metrics) {
+            metrics = methods.computeIfAbsent(key, k -> new MethodMetrics(side, serviceName, methodName));
+        }
+        return metrics;
+    }
+
+    /**
+     * 注册一个指标，同名的指标会被替换
+     *
+     * @param name  指标名称
+     * @param value 读取快照时计算指标的当前值
+     */
+    public static void gauge(String name, DoubleSupplier value) {
+        gauges.put(name, value);
+    }
+
+    /**
+     * 注册一个计数器，同名的计数器只创建一次，可以增加也可以减少
+     *
+     * @param name 指标名称
+     * @return 计数器
+     */
+    public static LongAdder counter(String name) {
+        LongAdder counter = new LongAdder();
+        DoubleSupplier existing = gauges.putIfAbsent(name, new CounterGauge(counter));
+        if (existing instanceof CounterGauge) {
+            return ((CounterGauge) existing).counter;
+        }
+        return counter;
+    }
+
+    /**
+     * 注册一个收集器，读取快照时把多个指标放进参数中的 Map
+     *
+     * @param collector 收集器
+     */
+    public static void collector(Consumer<Map<String/*指标名称*/, Double>> collector) {
+        collectors.add(collector);
+    }
+
+    /**
+     * @return 所有方法的指标
+     */
+    public static Collection<MethodMetrics> methods() {
+        return new ArrayList<>(methods.values());
+    }
+
+    /**
+     * @return 所有指标在当前时刻的快照
+     */
+    public static MetricsSnapshot snapshot() {
+        List<MethodSnapshot> methodSnapshots = new ArrayList<>(methods.size());
+        for (MethodMetrics metrics : methods.values()) {
+            methodSnapshots.add(metrics.snapshot());
+        }
+        Map<String, Double> values = new TreeMap<>();
+        gauges.forEach((name, gauge) -> values.put(name, gauge.getAsDouble()));
+        for (Consumer<Map<String, Double>> collector : collectors) {
+            collector.accept(values);
+        }
+        return new MetricsSnapshot(methodSnapshots, values);
+    }
+
+    /**
+     * 拼接带标签的指标名称
+     *
+     * @param name   指标名称
+     * @param labels 标签名和标签值交替出现，例如 "method", "HelloService#hello"
+     * @return 例如 name{method="HelloService#hello"}
+     */
+    public static String name(String name, String... labels) {
+        if (labels.length == 0) {
+            return name;
+        }
+        StringBuilder builder = new StringBuilder(name).append('{');
+        for (int i = 0; i + 1 < labels.length; i += 2) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(labels[i]).append("=\"")
+                    .append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+                    .append('"');
+        }
+        return builder.append('}').toString();
+    }
+
+    /**
+     * 启动通过 SPI 加载的所有 {@link MetricsExporter}，只启动一次，每个导出器根据自己的配置决定是否开启
+     */
+    public static synchronized void startExporters() {
+        if (exportersStarted) {
+            return;
+        }
+        exportersStarted = true;
+        for (MetricsExporter exporter : ServiceLoadSupport.loadAll(MetricsExporter.class)) {
+            try {
+                exporter.start();
+            } catch (Exception e) {
+                logger.warn("启动指标导出失败: {}", exporter.getClass().getName(), e);
+            }
+        }
+    }
+
+    private static final class CounterGauge implements DoubleSupplier {
+        private final LongAdder counter;
+
+        private CounterGauge(LongAdder counter) {
+            this.counter = counter;
+        }
+
+        @Override
+        public double getAsDouble() {
+            return counter.sum();
+        }
+    }
+}
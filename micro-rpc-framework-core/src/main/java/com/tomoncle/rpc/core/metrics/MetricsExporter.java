@@ -0,0 +1,31 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.core.metrics;
+
+/**
+ * 指标导出，通过 SPI 加载，由 {@link Metrics#startExporters()} 启动
+ * <p>
+ * 导出器从 {@link Metrics#snapshot()} 读取指标，根据自己的配置决定是否开启，没有开启时 {@link #start()} 什么也不做。
+ *
+ * @author tomoncle
+ */
+public interface MetricsExporter {
+
+    /**
+     * 开始导出指标
+     *
+     * @throws Exception 启动失败
+     */
+    void start() throws Exception;
+}
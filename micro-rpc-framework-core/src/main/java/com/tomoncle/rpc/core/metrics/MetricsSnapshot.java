@@ -0,0 +1,38 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.core.metrics;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 所有指标在某一时刻的快照，见 {@link Metrics#snapshot()}
+ *
+ * @author tomoncle
+ */
+@AllArgsConstructor
+@Getter
+public class MetricsSnapshot {
+    /**
+     * 每个方法在客户端和服务端的指标
+     */
+    private final List<MethodSnapshot> methods;
+    /**
+     * 其他指标，名称 -> 当前值，例如 rpc_client_pending_requests
+     */
+    private final Map<String, Double> gauges;
+}
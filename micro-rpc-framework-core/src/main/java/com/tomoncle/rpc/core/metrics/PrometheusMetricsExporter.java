@@ -0,0 +1,204 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.core.metrics;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 在一个本地的 HTTP 端点上以 Prometheus 文本格式导出指标：GET http://127.0.0.1:{port}/metrics
+ * <p>
+ * 方法的响应时间导出为 summary（p50、p90、p99、p999，单位秒），请求数按结果（{@link com.tomoncle.rpc.core.transport.command.Code}）分类，
+ * 名称以 _total 结尾的其他指标导出为 counter，其余为 gauge。
+ * <p>
+ * 默认不开启，用系统属性 micro.rpc.metrics.http.port 设置端口后开启，
+ * 监听地址默认是 127.0.0.1，可以用 micro.rpc.metrics.http.host 设置。
+ * 端点只有一个 IO 线程（守护线程），不影响 RPC 的 IO 线程。
+ *
+ * @author tomoncle
+ */
+public class PrometheusMetricsExporter implements MetricsExporter {
+    private static final Logger logger = LoggerFactory.getLogger(PrometheusMetricsExporter.class);
+    private static final Integer PORT = Integer.getInteger("micro.rpc.metrics.http.port");
+    private static final String HOST = System.getProperty("micro.rpc.metrics.http.host", "127.0.0.1");
+    private static final String PATH = "/metrics";
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private EventLoopGroup eventGroup;
+    private Channel channel;
+
+    @Override
+    public void start() throws Exception {
+        if (null == PORT) {
+            return;
+        }
+        EventLoopGroup eventGroup = new NioEventLoopGroup(1, new DefaultThreadFactory("metrics-http", true));
+        try {
+            channel = new ServerBootstrap()
+                    .group(eventGroup)
+                    .channel(NioServerSocketChannel.class)
+                    .childHandler(new ChannelInitializer<Channel>() {
+                        @Override
+                        protected void initChannel(Channel channel) {
+                            channel.pipeline()
+                                    .addLast(new HttpServerCodec())
+                                    .addLast(new HttpObjectAggregator(8192))
+                                    .addLast(new MetricsHandler());
+                        }
+                    })
+                    .bind(HOST, PORT).sync().channel();
+        } catch (Exception e) {
+            eventGroup.shutdownGracefully();
+            throw e;
+        }
+        this.eventGroup = eventGroup;
+        logger.info("Prometheus 指标端点: http://{}:{}{}", HOST, PORT, PATH);
+    }
+
+    /**
+     * 停止 HTTP 端点
+     */
+    public void stop() {
+        if (null != channel) {
+            channel.close();
+        }
+        if (null != eventGroup) {
+            eventGroup.shutdownGracefully();
+        }
+    }
+
+    /**
+     * 把快照格式化为 Prometheus 文本格式
+     *
+     * @param snapshot 指标快照
+     * @return Prometheus 文本格式
+     */
+    public static String format(MetricsSnapshot snapshot) {
+        StringBuilder out = new StringBuilder(4096);
+        for (Metrics.Side side : Metrics.Side.values()) {
+            String prefix = "rpc_" + side.name().toLowerCase() + "_";
+            String latency = prefix + "latency_seconds";
+            String requests = prefix + "requests_total";
+            String inFlight = prefix + "in_flight";
+            String bytesIn = prefix + "bytes_in_total";
+            String bytesOut = prefix + "bytes_out_total";
+            boolean typed = false;
+            for (MethodSnapshot method : snapshot.getMethods()) {
+                if (method.getSide() != side) {
+                    continue;
+                }
+                if (!typed) {
+                    type(out, latency, "summary");
+                    type(out, requests, "counter");
+                    type(out, inFlight, "gauge");
+                    type(out, bytesIn, "counter");
+                    type(out, bytesOut, "counter");
+                    typed = true;
+                }
+                String service = method.getServiceName();
+                String name = method.getMethodName();
+                HistogramSnapshot histogram = method.getLatency();
+                for (double quantile : QUANTILES) {
+                    sample(out, Metrics.name(latency, "service", service, "method", name, "quantile", String.valueOf(quantile)),
+                            seconds(histogram.getValueAtQuantile(quantile)));
+                }
+                sample(out, Metrics.name(latency + "_sum", "service", service, "method", name), seconds(histogram.getSumNanos()));
+                sample(out, Metrics.name(latency + "_count", "service", service, "method", name), histogram.getCount());
+                for (Map.Entry<String, Long> entry : method.getOutcomeCounts().entrySet()) {
+                    sample(out, Metrics.name(requests, "service", service, "method", name, "code", entry.getKey()), entry.getValue());
+                }
+                sample(out, Metrics.name(inFlight, "service", service, "method", name), method.getInFlight());
+                sample(out, Metrics.name(bytesIn, "service", service, "method", name), method.getBytesIn());
+                sample(out, Metrics.name(bytesOut, "service", service, "method", name), method.getBytesOut());
+            }
+        }
+        Set<String> typed = new HashSet<>();
+        for (Map.Entry<String, Double> entry : snapshot.getGauges().entrySet()) {
+            String name = entry.getKey();
+            int labels = name.indexOf('{');
+            String family = labels < 0 ? name : name.substring(0, labels);
+            if (typed.add(family)) {
+                type(out, family, family.endsWith("_total") ? "counter" : "gauge");
+            }
+            sample(out, name, entry.getValue());
+        }
+        return out.toString();
+    }
+
+    private static void type(StringBuilder out, String family, String type) {
+        out.append("# TYPE ").append(family).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, double value) {
+        out.append(name).append(' ');
+        if (value == Math.rint(value) && !Double.isInfinite(value)) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / 1e9;
+    }
+
+    private static final class MetricsHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest request) {
+            FullHttpResponse response;
+            if (request.uri().equals(PATH) || request.uri().startsWith(PATH + "?")) {
+                ByteBuf content = Unpooled.copiedBuffer(format(Metrics.snapshot()), StandardCharsets.UTF_8);
+                response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK, content);
+                response.headers().set(HttpHeaderNames.CONTENT_TYPE, CONTENT_TYPE);
+            } else {
+                response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.NOT_FOUND);
+            }
+            response.headers().setInt(HttpHeaderNames.CONTENT_LENGTH, response.content().readableBytes());
+            ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            logger.warn("Metrics request failed!", cause);
+            ctx.close();
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.core.nameservice;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 本地注册中心的租约表，和注册文件放在同一个目录下的一个内存映射文件
+ * <pre>
+ * +------------------- 头部 64 字节 --------------------+
+ * | magic(4) | version(4) | 使用过的槽位数(4) | 保留     |
+ * +----------------------------------------------------+
+ * | 槽位: owner(8) | 最后一次续约的时间(8) | ...         |
+ * +----------------------------------------------------+
+ * </pre>
+ * 每个进程占用一个槽位，续约只是往自己的槽位写一个时间戳，不加锁、不需要系统调用，也不会改写注册日志；
+ * 占用和释放槽位时才需要排它锁。
+ *
+ * @author tomoncle
+ */
+final class LeaseTable {
+    private static final int MAGIC = 0x4D524C53;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int HIGH_WATER_OFFSET = 8;
+    private static final int SLOT_SIZE = 16;
+    private static final int MAX_SLOTS = 4096;
+    private static final int SIZE = HEADER_SIZE + SLOT_SIZE * MAX_SLOTS;
+
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+
+    LeaseTable(File file) throws IOException {
+        this.raf = new RandomAccessFile(file, "rw");
+        this.channel = raf.getChannel();
+        try (FileLock ignored = channel.lock()) {
+            if (channel.size() < SIZE) {
+                raf.setLength(SIZE);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0L, SIZE);
+            if (buffer.getInt(MAGIC_OFFSET) != MAGIC) {
+                buffer.putInt(MAGIC_OFFSET, MAGIC);
+                buffer.putInt(VERSION_OFFSET, VERSION);
+                buffer.putInt(HIGH_WATER_OFFSET, 0);
+            }
+        }
+    }
+
+    /**
+     * 占用一个空闲的槽位
+     *
+     * @return 槽位，租约表满了返回 -1
+     */
+    synchronized int claim(long owner, long nowMillis) throws IOException {
+        try (FileLock ignored = channel.lock()) {
+            int highWater = buffer.getInt(HIGH_WATER_OFFSET);
+            int slot = -1;
+            for (int i = 0; i < highWater; i++) {
+                if (buffer.getLong(offset(i)) == Leases.NO_OWNER) {
+                    slot = i;
+                    break;
+                }
+            }
+            if (slot < 0) {
+                if (highWater >= MAX_SLOTS) {
+                    return -1;
+                }
+                slot = highWater;
+                buffer.putInt(HIGH_WATER_OFFSET, highWater + 1);
+            }
+            // 先写时间戳再写 owner，其他进程不会看到没有时间戳的租约
+            buffer.putLong(offset(slot) + Long.BYTES, nowMillis);
+            buffer.putLong(offset(slot), owner);
+            return slot;
+        }
+    }
+
+    /**
+     * 续约
+     *
+     * @return 槽位已经不属于 owner（租约被回收）时返回 false
+     */
+    boolean renew(int slot, long owner, long nowMillis) {
+        if (buffer.getLong(offset(slot)) != owner) {
+            return false;
+        }
+        buffer.putLong(offset(slot) + Long.BYTES, nowMillis);
+        return true;
+    }
+
+    /**
+     * 释放自己的槽位
+     */
+    synchronized void release(int slot, long owner) throws IOException {
+        try (FileLock ignored = channel.lock()) {
+            if (buffer.getLong(offset(slot)) == owner) {
+                buffer.putLong(offset(slot), Leases.NO_OWNER);
+            }
+        }
+    }
+
+    /**
+     * 回收过期的租约
+     *
+     * @return 没有过期的租约
+     */
+    synchronized Set<Long> reap(long nowMillis, long ttlMillis) throws IOException {
+        if (!hasExpired(nowMillis, ttlMillis)) {
+            return liveOwners(nowMillis, ttlMillis);
+        }
+        try (FileLock ignored = channel.lock()) {
+            int highWater = buffer.getInt(HIGH_WATER_OFFSET);
+            for (int i = 0; i < highWater; i++) {
+                long owner = buffer.getLong(offset(i));
+                if (owner != Leases.NO_OWNER && nowMillis - buffer.getLong(offset(i) + Long.BYTES) > ttlMillis) {
+                    buffer.putLong(offset(i), Leases.NO_OWNER);
+                }
+            }
+            return liveOwners(nowMillis, ttlMillis);
+        }
+    }
+
+    private boolean hasExpired(long nowMillis, long ttlMillis) {
+        int highWater = buffer.getInt(HIGH_WATER_OFFSET);
+        for (int i = 0; i < highWater; i++) {
+            if (buffer.getLong(offset(i)) != Leases.NO_OWNER && nowMillis - buffer.getLong(offset(i) + Long.BYTES) > ttlMillis) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Set<Long> liveOwners(long nowMillis, long ttlMillis) {
+        Set<Long> owners = new HashSet<>();
+        int highWater = buffer.getInt(HIGH_WATER_OFFSET);
+        for (int i = 0; i < highWater; i++) {
+            long owner = buffer.getLong(offset(i));
+            if (owner != Leases.NO_OWNER && nowMillis - buffer.getLong(offset(i) + Long.BYTES) <= ttlMillis) {
+                owners.add(owner);
+            }
+        }
+        return owners;
+    }
+
+    /**
+     * 关闭租约表文件，之后不能再使用
+     */
+    synchronized void close() throws IOException {
+        raf.close();
+    }
+
+    private static int offset(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.core.nameservice;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 注册信息的租约
+ * <p>
+ * 每个注册服务的进程持有一个租约（用 owner 标识），注册的服务都属于这个租约。
+ * 进程定期续约，一次续约就延长了它所有注册信息的有效期；超过 TTL 没有续约的租约会被回收，
+ * 它注册的服务自动注销，这样崩溃的服务提供者几秒钟之后就会从注册中心消失。
+ *
+ * @author tomoncle
+ */
+public final class Leases {
+    /**
+     * 不会过期的注册信息，比如旧版本写入的注册信息
+     */
+    public static final long NO_OWNER = 0L;
+    /**
+     * 租约的有效期，可以用系统属性 micro.rpc.nameservice.lease.ttl 设置，单位毫秒
+     */
+    public static final long TTL_MILLIS = Long.getLong("micro.rpc.nameservice.lease.ttl", 5000L);
+    /**
+     * 续约和回收过期租约的间隔
+     */
+    public static final long RENEW_INTERVAL_MILLIS = Math.max(100L, Math.min(1000L, TTL_MILLIS / 3));
+
+    private Leases() {
+    }
+
+    /**
+     * @return 新的租约 ID
+     */
+    public static long newOwnerId() {
+        long owner;
+        do {
+            owner = ThreadLocalRandom.current().nextLong();
+        } while (owner == NO_OWNER);
+        return owner;
+    }
+}
@@ -15,34 +15,55 @@ package com.tomoncle.rpc.core.nameservice;
 
 
 import com.tomoncle.rpc.api.MicroNameService;
-import com.tomoncle.rpc.core.serialize.SerializeSupport;
+import com.tomoncle.rpc.api.NameServiceListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.net.URI;
-import java.nio.ByteBuffer;
-import java.nio.channels.FileChannel;
-import java.nio.channels.FileLock;
-import java.util.ArrayList;
+import java.nio.file.FileSystems;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ThreadLocalRandom;
-import java.util.function.Function;
+import java.util.concurrent.TimeUnit;
 
 /**
  *
  * 本地注册中心
+ * <p>
+ * 注册文件是一个只追加、内存映射的日志（见 {@link RegistryLog}）：
+ * 注册和注销服务只在文件末尾追加一条记录，不再在排它锁下重写整个文件，也不会每次都 force 到磁盘；
+ * 查询服务时只读取映射到内存中的文件头，日志没有变化时直接返回内存中的快照（包括查不到服务的查询），
+ * 有变化时在共享锁下只应用还没有看到的那段日志。
+ * <p>
+ * 注册信息属于注册它的进程的租约，进程定期续约（只写一次内存映射的时间戳，不会重写注册文件），
+ * 进程退出或者停顿超过 {@link Leases#TTL_MILLIS} 后，其他进程会注销它注册的服务。
+ * <p>
+ * 订阅服务后，由一个后台线程通过 WatchService 监听注册文件的修改通知，
+ * 收到通知后和已通知的提供者列表比较，只把新增和下线的地址推送给订阅者。
+ * <p>
+ * {@link #close()} 停止监听线程，释放当前进程的租约并关闭注册文件。
  *
  * @author tomoncle
  */
 public class LocalFileMicroNameService implements MicroNameService {
     private static final Logger logger = LoggerFactory.getLogger(LocalFileMicroNameService.class);
     private static final Collection<String> schemes = Collections.singleton("file");
-    private File file;
+    /**
+     * 没有收到修改通知时，检查一次日志头部的间隔（只读内存，兜底不支持文件通知的文件系统）
+     */
+    private static final long WATCH_TIMEOUT_MILLIS = 1000L;
+    private RegistryLog registryLog;
+    private final Subscriptions subscriptions = new Subscriptions();
+    private Thread watcher = null;
+    private volatile boolean closed = false;
 
     @Override
     public Collection<String> supportedSchemes() {
@@ -52,81 +73,154 @@ public class LocalFileMicroNameService implements MicroNameService {
     @Override
     public void connect(URI nameServiceUri) {
         if(schemes.contains(nameServiceUri.getScheme())) {
-            file = new File(nameServiceUri);
+            try {
+                // 文件可能被多个进程读写，RegistryLog 内部使用由操作系统提供的文件锁
+                registryLog = RegistryLog.open(new File(nameServiceUri));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
         } else {
             throw new RuntimeException("Unsupported scheme!");
         }
     }
 
     @Override
-    public synchronized void registerService(String serviceName, URI uri) throws IOException {
+    public void registerService(String serviceName, URI uri) throws IOException {
         logger.info("Register service: {}, uri: {}.", serviceName, uri);
-        // 文件可能被多个进程读写，所以这里不能使用java那些锁，
-        // 原因是这些锁只能在进程内起作用，它锁不住其他进程。
-        // 我们这里面必须使用由操作系统提供的文件锁
-        try(RandomAccessFile raf = new RandomAccessFile(file, "rw");
-            FileChannel fileChannel = raf.getChannel()) {
-            FileLock lock = fileChannel.lock();
-            try {
-                int fileLength = (int) raf.length();
-                Metadata metadata;
-                byte[] bytes;
-                if(fileLength > 0) {
-                    bytes = new byte[(int) raf.length()];
-                    ByteBuffer buffer = ByteBuffer.wrap(bytes);
-                    while (buffer.hasRemaining()) {
-                        fileChannel.read(buffer);
-                    }
-                    metadata = SerializeSupport.parse(bytes);
-                } else {
-                    metadata = new Metadata();
+        registryLog.register(serviceName, uri);
+    }
+
+    @Override
+    public void unregisterService(String serviceName, URI uri) throws IOException {
+        logger.info("Unregister service: {}, uri: {}.", serviceName, uri);
+        registryLog.deregister(serviceName, uri);
+    }
+
+    @Override
+    public URI lookupService(String serviceName) throws IOException {
+        List<URI> uris = lookupAll(serviceName);
+        if(uris.isEmpty()) {
+            return null;
+        } else {
+            return uris.get(ThreadLocalRandom.current().nextInt(uris.size()));
+        }
+    }
+
+    @Override
+    public List<URI> lookupAll(String serviceName) throws IOException {
+        return registryLog.lookup(serviceName);
+    }
+
+    @Override
+    public Closeable subscribe(String serviceName, NameServiceListener listener) throws IOException {
+        Closeable subscription = subscriptions.subscribe(serviceName, listener, lookupAll(serviceName));
+        startWatcher();
+        return subscription;
+    }
+
+    /**
+     * 启动监听线程，在订阅方法返回之前注册好文件修改通知，不会漏掉订阅之后的变化
+     */
+    private synchronized void startWatcher() {
+        if (closed || null != watcher && watcher.isAlive()) {
+            return;
+        }
+        File file = registryLog.getFile();
+        WatchService watchService = null;
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            file.getAbsoluteFile().getParentFile().toPath().register(watchService,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_CREATE);
+        } catch (IOException e) {
+            logger.warn("不支持文件修改通知，定期检查注册文件: {}", file, e);
+            close(watchService);
+            watchService = null;
+        }
+        WatchService service = watchService;
+        watcher = new Thread(() -> watch(service), "name-service-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    /**
+     * 监听注册文件的修改通知，直到没有订阅者
+     */
+    private void watch(WatchService watchService) {
+        try {
+            while (!closed && !subscriptions.isEmpty()) {
+                try {
+                    publish();
+                } catch (IOException e) {
+                    logger.warn("读取注册文件失败: {}", registryLog.getFile(), e);
                 }
-                List<URI> uris = metadata.computeIfAbsent(serviceName, new Function<String, List<URI>>() {
-                    @Override
-                    public List<URI> apply(String k) {
-                        return new ArrayList<>();
+                if (null == watchService) {
+                    Thread.sleep(WATCH_TIMEOUT_MILLIS);
+                } else {
+                    WatchKey key = watchService.poll(WATCH_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                    if (null != key) {
+                        // 同一个目录下其他文件的修改忽略即可，检查日志头部时就能区分
+                        key.pollEvents();
+                        key.reset();
                     }
-                });
-                if(!uris.contains(uri)) {
-                    uris.add(uri);
                 }
-                logger.info(metadata.toString());
-
-                bytes = SerializeSupport.serialize(metadata);
-                fileChannel.truncate(bytes.length);
-                fileChannel.position(0L);
-                fileChannel.write(ByteBuffer.wrap(bytes));
-                fileChannel.force(true);
-            } finally {
-                lock.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            close(watchService);
+            synchronized (this) {
+                watcher = null;
             }
         }
+        // 退出前可能又有新的订阅
+        if (!closed && !subscriptions.isEmpty() && !Thread.currentThread().isInterrupted()) {
+            startWatcher();
+        }
     }
 
     @Override
-    public URI lookupService(String serviceName) throws IOException {
-        Metadata metadata;
-        try(RandomAccessFile raf = new RandomAccessFile(file, "rw");
-            FileChannel fileChannel = raf.getChannel()) {
-            FileLock lock = fileChannel.lock();
+    public void close() {
+        Thread watcher;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            watcher = this.watcher;
+        }
+        // 线程退出时需要获取 this 的锁，不能在持有锁时等待
+        if (null != watcher && watcher != Thread.currentThread()) {
+            watcher.interrupt();
             try {
-                byte [] bytes = new byte[(int) raf.length()];
-                ByteBuffer buffer = ByteBuffer.wrap(bytes);
-                while (buffer.hasRemaining()) {
-                    fileChannel.read(buffer);
-                }
-                metadata = bytes.length == 0? new Metadata(): SerializeSupport.parse(bytes);
-                logger.info(metadata.toString());
-            } finally {
-                lock.release();
+                watcher.join(WATCH_TIMEOUT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
         }
+        if (null != registryLog) {
+            try {
+                registryLog.close();
+            } catch (IOException e) {
+                logger.warn("关闭注册文件失败: {}", registryLog.getFile(), e);
+            }
+        }
+    }
 
-        List<URI> uris = metadata.get(serviceName);
-        if(null == uris || uris.isEmpty()) {
-            return null;
-        } else {
-            return uris.get(ThreadLocalRandom.current().nextInt(uris.size()));
+    private static void close(WatchService watchService) {
+        if (null != watchService) {
+            try {
+                watchService.close();
+            } catch (IOException ignored) {
+                // 关闭失败不影响订阅
+            }
+        }
+    }
+
+    private void publish() throws IOException {
+        Map<String, List<URI>> current = registryLog.current();
+        for (String serviceName : subscriptions.serviceNames()) {
+            List<URI> uris = current.get(serviceName);
+            subscriptions.update(serviceName, null == uris ? Collections.<URI>emptyList() : uris);
         }
     }
 }
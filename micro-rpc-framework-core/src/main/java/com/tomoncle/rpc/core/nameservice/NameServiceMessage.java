@@ -0,0 +1,68 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.core.nameservice;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 注册中心的请求和响应，通过 RPC 的 Transport 在客户端和注册中心之间传输
+ * <p>
+ * 每个服务有一个版本号，服务的提供者每变化一次版本号就会增加，
+ * 订阅时客户端把已知的版本号发给注册中心，注册中心在版本号变化时才返回（长轮询）。
+ * <p>
+ * 注册的服务属于客户端的租约（owner），客户端定期发送 HEARTBEAT 续约，租约过期后注册中心注销它注册的所有服务。
+ *
+ * @author tomoncle
+ */
+@AllArgsConstructor
+@Getter
+public class NameServiceMessage {
+    public static final byte REGISTER = 1;
+    public static final byte UNREGISTER = 2;
+    public static final byte LOOKUP = 3;
+    public static final byte WATCH = 4;
+    public static final byte RESPONSE = 5;
+    public static final byte HEARTBEAT = 6;
+
+    /**
+     * 操作类型
+     */
+    private final byte op;
+    /**
+     * 注册、注销和续约请求中是客户端的租约；续约的响应中是注册中心已知的租约，
+     * 租约已经过期时为 {@link Leases#NO_OWNER}
+     */
+    private final long owner;
+    /**
+     * 注册、注销的服务名称，其他操作为 null
+     */
+    private final String serviceName;
+    /**
+     * 注册、注销的服务地址，其他操作为 null
+     */
+    private final URI uri;
+    /**
+     * 服务名称和版本号：请求中是客户端已知的版本号，响应中是最新的版本号
+     */
+    private final Map<String, Long> versions;
+    /**
+     * 响应中每个服务的提供者列表
+     */
+    private final Map<String, List<URI>> providers;
+}
@@ -0,0 +1,628 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.core.nameservice;
+
+import com.tomoncle.rpc.core.serialize.SerializeSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.AbstractMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 注册中心文件的存储引擎：只追加、内存映射的注册日志
+ * <p>
+ * 原来每注册一个服务都要在排它锁下读出整个 Metadata、修改后再整体写回并 force 到磁盘，
+ * 启动 N 个服务提供者的 I/O 是 O(N²) 的。现在文件是一个日志：
+ * <pre>
+ * +------------------------------ 头部 64 字节 -------------------------------+
+ * | magic(4) | version(4) | generation(8) | writePosition(8) | records(8) | dead(8) | 保留 |
+ * +---------------------------------------------------------------------------+
+ * | 记录: length(4) | op(1) | owner(8) | 服务名长度(2) | 服务名 | URI长度(2) | URI |  ...
+ * +---------------------------------------------------------------------------+
+ * </pre>
+ * 1. 注册/注销只在文件末尾追加一条记录，然后更新头部的 writePosition，不再重写整个文件；
+ * 2. 读取方把文件映射到内存，只有头部的 generation 或 writePosition 变化时，才在共享锁下应用自己还没看到的那段日志；
+ * 3. 注销的记录达到一定比例后，写入方在排它锁下原地压缩日志，并递增 generation，读取方发现 generation 变化后从头重放。
+ * <p>
+ * 注册记录属于注册它的进程的租约（owner，见 {@link Leases}），租约保存在旁边的 {@link LeaseTable} 中。
+ * 每个打开注册文件的进程都有一个后台任务：续约自己的租约，并注销已过期租约的所有注册信息。
+ * <p>
+ * 同一个 JVM 中对同一个文件只打开一个 RegistryLog，因为文件锁是进程级别的，同一进程内重复加锁会抛出异常。
+ * 每次 {@link #open(File)} 都要对应一次 {@link #close()}，最后一个使用者关闭时停止维护租约、释放租约表的槽位并关闭文件。
+ *
+ * @author tomoncle
+ */
+final class RegistryLog {
+    private static final Logger logger = LoggerFactory.getLogger(RegistryLog.class);
+    private static final Map<String/*文件路径*/, RegistryLog> logs = new HashMap<>();
+
+    static final byte OP_REGISTER = 1;
+    static final byte OP_DEREGISTER = 2;
+
+    private static final int MAGIC = 0x4D525247;
+    /**
+     * 版本 2 的记录中增加了 owner
+     */
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 64;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int GENERATION_OFFSET = 8;
+    private static final int WRITE_POSITION_OFFSET = 16;
+    private static final int RECORDS_OFFSET = 24;
+    private static final int DEAD_OFFSET = 32;
+    private static final long INITIAL_CAPACITY = 1L << 20;
+    /**
+     * 注销的记录超过这个数量，并且超过总记录数的一半时压缩日志
+     */
+    private static final long COMPACT_THRESHOLD = 1024L;
+    private static final ScheduledExecutorService leaseScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "name-service-lease");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+
+    /**
+     * 已经应用到内存中的日志位置
+     */
+    private long appliedGeneration = -1L;
+    private long appliedPosition = HEADER_SIZE;
+    private final Map<String, LinkedHashMap<URI, Long/*owner*/>> services = new HashMap<>();
+    private final Map<Long/*owner*/, Integer/*注册信息数量*/> owners = new HashMap<>();
+    /**
+     * 上次发布快照之后有变化的服务，为 null 表示需要重建整个快照
+     */
+    private Set<String> changed = null;
+    private volatile Map<String, List<URI>> snapshot = Collections.emptyMap();
+    private volatile long snapshotGeneration = -1L;
+    private volatile long snapshotPosition = -1L;
+
+    /**
+     * 当前进程的租约，第一次注册服务时才占用租约表的槽位
+     */
+    private final LeaseTable leases;
+    private long owner = Leases.NO_OWNER;
+    private int leaseSlot = -1;
+    private final Map<String, Set<URI>> owned = new HashMap<>();
+    private final ScheduledFuture<?> leaseTask;
+    /**
+     * 打开的次数，在 logs 的锁中修改
+     */
+    private int references = 0;
+
+    private RegistryLog(File file) throws IOException {
+        this.file = file;
+        this.raf = new RandomAccessFile(file, "rw");
+        this.channel = raf.getChannel();
+        this.leases = new LeaseTable(new File(file.getPath() + ".leases"));
+        this.leaseTask = leaseScheduler.scheduleWithFixedDelay(this::maintainLeases,
+                Leases.RENEW_INTERVAL_MILLIS, Leases.RENEW_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    static RegistryLog open(File file) throws IOException {
+        String path = file.getCanonicalPath();
+        synchronized (logs) {
+            RegistryLog log = logs.get(path);
+            if (null == log) {
+                log = new RegistryLog(new File(path));
+                logs.put(path, log);
+            }
+            log.references++;
+            return log;
+        }
+    }
+
+    /**
+     * 关闭一次 {@link #open(File)} 打开的注册日志
+     * <p>
+     * 最后一个使用者关闭时释放当前进程的租约，其他进程维护租约时会注销这个进程注册的服务。
+     */
+    void close() throws IOException {
+        synchronized (logs) {
+            if (0 == references || --references > 0) {
+                return;
+            }
+            logs.remove(file.getPath());
+        }
+        leaseTask.cancel(false);
+        synchronized (this) {
+            try {
+                if (leaseSlot >= 0) {
+                    leases.release(leaseSlot, owner);
+                    leaseSlot = -1;
+                }
+            } finally {
+                try {
+                    leases.close();
+                } finally {
+                    raf.close();
+                }
+            }
+        }
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * 注册服务，注册信息属于当前进程的租约
+     */
+    synchronized void register(String serviceName, URI uri) throws IOException {
+        append(OP_REGISTER, serviceName, uri, acquireLease());
+        owned.computeIfAbsent(serviceName, k -> new LinkedHashSet<>()).add(uri);
+    }
+
+    /**
+     * 注销服务
+     */
+    synchronized void deregister(String serviceName, URI uri) throws IOException {
+        Set<URI> uris = owned.get(serviceName);
+        if (null != uris && uris.remove(uri) && uris.isEmpty()) {
+            owned.remove(serviceName);
+        }
+        append(OP_DEREGISTER, serviceName, uri, Leases.NO_OWNER);
+    }
+
+    /**
+     * 追加一条注册或者注销记录，状态没有变化的记录不会写入
+     */
+    private void append(byte op, String serviceName, URI uri, long owner) throws IOException {
+        // 在加锁之前编码，服务名或者地址太长时直接失败
+        byte[] record = encode(op, owner, serviceName, uri);
+        try (FileLock ignored = channel.lock()) {
+            prepareForWrite();
+            catchUp();
+            write(op, serviceName, uri, owner, record);
+            maybeCompact();
+            // 快照在下次查询时才发布，连续注册时不需要每次都复制服务列表
+        }
+    }
+
+    /**
+     * 写入一条记录并应用到内存，调用方必须持有排它锁，并且已经应用了所有的日志
+     *
+     * @param record 编码好的记录，见 {@link #encode}
+     */
+    private boolean write(byte op, String serviceName, URI uri, long owner, byte[] record) throws IOException {
+        Map<URI, Long> uris = services.get(serviceName);
+        Long current = null == uris ? null : uris.get(uri);
+        long dead;
+        if (op == OP_REGISTER) {
+            if (null != current && current == owner) {
+                return false;
+            }
+            // 换了 owner 的注册记录覆盖了原来的注册记录
+            dead = null == current ? 0L : 1L;
+        } else {
+            if (null == current) {
+                return false;
+            }
+            // 注销记录和它抵消的注册记录都成为了无用的记录
+            dead = 2L;
+        }
+        long position = buffer.getLong(WRITE_POSITION_OFFSET);
+        ensureCapacity(position + record.length);
+        // 先写记录，再更新 writePosition，读取方只会读到完整的记录
+        putBytes(position, record);
+        buffer.putLong(RECORDS_OFFSET, buffer.getLong(RECORDS_OFFSET) + 1);
+        buffer.putLong(DEAD_OFFSET, buffer.getLong(DEAD_OFFSET) + dead);
+        commitWritePosition(position + record.length);
+        catchUp();
+        return true;
+    }
+
+    /**
+     * 占用当前进程的租约
+     */
+    private long acquireLease() throws IOException {
+        if (leaseSlot < 0) {
+            long owner = Leases.newOwnerId();
+            int slot = leases.claim(owner, System.currentTimeMillis());
+            if (slot < 0) {
+                logger.warn("租约表已满，注册信息不会自动过期: {}", file);
+                return Leases.NO_OWNER;
+            }
+            this.owner = owner;
+            this.leaseSlot = slot;
+        }
+        return owner;
+    }
+
+    /**
+     * 续约，并注销过期租约的注册信息
+     */
+    private void maintainLeases() {
+        try {
+            renew();
+            reap();
+        } catch (Throwable t) {
+            logger.warn("维护注册中心的租约失败: {}", file, t);
+        }
+    }
+
+    private synchronized void renew() throws IOException {
+        if (leaseSlot < 0 || leases.renew(leaseSlot, owner, System.currentTimeMillis())) {
+            return;
+        }
+        // 租约已经被其他进程回收（比如长时间的 GC 停顿），换一个新的租约重新注册
+        logger.warn("注册中心的租约已过期，重新注册服务: {}", owned);
+        leaseSlot = -1;
+        long owner = acquireLease();
+        for (Map.Entry<String, Set<URI>> entry : owned.entrySet()) {
+            for (URI uri : entry.getValue()) {
+                append(OP_REGISTER, entry.getKey(), uri, owner);
+            }
+        }
+    }
+
+    private void reap() throws IOException {
+        // 先取日志中的 owner 再读租约表：在这之后才注册的进程一定已经占用了槽位，不会被误判为过期
+        Set<Long> candidates = owners();
+        candidates.remove(Leases.NO_OWNER);
+        if (candidates.isEmpty()) {
+            return;
+        }
+        candidates.removeAll(leases.reap(System.currentTimeMillis(), Leases.TTL_MILLIS));
+        if (!candidates.isEmpty()) {
+            expire(candidates);
+        }
+    }
+
+    /**
+     * @return 注册日志中出现的所有 owner
+     */
+    private synchronized Set<Long> owners() throws IOException {
+        current();
+        return new HashSet<>(owners.keySet());
+    }
+
+    /**
+     * 注销过期租约的所有注册信息
+     */
+    private synchronized void expire(Set<Long> expired) throws IOException {
+        try (FileLock ignored = channel.lock()) {
+            prepareForWrite();
+            catchUp();
+            List<Map.Entry<String, URI>> entries = new ArrayList<>();
+            for (Map.Entry<String, LinkedHashMap<URI, Long>> service : services.entrySet()) {
+                for (Map.Entry<URI, Long> entry : service.getValue().entrySet()) {
+                    if (expired.contains(entry.getValue())) {
+                        entries.add(new AbstractMap.SimpleEntry<>(service.getKey(), entry.getKey()));
+                    }
+                }
+            }
+            for (Map.Entry<String, URI> entry : entries) {
+                write(OP_DEREGISTER, entry.getKey(), entry.getValue(), Leases.NO_OWNER,
+                        encode(OP_DEREGISTER, Leases.NO_OWNER, entry.getKey(), entry.getValue()));
+            }
+            maybeCompact();
+            if (!entries.isEmpty()) {
+                logger.info("注销过期租约的注册信息: {}", entries);
+            }
+        }
+    }
+
+    /**
+     * 查询服务地址，日志没有变化时只是一次内存读取
+     *
+     * @param serviceName 服务名称
+     * @return 服务地址列表
+     */
+    List<URI> lookup(String serviceName) throws IOException {
+        List<URI> uris = current().get(serviceName);
+        return null == uris ? Collections.<URI>emptyList() : uris;
+    }
+
+    /**
+     * @return 当前所有服务的注册信息
+     */
+    Map<String, List<URI>> current() throws IOException {
+        MappedByteBuffer buffer = this.buffer;
+        if (null != buffer
+                && buffer.getLong(GENERATION_OFFSET) == snapshotGeneration
+                && buffer.getLong(WRITE_POSITION_OFFSET) == snapshotPosition) {
+            return snapshot;
+        }
+        return refresh();
+    }
+
+    private synchronized Map<String, List<URI>> refresh() throws IOException {
+        if (!isLogFormat()) {
+            // 旧格式的文件需要在排它锁下转换；空文件（还没有任何服务注册过）在这里初始化头部，
+            // 和其他版本的日志一样缓存空的快照，之后的查询不用再加锁
+            try (FileLock ignored = channel.lock()) {
+                prepareForWrite();
+                catchUp();
+                publish();
+                return snapshot;
+            }
+        }
+        try (FileLock ignored = channel.lock(0L, Long.MAX_VALUE, true)) {
+            map(channel.size());
+            catchUp();
+            publish();
+            return snapshot;
+        }
+    }
+
+    /**
+     * 初始化头部，或者把旧格式（整体序列化的 Metadata）的文件转换成日志格式，调用方必须持有排它锁
+     */
+    private void prepareForWrite() throws IOException {
+        if (channel.size() >= HEADER_SIZE && isLogFormat()) {
+            map(channel.size());
+            if (buffer.getInt(VERSION_OFFSET) < VERSION) {
+                // 旧版本的记录没有 owner，重写为新版本，原来的注册信息不会过期
+                catchUp();
+                buffer.putInt(VERSION_OFFSET, VERSION);
+                rewrite();
+                logger.info("升级注册中心日志: {}", file);
+            }
+            return;
+        }
+        Metadata legacy = null;
+        if (channel.size() > 0) {
+            byte[] bytes = new byte[(int) channel.size()];
+            ByteBuffer read = ByteBuffer.wrap(bytes);
+            channel.position(0L);
+            while (read.hasRemaining() && channel.read(read) >= 0) {
+                // 读取整个文件
+            }
+            legacy = SerializeSupport.parse(bytes);
+            logger.info("转换旧格式的注册中心文件: {}", file);
+        }
+        raf.setLength(Math.max(INITIAL_CAPACITY, channel.size()));
+        map(channel.size());
+        buffer.putInt(MAGIC_OFFSET, MAGIC);
+        buffer.putInt(VERSION_OFFSET, VERSION);
+        buffer.putLong(GENERATION_OFFSET, 0L);
+        buffer.putLong(RECORDS_OFFSET, 0L);
+        buffer.putLong(DEAD_OFFSET, 0L);
+        long position = HEADER_SIZE;
+        if (null != legacy) {
+            for (Map.Entry<String, List<URI>> entry : legacy.entrySet()) {
+                for (URI uri : entry.getValue()) {
+                    byte[] record = encode(OP_REGISTER, Leases.NO_OWNER, entry.getKey(), uri);
+                    ensureCapacity(position + record.length);
+                    putBytes(position, record);
+                    position += record.length;
+                    buffer.putLong(RECORDS_OFFSET, buffer.getLong(RECORDS_OFFSET) + 1);
+                }
+            }
+        }
+        buffer.putLong(WRITE_POSITION_OFFSET, position);
+        buffer.force();
+        appliedGeneration = -1L;
+    }
+
+    private boolean isLogFormat() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(Integer.BYTES);
+        channel.read(header, MAGIC_OFFSET);
+        header.flip();
+        return header.remaining() == Integer.BYTES && header.getInt() == MAGIC;
+    }
+
+    /**
+     * 应用还没有看到的日志，generation 变化说明日志被压缩过，需要从头重放
+     */
+    private void catchUp() throws IOException {
+        long generation = buffer.getLong(GENERATION_OFFSET);
+        long writePosition = buffer.getLong(WRITE_POSITION_OFFSET);
+        if (generation != appliedGeneration) {
+            services.clear();
+            owners.clear();
+            changed = null;
+            appliedGeneration = generation;
+            appliedPosition = HEADER_SIZE;
+        }
+        if (writePosition > buffer.capacity()) {
+            map(channel.size());
+        }
+        boolean withOwner = buffer.getInt(VERSION_OFFSET) >= 2;
+        ByteBuffer read = buffer.duplicate();
+        while (appliedPosition < writePosition) {
+            read.position((int) appliedPosition);
+            int length = read.getInt();
+            byte op = read.get();
+            long owner = withOwner ? read.getLong() : Leases.NO_OWNER;
+            String serviceName = readString(read);
+            URI uri = URI.create(readString(read));
+            if (null != changed) {
+                changed.add(serviceName);
+            }
+            if (op == OP_REGISTER) {
+                release(services.computeIfAbsent(serviceName, k -> new LinkedHashMap<>()).put(uri, owner));
+                owners.merge(owner, 1, Integer::sum);
+            } else if (op == OP_DEREGISTER) {
+                Map<URI, Long> uris = services.get(serviceName);
+                if (null != uris) {
+                    release(uris.remove(uri));
+                    if (uris.isEmpty()) {
+                        services.remove(serviceName);
+                    }
+                }
+            }
+            appliedPosition += Integer.BYTES + length;
+        }
+    }
+
+    private void release(Long owner) {
+        if (null != owner) {
+            owners.computeIfPresent(owner, (k, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+
+    /**
+     * 注销的记录太多时，在排它锁下只保留有效的注册记录
+     */
+    private void maybeCompact() throws IOException {
+        long records = buffer.getLong(RECORDS_OFFSET);
+        long dead = buffer.getLong(DEAD_OFFSET);
+        if (dead < COMPACT_THRESHOLD || dead * 2 < records) {
+            return;
+        }
+        long live = rewrite();
+        logger.info("压缩注册中心日志: {}, 有效记录: {}, 删除记录: {}", file, live, records - live);
+    }
+
+    /**
+     * 在排它锁下原地重写日志，只保留有效的注册记录
+     *
+     * @return 有效的记录数
+     */
+    private long rewrite() throws IOException {
+        long position = HEADER_SIZE;
+        long live = 0L;
+        for (Map.Entry<String, LinkedHashMap<URI, Long>> service : services.entrySet()) {
+            for (Map.Entry<URI, Long> entry : service.getValue().entrySet()) {
+                byte[] record = encode(OP_REGISTER, entry.getValue(), service.getKey(), entry.getKey());
+                ensureCapacity(position + record.length);
+                putBytes(position, record);
+                position += record.length;
+                live++;
+            }
+        }
+        long generation = buffer.getLong(GENERATION_OFFSET) + 1;
+        buffer.putLong(RECORDS_OFFSET, live);
+        buffer.putLong(DEAD_OFFSET, 0L);
+        buffer.putLong(GENERATION_OFFSET, generation);
+        commitWritePosition(position);
+        buffer.force();
+        appliedGeneration = generation;
+        appliedPosition = position;
+        changed = null;
+        return live;
+    }
+
+    /**
+     * 发布不可变的快照，没有变化的服务复用原来的列表
+     */
+    private void publish() {
+        Map<String, List<URI>> next;
+        if (null == changed) {
+            next = new HashMap<>(services.size() * 2);
+            for (Map.Entry<String, LinkedHashMap<URI, Long>> entry : services.entrySet()) {
+                next.put(entry.getKey(), Collections.unmodifiableList(new ArrayList<>(entry.getValue().keySet())));
+            }
+        } else if (changed.isEmpty()) {
+            next = null;
+        } else {
+            next = new HashMap<>(snapshot);
+            for (String serviceName : changed) {
+                Map<URI, Long> uris = services.get(serviceName);
+                if (null == uris) {
+                    next.remove(serviceName);
+                } else {
+                    next.put(serviceName, Collections.unmodifiableList(new ArrayList<>(uris.keySet())));
+                }
+            }
+        }
+        changed = new HashSet<>();
+        if (null != next) {
+            snapshot = Collections.unmodifiableMap(next);
+        }
+        snapshotGeneration = appliedGeneration;
+        snapshotPosition = appliedPosition;
+    }
+
+    /**
+     * 通过 write 系统调用而不是映射内存提交 writePosition：
+     * 映射内存的写入不会产生文件修改通知，这样订阅者可以通过 WatchService 及时发现日志的变化
+     */
+    private void commitWritePosition(long writePosition) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(Long.BYTES);
+        bytes.putLong(0, writePosition);
+        channel.write(bytes, WRITE_POSITION_OFFSET);
+    }
+
+    private void ensureCapacity(long required) throws IOException {
+        if (required <= channel.size()) {
+            return;
+        }
+        long capacity = channel.size();
+        while (capacity < required) {
+            capacity <<= 1;
+        }
+        raf.setLength(capacity);
+        map(capacity);
+    }
+
+    private void map(long size) throws IOException {
+        if (null == buffer || buffer.capacity() < size) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0L, size);
+        }
+    }
+
+    private void putBytes(long position, byte[] bytes) {
+        ByteBuffer write = buffer.duplicate();
+        write.position((int) position);
+        write.put(bytes);
+    }
+
+    /**
+     * @throws IllegalArgumentException 服务名或者地址超过 {@link Short#MAX_VALUE} 字节，记录中的长度字段放不下
+     */
+    private static byte[] encode(byte op, long owner, String serviceName, URI uri) {
+        byte[] nameBytes = serviceName.getBytes(StandardCharsets.UTF_8);
+        byte[] uriBytes = uri.toASCIIString().getBytes(StandardCharsets.UTF_8);
+        if (nameBytes.length > Short.MAX_VALUE || uriBytes.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException(String.format("Service name or uri too long (max %d bytes): %d, %d",
+                    Short.MAX_VALUE, nameBytes.length, uriBytes.length));
+        }
+        int length = 1 + Long.BYTES + Short.BYTES + nameBytes.length + Short.BYTES + uriBytes.length;
+        ByteBuffer record = ByteBuffer.allocate(Integer.BYTES + length);
+        record.putInt(length);
+        record.put(op);
+        record.putLong(owner);
+        record.putShort((short) nameBytes.length);
+        record.put(nameBytes);
+        record.putShort((short) uriBytes.length);
+        record.put(uriBytes);
+        return record.array();
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
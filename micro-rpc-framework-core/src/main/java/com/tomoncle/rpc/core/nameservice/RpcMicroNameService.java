@@ -0,0 +1,347 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.core.nameservice;
+
+import com.tomoncle.rpc.api.MicroNameService;
+import com.tomoncle.rpc.api.NameServiceListener;
+import com.tomoncle.rpc.api.spi.ServiceLoadSupport;
+import com.tomoncle.rpc.core.client.RequestIdSupport;
+import com.tomoncle.rpc.core.client.ServiceTypes;
+import com.tomoncle.rpc.core.serialize.SerializeSupport;
+import com.tomoncle.rpc.core.transport.Transport;
+import com.tomoncle.rpc.core.transport.TransportClient;
+import com.tomoncle.rpc.core.transport.command.Code;
+import com.tomoncle.rpc.core.transport.command.Command;
+import com.tomoncle.rpc.core.transport.command.Header;
+import com.tomoncle.rpc.core.transport.command.ResponseHeader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 远程注册中心的客户端，注册中心是一个启用了 {@link com.tomoncle.rpc.core.server.NameServiceRequestHandler} 的 RPC 服务端
+ * <p>
+ * 注册、查询都是一次 RPC 调用；订阅服务后，由一个后台线程用长轮询向注册中心发起 WATCH 请求，
+ * 所有订阅的服务共用一个请求，注册中心只在服务的提供者变化时才返回，客户端不需要定期查询。
+ * <p>
+ * 注册的服务属于这个客户端的租约，注册服务后由一个后台线程定期发送 HEARTBEAT 续约，
+ * 一次续约就延长了所有注册信息的有效期；注册中心重启或者租约已经过期时，重新注册所有的服务。
+ * <p>
+ * {@link #close()} 之后两个后台线程都会退出，不能再发送请求，也不会重新连接注册中心。
+ *
+ * @author tomoncle
+ */
+public class RpcMicroNameService implements MicroNameService {
+    private static final Logger logger = LoggerFactory.getLogger(RpcMicroNameService.class);
+    private static final Collection<String> schemes = Collections.singleton("rpc");
+    private static final long CONNECT_TIMEOUT_MILLIS = 30000L;
+    /**
+     * 普通请求的超时时间，WATCH 请求在注册中心最多挂起 4 秒
+     */
+    private static final long REQUEST_TIMEOUT_MILLIS = 8000L;
+    private static final long RETRY_INTERVAL_MILLIS = 1000L;
+
+    private URI nameServiceUri;
+    private TransportClient client = null;
+    private Transport transport = null;
+    private final Subscriptions subscriptions = new Subscriptions();
+    private final Map<String/*服务名*/, Long/*已知的版本号*/> versions = new ConcurrentHashMap<>();
+    private Thread watcher = null;
+    private final long owner = Leases.newOwnerId();
+    private final Map<String/*服务名*/, Set<URI>> owned = new HashMap<>();
+    private Thread heartbeat = null;
+    private volatile boolean closed = false;
+
+    @Override
+    public Collection<String> supportedSchemes() {
+        return schemes;
+    }
+
+    @Override
+    public void connect(URI nameServiceUri) {
+        if (schemes.contains(nameServiceUri.getScheme())) {
+            this.nameServiceUri = nameServiceUri;
+        } else {
+            throw new RuntimeException("Unsupported scheme!");
+        }
+    }
+
+    @Override
+    public void registerService(String serviceName, URI uri) throws IOException {
+        logger.info("Register service: {}, uri: {}.", serviceName, uri);
+        synchronized (owned) {
+            owned.computeIfAbsent(serviceName, k -> new LinkedHashSet<>()).add(uri);
+        }
+        call(new NameServiceMessage(NameServiceMessage.REGISTER, owner, serviceName, uri, Collections.emptyMap(), Collections.emptyMap()));
+        startHeartbeat();
+    }
+
+    @Override
+    public void unregisterService(String serviceName, URI uri) throws IOException {
+        logger.info("Unregister service: {}, uri: {}.", serviceName, uri);
+        synchronized (owned) {
+            Set<URI> uris = owned.get(serviceName);
+            if (null != uris && uris.remove(uri) && uris.isEmpty()) {
+                owned.remove(serviceName);
+            }
+        }
+        call(new NameServiceMessage(NameServiceMessage.UNREGISTER, owner, serviceName, uri, Collections.emptyMap(), Collections.emptyMap()));
+    }
+
+    @Override
+    public URI lookupService(String serviceName) throws IOException {
+        List<URI> uris = lookupAll(serviceName);
+        if (uris.isEmpty()) {
+            return null;
+        } else {
+            return uris.get(ThreadLocalRandom.current().nextInt(uris.size()));
+        }
+    }
+
+    @Override
+    public List<URI> lookupAll(String serviceName) throws IOException {
+        NameServiceMessage response = call(new NameServiceMessage(NameServiceMessage.LOOKUP, Leases.NO_OWNER, null, null, versionOf(serviceName), Collections.emptyMap()));
+        return Collections.unmodifiableList(response.getProviders().getOrDefault(serviceName, Collections.emptyList()));
+    }
+
+    @Override
+    public Closeable subscribe(String serviceName, NameServiceListener listener) throws IOException {
+        NameServiceMessage response = call(new NameServiceMessage(NameServiceMessage.LOOKUP, Leases.NO_OWNER, null, null, versionOf(serviceName), Collections.emptyMap()));
+        List<URI> uris = Collections.unmodifiableList(response.getProviders().getOrDefault(serviceName, Collections.emptyList()));
+        versions.putIfAbsent(serviceName, response.getVersions().getOrDefault(serviceName, 0L));
+        Closeable subscription = subscriptions.subscribe(serviceName, listener, uris);
+        startWatcher();
+        return subscription;
+    }
+
+    private synchronized void startWatcher() {
+        if (closed || null != watcher && watcher.isAlive()) {
+            return;
+        }
+        watcher = new Thread(this::watch, "name-service-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    /**
+     * 长轮询，直到没有订阅者
+     */
+    private void watch() {
+        try {
+            while (!closed && !subscriptions.isEmpty()) {
+                Map<String, Long> known = new HashMap<>();
+                for (String serviceName : subscriptions.serviceNames()) {
+                    known.put(serviceName, versions.getOrDefault(serviceName, 0L));
+                }
+                versions.keySet().retainAll(known.keySet());
+                try {
+                    NameServiceMessage response = call(new NameServiceMessage(NameServiceMessage.WATCH, Leases.NO_OWNER, null, null, known, Collections.emptyMap()));
+                    for (Map.Entry<String, Long> entry : response.getVersions().entrySet()) {
+                        List<URI> uris = response.getProviders().getOrDefault(entry.getKey(), Collections.emptyList());
+                        subscriptions.update(entry.getKey(), Collections.unmodifiableList(uris));
+                        versions.put(entry.getKey(), entry.getValue());
+                    }
+                } catch (IOException e) {
+                    if (closed) {
+                        break;
+                    }
+                    logger.warn("订阅注册中心失败: {}, {}ms 后重试", nameServiceUri, RETRY_INTERVAL_MILLIS, e);
+                    Thread.sleep(RETRY_INTERVAL_MILLIS);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            synchronized (this) {
+                watcher = null;
+            }
+        }
+        // 退出前可能又有新的订阅
+        if (!closed && !subscriptions.isEmpty() && !Thread.currentThread().isInterrupted()) {
+            startWatcher();
+        }
+    }
+
+    private synchronized void startHeartbeat() {
+        if (closed || null != heartbeat && heartbeat.isAlive()) {
+            return;
+        }
+        heartbeat = new Thread(this::heartbeat, "name-service-heartbeat");
+        heartbeat.setDaemon(true);
+        heartbeat.start();
+    }
+
+    /**
+     * 定期续约，直到注销了所有的服务
+     */
+    private void heartbeat() {
+        try {
+            while (!closed) {
+                Thread.sleep(Leases.RENEW_INTERVAL_MILLIS);
+                Map<String, Set<URI>> registered = new HashMap<>();
+                synchronized (owned) {
+                    owned.forEach((serviceName, uris) -> registered.put(serviceName, new LinkedHashSet<>(uris)));
+                }
+                if (registered.isEmpty()) {
+                    break;
+                }
+                try {
+                    NameServiceMessage response = call(new NameServiceMessage(NameServiceMessage.HEARTBEAT, owner, null, null,
+                            Collections.<String, Long>emptyMap(), Collections.<String, List<URI>>emptyMap()));
+                    if (response.getOwner() != owner) {
+                        logger.warn("注册中心的租约已过期，重新注册服务: {}", registered);
+                        for (Map.Entry<String, Set<URI>> entry : registered.entrySet()) {
+                            for (URI uri : entry.getValue()) {
+                                call(new NameServiceMessage(NameServiceMessage.REGISTER, owner, entry.getKey(), uri, Collections.emptyMap(), Collections.emptyMap()));
+                            }
+                        }
+                    }
+                } catch (IOException e) {
+                    if (closed) {
+                        break;
+                    }
+                    logger.warn("向注册中心续约失败: {}", nameServiceUri, e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            synchronized (this) {
+                heartbeat = null;
+            }
+        }
+        // 退出前可能又注册了服务
+        boolean registered;
+        synchronized (owned) {
+            registered = !owned.isEmpty();
+        }
+        if (!closed && registered && !Thread.currentThread().isInterrupted()) {
+            startHeartbeat();
+        }
+    }
+
+    private NameServiceMessage call(NameServiceMessage request) throws IOException {
+        Header header = new Header.Builder()
+                .setRequestId(RequestIdSupport.next())
+                .setType(ServiceTypes.TYPE_NAME_SERVICE)
+                .setVersion(1)
+                .build();
+        try {
+            Command response = getTransport().send(new Command(header, SerializeSupport.serialize(request)))
+                    .get(REQUEST_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            ResponseHeader responseHeader = (ResponseHeader) response.getHeader();
+            if (responseHeader.getCode() != Code.SUCCESS.getCode()) {
+                throw new IOException(responseHeader.getError());
+            }
+            return SerializeSupport.parse(response.getPayload());
+        } catch (ExecutionException e) {
+            resetTransport();
+            throw new IOException(e.getCause());
+        } catch (TimeoutException e) {
+            throw new IOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+
+    private synchronized Transport getTransport() throws IOException {
+        if (closed) {
+            throw new IOException("Name service client is closed: " + nameServiceUri);
+        }
+        // 连接断开（例如心跳超时）后重新连接
+        if (null == transport || !transport.isAvailable()) {
+            if (null == client) {
+                client = ServiceLoadSupport.load(TransportClient.class);
+            }
+            try {
+                transport = client.createTransport(new InetSocketAddress(nameServiceUri.getHost(), nameServiceUri.getPort()), CONNECT_TIMEOUT_MILLIS);
+            } catch (InterruptedException | TimeoutException e) {
+                throw new IOException(e);
+            } catch (RuntimeException e) {
+                throw new IOException("Connect to name service failed: " + nameServiceUri, e);
+            }
+        }
+        return transport;
+    }
+
+    /**
+     * 请求失败后下次重新连接注册中心
+     */
+    private synchronized void resetTransport() {
+        if (null != transport) {
+            transport.close();
+            transport = null;
+        }
+    }
+
+    /**
+     * 停止 WATCH 和 HEARTBEAT 线程并断开与注册中心的连接，之后的请求都会失败
+     */
+    @Override
+    public void close() {
+        Thread watcher;
+        Thread heartbeat;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            watcher = this.watcher;
+            heartbeat = this.heartbeat;
+        }
+        // 线程退出时需要获取 this 的锁，不能在持有锁时等待
+        stop(watcher);
+        stop(heartbeat);
+        synchronized (this) {
+            if (null != client) {
+                client.close();
+                client = null;
+            }
+            transport = null;
+        }
+    }
+
+    private static void stop(Thread thread) {
+        if (null == thread || thread == Thread.currentThread()) {
+            return;
+        }
+        thread.interrupt();
+        try {
+            thread.join(REQUEST_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Map<String, Long> versionOf(String serviceName) {
+        return Collections.singletonMap(serviceName, 0L);
+    }
+}
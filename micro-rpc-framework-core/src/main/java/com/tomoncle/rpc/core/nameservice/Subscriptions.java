@@ -0,0 +1,126 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.core.nameservice;
+
+import com.tomoncle.rpc.api.NameServiceListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 注册中心的订阅者
+ * <p>
+ * 记录每个服务已经通知给订阅者的提供者列表，注册中心有新的提供者列表时，
+ * 和已通知的列表比较，只把新增和下线的地址通知给订阅者。
+ *
+ * @author tomoncle
+ */
+final class Subscriptions {
+    private static final Logger logger = LoggerFactory.getLogger(Subscriptions.class);
+    private final Map<String/*服务名*/, List<NameServiceListener>> listeners = new HashMap<>();
+    private final Map<String/*服务名*/, List<URI>/*已通知的提供者*/> delivered = new HashMap<>();
+
+    /**
+     * 添加订阅者，并把当前所有的提供者作为新增的地址通知它
+     *
+     * @param serviceName 服务名称
+     * @param listener    订阅者
+     * @param current     当前所有的提供者，已经有人订阅该服务时使用已通知的列表
+     * @return 关闭后取消订阅
+     */
+    synchronized Closeable subscribe(String serviceName, NameServiceListener listener, List<URI> current) {
+        List<URI> uris = delivered.computeIfAbsent(serviceName, k -> current);
+        listeners.computeIfAbsent(serviceName, k -> new CopyOnWriteArrayList<>()).add(listener);
+        if (!uris.isEmpty()) {
+            notify(listener, serviceName, uris, Collections.<URI>emptyList());
+        }
+        return () -> unsubscribe(serviceName, listener);
+    }
+
+    private synchronized void unsubscribe(String serviceName, NameServiceListener listener) {
+        List<NameServiceListener> serviceListeners = listeners.get(serviceName);
+        if (null != serviceListeners && serviceListeners.remove(listener) && serviceListeners.isEmpty()) {
+            listeners.remove(serviceName);
+            delivered.remove(serviceName);
+        }
+    }
+
+    /**
+     * @return 所有被订阅的服务
+     */
+    synchronized Set<String> serviceNames() {
+        return new HashSet<>(listeners.keySet());
+    }
+
+    synchronized boolean isEmpty() {
+        return listeners.isEmpty();
+    }
+
+    /**
+     * 服务的提供者列表可能发生了变化，把增量通知给订阅者
+     *
+     * @param serviceName 服务名称
+     * @param uris        最新的提供者列表
+     */
+    synchronized void update(String serviceName, List<URI> uris) {
+        List<URI> previous = delivered.get(serviceName);
+        // 没有人订阅，或者是同一个列表（注册中心的快照会复用没有变化的列表）
+        if (null == previous || previous == uris) {
+            return;
+        }
+        Set<URI> before = new LinkedHashSet<>(previous);
+        Set<URI> after = new LinkedHashSet<>(uris);
+        List<URI> added = new ArrayList<>();
+        for (URI uri : after) {
+            if (!before.contains(uri)) {
+                added.add(uri);
+            }
+        }
+        List<URI> removed = new ArrayList<>();
+        for (URI uri : before) {
+            if (!after.contains(uri)) {
+                removed.add(uri);
+            }
+        }
+        delivered.put(serviceName, uris);
+        if (added.isEmpty() && removed.isEmpty()) {
+            return;
+        }
+        logger.info("服务提供者变化: {}, 新增: {}, 下线: {}", serviceName, added, removed);
+        List<URI> addedView = Collections.unmodifiableList(added);
+        List<URI> removedView = Collections.unmodifiableList(removed);
+        for (NameServiceListener listener : listeners.get(serviceName)) {
+            notify(listener, serviceName, addedView, removedView);
+        }
+    }
+
+    private static void notify(NameServiceListener listener, String serviceName, List<URI> added, List<URI> removed) {
+        try {
+            listener.onChange(serviceName, added, removed);
+        } catch (Throwable t) {
+            logger.warn("通知订阅者失败: {}", serviceName, t);
+        }
+    }
+}
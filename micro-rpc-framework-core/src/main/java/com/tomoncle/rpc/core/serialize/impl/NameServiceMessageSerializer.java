@@ -0,0 +1,124 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.core.serialize.impl;
+
+
+import com.tomoncle.rpc.core.nameservice.NameServiceMessage;
+import com.tomoncle.rpc.core.serialize.Serializer;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author tomoncle
+ */
+public class NameServiceMessageSerializer implements Serializer<NameServiceMessage> {
+
+    @Override
+    public int size(NameServiceMessage message) {
+        int size = Byte.BYTES // 操作类型
+                + Long.BYTES // 租约
+                + stringSize(null == message.getServiceName() ? "" : message.getServiceName())
+                + stringSize(null == message.getUri() ? "" : message.getUri().toASCIIString())
+                + Integer.BYTES; // 服务的数量
+        for (Map.Entry<String, Long> entry : message.getVersions().entrySet()) {
+            size += stringSize(entry.getKey()) + Long.BYTES + Integer.BYTES;
+            List<URI> uris = message.getProviders().get(entry.getKey());
+            if (null != uris) {
+                for (URI uri : uris) {
+                    size += stringSize(uri.toASCIIString());
+                }
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public void serialize(NameServiceMessage message, byte[] bytes, int offset, int length) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+        buffer.put(message.getOp());
+        buffer.putLong(message.getOwner());
+        putString(buffer, null == message.getServiceName() ? "" : message.getServiceName());
+        putString(buffer, null == message.getUri() ? "" : message.getUri().toASCIIString());
+        buffer.putInt(message.getVersions().size());
+        for (Map.Entry<String, Long> entry : message.getVersions().entrySet()) {
+            putString(buffer, entry.getKey());
+            buffer.putLong(entry.getValue());
+            List<URI> uris = message.getProviders().get(entry.getKey());
+            // 没有提供者列表（比如请求中）时写入 -1，和空列表区分开
+            buffer.putInt(null == uris ? -1 : uris.size());
+            if (null != uris) {
+                for (URI uri : uris) {
+                    putString(buffer, uri.toASCIIString());
+                }
+            }
+        }
+    }
+
+    @Override
+    public NameServiceMessage parse(byte[] bytes, int offset, int length) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+        byte op = buffer.get();
+        long owner = buffer.getLong();
+        String name = getString(buffer);
+        String uri = getString(buffer);
+        int services = buffer.getInt();
+        Map<String, Long> versions = new LinkedHashMap<>();
+        Map<String, List<URI>> providers = new LinkedHashMap<>();
+        for (int i = 0; i < services; i++) {
+            String serviceName = getString(buffer);
+            versions.put(serviceName, buffer.getLong());
+            int size = buffer.getInt();
+            if (size >= 0) {
+                List<URI> uris = new ArrayList<>(size);
+                for (int j = 0; j < size; j++) {
+                    uris.add(URI.create(getString(buffer)));
+                }
+                providers.put(serviceName, uris);
+            }
+        }
+        return new NameServiceMessage(op, owner, name.isEmpty() ? null : name, uri.isEmpty() ? null : URI.create(uri), versions, providers);
+    }
+
+    @Override
+    public byte type() {
+        return Types.NAME_SERVICE_MESSAGE;
+    }
+
+    @Override
+    public Class<NameServiceMessage> getSerializeClass() {
+        return NameServiceMessage.class;
+    }
+
+    private static int stringSize(String s) {
+        return Integer.BYTES + s.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static void putString(ByteBuffer buffer, String s) {
+        byte[] tmpBytes = s.getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(tmpBytes.length);
+        buffer.put(tmpBytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] tmpBytes = new byte[buffer.getInt()];
+        buffer.get(tmpBytes);
+        return new String(tmpBytes, StandardCharsets.UTF_8);
+    }
+}
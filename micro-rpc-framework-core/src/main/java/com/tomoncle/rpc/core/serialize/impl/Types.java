@@ -23,4 +23,5 @@ class Types {
     final static int STRING = 0;
     final static int METADATA = 100;
     final static int RPC_REQUEST = 101;
+    final static int NAME_SERVICE_MESSAGE = 102;
 }
@@ -0,0 +1,319 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.core.server;
+
+import com.tomoncle.rpc.api.spi.Singleton;
+import com.tomoncle.rpc.core.client.ServiceTypes;
+import com.tomoncle.rpc.core.nameservice.Leases;
+import com.tomoncle.rpc.core.nameservice.NameServiceMessage;
+import com.tomoncle.rpc.core.serialize.SerializeSupport;
+import com.tomoncle.rpc.core.transport.AsyncRequestHandler;
+import com.tomoncle.rpc.core.transport.command.Code;
+import com.tomoncle.rpc.core.transport.command.Command;
+import com.tomoncle.rpc.core.transport.command.Header;
+import com.tomoncle.rpc.core.transport.command.ResponseHeader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 注册中心的请求处理类，让一个 RPC 服务端同时作为注册中心使用
+ * <p>
+ * 注册信息只保存在内存中。订阅使用长轮询：客户端带着已知的版本号发起 WATCH 请求，
+ * 有服务的版本号变化时立即返回变化的服务，否则挂起请求，直到有变化或者超过挂起时间，
+ * 挂起期间不占用 IO 线程。挂起时间必须小于客户端 InProcessRequests 的超时时间。
+ * <p>
+ * 注册信息属于客户端的租约，客户端定期发送 HEARTBEAT 续约，
+ * 超过 {@link Leases#TTL_MILLIS} 没有续约的租约由后台任务回收，注销它注册的所有服务，并通知订阅者。
+ *
+ * @author tomoncle
+ */
+@Singleton
+public class NameServiceRequestHandler implements AsyncRequestHandler {
+    private static final Logger logger = LoggerFactory.getLogger(NameServiceRequestHandler.class);
+    /**
+     * WATCH 请求最长的挂起时间
+     */
+    private static final long HOLD_MILLIS = 4000L;
+
+    private final Map<String/*服务名*/, Providers> services = new HashMap<>();
+    private final Map<Long/*owner*/, Lease> leases = new HashMap<>();
+    private final List<Watch> watches = new LinkedList<>();
+    private long nextVersion = 1L;
+    private ScheduledExecutorService scheduler = null;
+
+    @Override
+    public CompletableFuture<Command> handleAsync(Command requestCommand) {
+        Header header = requestCommand.getHeader();
+        try {
+            NameServiceMessage request = SerializeSupport.parse(requestCommand.getPayload());
+            switch (request.getOp()) {
+                case NameServiceMessage.REGISTER:
+                case NameServiceMessage.UNREGISTER:
+                    update(request.getServiceName(), request.getUri(), request.getOwner(), request.getOp() == NameServiceMessage.REGISTER);
+                    return CompletableFuture.completedFuture(response(header, lookup(Collections.singleton(request.getServiceName()))));
+                case NameServiceMessage.HEARTBEAT:
+                    return CompletableFuture.completedFuture(response(header, renew(request.getOwner())));
+                case NameServiceMessage.LOOKUP:
+                    return CompletableFuture.completedFuture(response(header, lookup(request.getVersions().keySet())));
+                case NameServiceMessage.WATCH:
+                    return watch(header, request.getVersions());
+                default:
+                    return CompletableFuture.completedFuture(error(header, "Unsupported operation: " + request.getOp()));
+            }
+        } catch (Throwable t) {
+            logger.warn("Exception: ", t);
+            return CompletableFuture.completedFuture(error(header, t.getMessage()));
+        }
+    }
+
+    @Override
+    public int type() {
+        return ServiceTypes.TYPE_NAME_SERVICE;
+    }
+
+    private void update(String serviceName, URI uri, long owner, boolean register) {
+        synchronized (this) {
+            Providers providers = register ? services.computeIfAbsent(serviceName, k -> new Providers()) : services.get(serviceName);
+            if (null == providers) {
+                // 注销不存在的服务
+                return;
+            }
+            Long previous = register ? providers.uris.put(uri, owner) : providers.uris.remove(uri);
+            if (null != previous) {
+                release(previous, serviceName, uri);
+            }
+            if (register && owner != Leases.NO_OWNER) {
+                Lease lease = leases.computeIfAbsent(owner, k -> new Lease());
+                lease.entries.add(new AbstractMap.SimpleImmutableEntry<>(serviceName, uri));
+                lease.expiresAt = System.currentTimeMillis() + Leases.TTL_MILLIS;
+                startScheduler();
+            }
+            if (register == (null != previous)) {
+                // 重复注册，或者注销不存在的服务
+                return;
+            }
+            providersChanged(serviceName, providers);
+            logger.info("{} service: {}, uri: {}.", register ? "Register" : "Unregister", serviceName, uri);
+        }
+        wake(Collections.singleton(serviceName));
+    }
+
+    /**
+     * 续约
+     *
+     * @return 租约已经过期时 owner 为 {@link Leases#NO_OWNER}，客户端需要重新注册
+     */
+    private synchronized NameServiceMessage renew(long owner) {
+        Lease lease = leases.get(owner);
+        if (null != lease) {
+            lease.expiresAt = System.currentTimeMillis() + Leases.TTL_MILLIS;
+        }
+        return new NameServiceMessage(NameServiceMessage.RESPONSE, null == lease ? Leases.NO_OWNER : owner,
+                null, null, Collections.<String, Long>emptyMap(), Collections.<String, List<URI>>emptyMap());
+    }
+
+    /**
+     * 回收过期的租约，注销它注册的所有服务
+     */
+    private void reap() {
+        Set<String> changed = new HashSet<>();
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            for (Iterator<Lease> iterator = leases.values().iterator(); iterator.hasNext(); ) {
+                Lease lease = iterator.next();
+                if (lease.expiresAt > now) {
+                    continue;
+                }
+                iterator.remove();
+                for (Map.Entry<String, URI> entry : lease.entries) {
+                    Providers providers = services.get(entry.getKey());
+                    if (null == providers || null == providers.uris.remove(entry.getValue())) {
+                        continue;
+                    }
+                    providersChanged(entry.getKey(), providers);
+                    changed.add(entry.getKey());
+                }
+                logger.info("注销过期租约的注册信息: {}", lease.entries);
+            }
+        }
+        if (!changed.isEmpty()) {
+            wake(changed);
+        }
+    }
+
+    /**
+     * 服务的提供者变化后增加版本号；没有提供者的服务直接删除，
+     * 订阅者已知的版本号和删除后的版本号（0）不同，同样会收到通知
+     */
+    private void providersChanged(String serviceName, Providers providers) {
+        if (providers.uris.isEmpty()) {
+            services.remove(serviceName);
+        } else {
+            providers.changed(nextVersion++);
+        }
+    }
+
+    /**
+     * 服务的注册信息不再属于原来的租约
+     */
+    private void release(long owner, String serviceName, URI uri) {
+        Lease lease = leases.get(owner);
+        if (null != lease) {
+            lease.entries.remove(new AbstractMap.SimpleImmutableEntry<>(serviceName, uri));
+        }
+    }
+
+    /**
+     * 唤醒订阅了这些服务的 WATCH 请求
+     */
+    private void wake(Set<String> serviceNames) {
+        List<Watch> ready = new ArrayList<>();
+        synchronized (this) {
+            for (Iterator<Watch> iterator = watches.iterator(); iterator.hasNext(); ) {
+                Watch watch = iterator.next();
+                if (!Collections.disjoint(watch.versions.keySet(), serviceNames)) {
+                    iterator.remove();
+                    ready.add(watch);
+                }
+            }
+        }
+        for (Watch watch : ready) {
+            watch.future.complete(response(watch.header, changed(watch.versions)));
+        }
+    }
+
+    private CompletableFuture<Command> watch(Header header, Map<String, Long> versions) {
+        Watch watch;
+        synchronized (this) {
+            NameServiceMessage changed = changed(versions);
+            if (!changed.getVersions().isEmpty()) {
+                return CompletableFuture.completedFuture(response(header, changed));
+            }
+            watch = new Watch(header, versions);
+            watches.add(watch);
+            startScheduler();
+        }
+        scheduler.schedule(() -> {
+            synchronized (this) {
+                if (!watches.remove(watch)) {
+                    return;
+                }
+            }
+            // 超过挂起时间没有变化，返回空的响应，客户端会重新发起请求
+            watch.future.complete(response(header, changed(Collections.<String, Long>emptyMap())));
+        }, HOLD_MILLIS, TimeUnit.MILLISECONDS);
+        return watch.future;
+    }
+
+    private synchronized void startScheduler() {
+        if (null == scheduler) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "name-service-timer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(this::reap,
+                    Leases.RENEW_INTERVAL_MILLIS, Leases.RENEW_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 查询服务的最新版本和提供者
+     */
+    private synchronized NameServiceMessage lookup(Iterable<String> serviceNames) {
+        Map<String, Long> versions = new LinkedHashMap<>();
+        Map<String, List<URI>> providers = new LinkedHashMap<>();
+        for (String serviceName : serviceNames) {
+            Providers service = services.getOrDefault(serviceName, Providers.EMPTY);
+            versions.put(serviceName, service.version);
+            providers.put(serviceName, service.snapshot);
+        }
+        return new NameServiceMessage(NameServiceMessage.RESPONSE, Leases.NO_OWNER, null, null, versions, providers);
+    }
+
+    /**
+     * 查询版本号和客户端已知的版本号不同的服务
+     */
+    private synchronized NameServiceMessage changed(Map<String, Long> knownVersions) {
+        List<String> changed = new ArrayList<>();
+        for (Map.Entry<String, Long> entry : knownVersions.entrySet()) {
+            if (services.getOrDefault(entry.getKey(), Providers.EMPTY).version != entry.getValue()) {
+                changed.add(entry.getKey());
+            }
+        }
+        return lookup(changed);
+    }
+
+    private static Command response(Header header, NameServiceMessage message) {
+        return new Command(new ResponseHeader.Builder().setHeader(header).build(), SerializeSupport.serialize(message));
+    }
+
+    private static Command error(Header header, String error) {
+        return new Command(new ResponseHeader.Builder().setHeader(header).setCode(Code.UNKNOWN_ERROR.getCode()).setError(error).build(), new byte[0]);
+    }
+
+    /**
+     * 一个服务的所有提供者
+     */
+    private static class Providers {
+        private static final Providers EMPTY = new Providers();
+        private final LinkedHashMap<URI, Long/*owner*/> uris = new LinkedHashMap<>();
+        private List<URI> snapshot = Collections.emptyList();
+        private long version = 0L;
+
+        private void changed(long version) {
+            this.version = version;
+            snapshot = Collections.unmodifiableList(new ArrayList<>(uris.keySet()));
+        }
+    }
+
+    /**
+     * 一个客户端的租约
+     */
+    private static class Lease {
+        private final Set<Map.Entry<String, URI>> entries = new HashSet<>();
+        private long expiresAt;
+    }
+
+    /**
+     * 挂起的 WATCH 请求
+     */
+    private static class Watch {
+        private final Header header;
+        private final Map<String, Long> versions;
+        private final CompletableFuture<Command> future = new CompletableFuture<>();
+
+        private Watch(Header header, Map<String, Long> versions) {
+            this.header = header;
+            this.versions = versions;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.core.server;
+
+import com.tomoncle.rpc.core.client.stubs.RpcRequest;
+import com.tomoncle.rpc.core.interceptor.Interceptors;
+import com.tomoncle.rpc.core.interceptor.RpcMethod;
+import com.tomoncle.rpc.core.interceptor.ServerChain;
+import com.tomoncle.rpc.core.metrics.MethodMetrics;
+import com.tomoncle.rpc.core.metrics.Metrics;
+import com.tomoncle.rpc.core.transport.command.Command;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * 服务端每个方法的处理策略，注册服务提供者时为服务接口的每个方法创建一次
+ * <p>
+ * 注册时就查找好要调用的方法，处理请求时不再通过反射查找。
+ *
+ * @author tomoncle
+ */
+final class ProviderMethod {
+    private final String serviceName;
+    private final String methodName;
+    private final Object provider;
+    private final Method method;
+    private final MethodMetrics metrics;
+    private final ServerChain chain;
+
+    /**
+     * @param method   服务接口中参数为 String 的方法，没有时为 null，调用时返回错误
+     * @param terminal 拦截器链的最后一环，调用服务提供者
+     */
+    ProviderMethod(String serviceName, String methodName, Object provider, Method method, Terminal terminal) {
+        this.serviceName = serviceName;
+        this.methodName = methodName;
+        this.provider = provider;
+        this.method = method;
+        this.metrics = Metrics.server(serviceName, methodName);
+        this.chain = Interceptors.serverChain(new RpcMethod(serviceName, methodName),
+                (rpcRequest, request) -> terminal.invoke(this, rpcRequest, request));
+    }
+
+    /**
+     * 调用服务提供者的方法
+     *
+     * @param argument 反序列化后的参数
+     * @return 方法的返回值
+     */
+    Object invoke(Object argument) throws NoSuchMethodException, IllegalAccessException, InvocationTargetException {
+        if (null == method) {
+            throw new NoSuchMethodException(serviceName + "." + methodName + "(java.lang.String)");
+        }
+        return method.invoke(provider, argument);
+    }
+
+    /**
+     * @return 方法在服务端的指标
+     */
+    MethodMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return 拦截器链，最后一环调用服务提供者
+     */
+    ServerChain getChain() {
+        return chain;
+    }
+
+    /**
+     * 拦截器链的最后一环
+     */
+    @FunctionalInterface
+    interface Terminal {
+        Command invoke(ProviderMethod providerMethod, RpcRequest rpcRequest, Command request);
+    }
+}
@@ -15,7 +15,10 @@ package com.tomoncle.rpc.core.server;
 
 import com.tomoncle.rpc.api.spi.Singleton;
 import com.tomoncle.rpc.core.client.ServiceTypes;
+import com.tomoncle.rpc.core.accesslog.AccessLog;
 import com.tomoncle.rpc.core.client.stubs.RpcRequest;
+import com.tomoncle.rpc.core.metrics.MethodMetrics;
+import com.tomoncle.rpc.core.metrics.Metrics;
 import com.tomoncle.rpc.core.serialize.SerializeSupport;
 import com.tomoncle.rpc.core.transport.RequestHandler;
 import com.tomoncle.rpc.core.transport.command.Code;
@@ -28,6 +31,7 @@ import org.slf4j.LoggerFactory;
 import java.lang.reflect.Method;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 服务端请求处理类
@@ -44,39 +48,71 @@ import java.util.Map;
 @Singleton
 public class RpcRequestHandler implements RequestHandler, ServiceProviderRegistry {
     private static final Logger logger = LoggerFactory.getLogger(RpcRequestHandler.class);
-    private Map<String/*service name*/, Object/*service provider*/> serviceProviders = new HashMap<>();
+    private final Map<String/*service name*/, Map<String/*method name*/, ProviderMethod>> providerMethods = new ConcurrentHashMap<>();
+    /**
+     * 没有提供者的服务的请求都记录在这一个指标中，客户端发来的任意服务名不会让指标无限增长
+     */
+    private static final String UNKNOWN = "unknown";
+    private final MethodMetrics unknownMetrics = Metrics.server(UNKNOWN, UNKNOWN);
 
     /**
      * 1.把 requestCommand 的 payload 属性反序列化成为 RpcRequest；
-     * 2.根据 rpcRequest 中的服务名，去成员变量 serviceProviders 中查找已注册服务实现类的实例；
+     * 2.根据 rpcRequest 中的服务名和方法名，去成员变量 providerMethods 中查找注册时创建的处理策略；
      * 3.找到服务提供者之后，利用 Java 反射机制调用服务的对应方法；
      * 4.把结果封装成响应命令并返回，在 RequestInvocationHandler 中，它会把这个响应命令发送给客户端。
+     * <p>
+     * 调用服务提供者之前先经过方法的服务端拦截器链（见 {@link com.tomoncle.rpc.core.interceptor.Interceptors}），
+     * 每个方法的处理时间（不包括排队时间）、结果和收发的字节数记录在服务端的 {@link MethodMetrics} 中，
+     * 并按配置写入访问日志（{@link AccessLog}）；没有注册提供者的服务和方法不经过拦截器，直接返回 NO_PROVIDER，
+     * 指标都记录在同一个 unknown 方法中。
      *
      * @param requestCommand 请求命令
      * @return Command
      */
     @Override
     public Command handle(Command requestCommand) {
-        logger.info("处理请求：" + requestCommand);
+        logger.debug("处理请求：{}", requestCommand);
         Header header = requestCommand.getHeader();
         // 从payload中反序列化RpcRequest
         RpcRequest rpcRequest = SerializeSupport.parse(requestCommand.getPayload());
+        ProviderMethod providerMethod = providerMethod(rpcRequest);
+        MethodMetrics metrics = null == providerMethod ? unknownMetrics : providerMethod.getMetrics();
+        long startNanos = metrics.start();
+        metrics.addBytesIn(requestCommand.getPayload().length);
+        Command responseCommand;
         try {
-            // 查找所有已注册的服务提供方，寻找rpcRequest中需要的服务
-            Object serviceProvider = serviceProviders.get(rpcRequest.getInterfaceName());
-            if (serviceProvider != null) {
-                logger.info("查找服务提供者：{}", serviceProvider.getClass().getName());
-                // 找到服务提供者，利用Java反射机制调用服务的对应方法
-                String arg = SerializeSupport.parse(rpcRequest.getSerializedArguments());
-                Method method = serviceProvider.getClass().getMethod(rpcRequest.getMethodName(), String.class);
-                String result = (String) method.invoke(serviceProvider, arg);
-                // 把结果封装成响应命令并返回
-                logger.info("执行反射：{}.invoke({}, {})\n", method.getName(), serviceProvider.getClass().getName(), arg);
-                return new Command(new ResponseHeader.Builder().setHeader(header).build(), SerializeSupport.serialize(result));
-            }
-            // 如果没找到，返回NO_PROVIDER错误响应。
-            logger.warn("No service Provider of {}#{}(String)!", rpcRequest.getInterfaceName(), rpcRequest.getMethodName());
-            return new Command(new ResponseHeader.Builder().setHeader(header).setCode(Code.NO_PROVIDER.getCode()).setError("No provider!").build(), new byte[0]);
+            responseCommand = null == providerMethod ? noProvider(header, rpcRequest)
+                    : providerMethod.getChain().proceed(rpcRequest, requestCommand);
+        } catch (Throwable t) {
+            // 拦截器抛出的异常，和服务提供者的异常一样返回UNKNOWN_ERROR错误响应。
+            logger.warn("Exception: ", t);
+            responseCommand = new Command(new ResponseHeader.Builder().setHeader(header).setCode(Code.UNKNOWN_ERROR.getCode()).setError(t.getMessage()).build(), new byte[0]);
+        }
+        String outcome = MethodMetrics.outcome(((ResponseHeader) responseCommand.getHeader()).getCode());
+        metrics.addBytesOut(responseCommand.getPayload().length);
+        long latencyNanos = metrics.complete(startNanos, outcome);
+        AccessLog.record(true, rpcRequest.getInterfaceName(), rpcRequest.getMethodName(), header.getRequestId(),
+                outcome, latencyNanos, requestCommand.getPayload().length, responseCommand.getPayload().length);
+        return responseCommand;
+    }
+
+    /**
+     * @return 方法的处理策略，服务没有注册提供者或者服务接口中没有这个方法时返回 null
+     */
+    private ProviderMethod providerMethod(RpcRequest rpcRequest) {
+        // 两层 Map，查找时不需要拼接字符串；只在注册服务时写入，客户端发来的名称不会增加新的条目
+        Map<String, ProviderMethod> methods = providerMethods.get(rpcRequest.getInterfaceName());
+        return null == methods ? null : methods.get(rpcRequest.getMethodName());
+    }
+
+    private static Command invoke(ProviderMethod providerMethod, RpcRequest rpcRequest, Command request) {
+        Header header = request.getHeader();
+        try {
+            // 利用Java反射机制调用服务的对应方法，方法在注册时已经查找好
+            String arg = SerializeSupport.parse(rpcRequest.getSerializedArguments());
+            String result = (String) providerMethod.invoke(arg);
+            // 把结果封装成响应命令并返回
+            return new Command(new ResponseHeader.Builder().setHeader(header).build(), SerializeSupport.serialize(result));
         } catch (Throwable t) {
             // 发生异常，返回UNKNOWN_ERROR错误响应。
             logger.warn("Exception: ", t);
@@ -84,6 +120,19 @@ public class RpcRequestHandler implements RequestHandler, ServiceProviderRegistr
         }
     }
 
+    private static Command noProvider(Header header, RpcRequest rpcRequest) {
+        logger.warn("No service Provider of {}#{}(String)!", rpcRequest.getInterfaceName(), rpcRequest.getMethodName());
+        return new Command(new ResponseHeader.Builder().setHeader(header).setCode(Code.NO_PROVIDER.getCode()).setError("No provider!").build(), new byte[0]);
+    }
+
+    private static Method stringMethod(Class<?> serviceClass, String methodName) {
+        try {
+            return serviceClass.getMethod(methodName, String.class);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
     @Override
     public int type() {
         return ServiceTypes.TYPE_RPC_REQUEST;
@@ -99,7 +148,14 @@ public class RpcRequestHandler implements RequestHandler, ServiceProviderRegistr
     @Override
     public synchronized <T> void addServiceProvider(Class<? extends T> serviceClass, T serviceProvider) {
         // Key 就是服务名，Value 就是服务提供方，也就是服务实现类的实例
-        serviceProviders.put(serviceClass.getCanonicalName(), serviceProvider);
+        String serviceName = serviceClass.getCanonicalName();
+        // 注册时为服务接口的每个方法创建处理策略，重载的方法共用一个，调用参数为 String 的那个
+        Map<String, ProviderMethod> methods = new HashMap<>();
+        for (Method method : serviceClass.getMethods()) {
+            methods.computeIfAbsent(method.getName(), k -> new ProviderMethod(serviceName, k, serviceProvider,
+                    stringMethod(serviceClass, k), RpcRequestHandler::invoke));
+        }
+        providerMethods.put(serviceName, methods);
         logger.info("Add service: {}, provider: {}.",
                 serviceClass.getCanonicalName(),
                 serviceProvider.getClass().getCanonicalName());
@@ -0,0 +1,170 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.core.transport;
+
+import com.tomoncle.rpc.core.metrics.Metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * 服务端的准入控制
+ * <p>
+ * 过载时让所有请求一起变慢直到超时，不如尽早拒绝一部分请求，让客户端去其他提供者重试，
+ * 服务端只处理它能按时处理完的请求。两道关卡，被拒绝的请求都不会反序列化：
+ * <p>
+ * 1. 在途请求数：收到请求时超过上限直接拒绝；
+ * 2. 排队时间（CoDel）：请求从队列中取出时检查它等待了多久。如果上一个时间窗口内最短的排队时间都超过了目标值，
+ * 说明队列一直没有排空，处于过载状态，这时排队超过目标值的请求都被丢弃；否则只丢弃排队超过一个时间窗口的请求，
+ * 允许短时间的突发流量。
+ * <p>
+ * 参数可以用系统属性设置：micro.rpc.server.maxInFlight、micro.rpc.server.codel.targetMillis、
+ * micro.rpc.server.codel.intervalMillis。
+ *
+ * @author tomoncle
+ */
+public class AdmissionController {
+    private static final int MAX_IN_FLIGHT = Integer.getInteger("micro.rpc.server.maxInFlight", 1024);
+    private static final long TARGET_NANOS = TimeUnit.MILLISECONDS.toNanos(Long.getLong("micro.rpc.server.codel.targetMillis", 5L));
+    private static final long INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(Long.getLong("micro.rpc.server.codel.intervalMillis", 100L));
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final LongSupplier clock;
+    private long intervalEndNanos;
+    private long minSojournNanos = Long.MAX_VALUE;
+    private boolean overloaded = false;
+
+    public AdmissionController() {
+        this(System::nanoTime);
+    }
+
+    /**
+     * @param clock 读取当前时间（纳秒），测试中用来控制时间窗口
+     */
+    AdmissionController(LongSupplier clock) {
+        this.clock = clock;
+        this.intervalEndNanos = clock.getAsLong() + INTERVAL_NANOS;
+    }
+
+    /**
+     * 收到请求时调用，接受的请求处理完成后必须调用 {@link #release()}
+     *
+     * @return 在途请求数超过上限时返回 false
+     */
+    public boolean tryAcquire() {
+        if (inFlight.incrementAndGet() > MAX_IN_FLIGHT) {
+            inFlight.decrementAndGet();
+            rejected.increment();
+            return false;
+        }
+        admitted.increment();
+        return true;
+    }
+
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * 请求从队列中取出时调用
+     *
+     * @param sojournNanos 请求的排队时间
+     * @return 需要丢弃该请求时返回 true
+     */
+    public boolean shouldDrop(long sojournNanos) {
+        boolean drop;
+        long now = clock.getAsLong();
+        synchronized (this) {
+            if (now > intervalEndNanos) {
+                // 上一个时间窗口结束之后又过了一个完整的窗口都没有请求，说明队列是空的，
+                // 不能用之前的最短排队时间判断，否则空闲之后的第一批请求会被当成过载丢弃
+                boolean idle = now - intervalEndNanos > INTERVAL_NANOS;
+                overloaded = !idle && minSojournNanos != Long.MAX_VALUE && minSojournNanos > TARGET_NANOS;
+                minSojournNanos = Long.MAX_VALUE;
+                intervalEndNanos = now + INTERVAL_NANOS;
+            }
+            minSojournNanos = Math.min(minSojournNanos, sojournNanos);
+            drop = sojournNanos > (overloaded ? TARGET_NANOS : INTERVAL_NANOS);
+        }
+        if (drop) {
+            dropped.increment();
+        }
+        return drop;
+    }
+
+    /**
+     * 记录一个超过截止时间的请求，它没有被处理或者它的响应没有发送
+     */
+    public void recordExpired() {
+        expired.increment();
+    }
+
+    /**
+     * @return 当前的在途请求数
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * @return 接受的请求数
+     */
+    public long getAdmittedCount() {
+        return admitted.sum();
+    }
+
+    /**
+     * @return 因为在途请求数超过上限而拒绝的请求数
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * @return 因为排队时间太长而丢弃的请求数
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * @return 超过截止时间而没有处理或者没有发送响应的请求数
+     */
+    public long getExpiredCount() {
+        return expired.sum();
+    }
+
+    /**
+     * 把准入控制的计数注册到服务端的指标中
+     */
+    public void registerMetrics() {
+        Metrics.gauge("rpc_server_admission_in_flight", this::getInFlight);
+        Metrics.gauge("rpc_server_admitted_total", this::getAdmittedCount);
+        Metrics.gauge("rpc_server_rejected_total", this::getRejectedCount);
+        Metrics.gauge("rpc_server_dropped_total", this::getDroppedCount);
+        Metrics.gauge("rpc_server_expired_total", this::getExpiredCount);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("AdmissionController(inFlight=%d, admitted=%d, rejected=%d, dropped=%d, expired=%d)",
+                getInFlight(), getAdmittedCount(), getRejectedCount(), getDroppedCount(), getExpiredCount());
+    }
+}
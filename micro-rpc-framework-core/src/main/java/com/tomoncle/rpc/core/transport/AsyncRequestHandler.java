@@ -0,0 +1,42 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.core.transport;
+
+import com.tomoncle.rpc.core.transport.command.Command;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 异步的请求处理器
+ * <p>
+ * 请求不能在 IO 线程中立即处理完时（比如注册中心的长轮询），返回一个 CompletableFuture，
+ * 处理完成后再把响应发送给客户端，不会阻塞 IO 线程。
+ *
+ * @author tomoncle
+ */
+public interface AsyncRequestHandler extends RequestHandler {
+    /**
+     * 异步处理请求
+     * <p>
+     * 系统属性 micro.rpc.server.pooledRequests=true 时，请求命令在返回的 CompletableFuture 完成之前一直有效，完成之后会被回收复用。
+     * @param requestCommand 请求命令
+     * @return 响应命令
+     */
+    CompletableFuture<Command> handleAsync(Command requestCommand);
+
+    @Override
+    default Command handle(Command requestCommand) {
+        return handleAsync(requestCommand).join();
+    }
+}
@@ -13,12 +13,14 @@
  */
 package com.tomoncle.rpc.core.transport;
 
+import com.tomoncle.rpc.core.metrics.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
 import java.util.Map;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Predicate;
 
 /**
@@ -45,10 +47,14 @@ public class InProcessRequests implements Closeable {
     private static final Logger logger = LoggerFactory.getLogger(InProcessRequests.class);
     // 超时设置
     private final static long TIMEOUT_SEC = 10L;
+    // 检查超时请求的间隔，请求带有截止时间时需要及时归还许可
+    private final static long REAP_INTERVAL_MILLIS = 100L;
     // 定义10个信号量
     private final Semaphore semaphore = new Semaphore(10);
     // 存放正在进行中的请求
     private final Map<Integer, ResponseFuture> futureMap = new ConcurrentHashMap<>();
+    // 所有客户端正在进行中的请求数
+    private static final LongAdder pending = Metrics.counter("rpc_client_pending_requests");
     // 定义一个具有循环任务的线程池
     private final ScheduledExecutorService scheduledExecutorService = Executors.newSingleThreadScheduledExecutor();
     // 定时删除超时的任务
@@ -61,7 +67,7 @@ public class InProcessRequests implements Closeable {
             public void run() {
                 InProcessRequests.this.removeTimeoutFutures();
             }
-        }, TIMEOUT_SEC, TIMEOUT_SEC, TimeUnit.SECONDS);
+        }, REAP_INTERVAL_MILLIS, REAP_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
 
         logger.info("初始化InProcessRequests，加载定时任务");
     }
@@ -74,10 +80,13 @@ public class InProcessRequests implements Closeable {
      * @throws TimeoutException     超时
      */
     public void put(ResponseFuture responseFuture) throws InterruptedException, TimeoutException {
-        logger.info("存入一个进行中的请求: {}", responseFuture.getRequestId());
+        if (logger.isDebugEnabled()) {
+            logger.debug("存入一个进行中的请求: {}", responseFuture.getRequestId());
+        }
         // 尝试获取许可，如果超过10个，就阻塞，10秒拿不到就超时
         if (semaphore.tryAcquire(TIMEOUT_SEC, TimeUnit.SECONDS)) {
             futureMap.put(responseFuture.getRequestId(), responseFuture);
+            pending.increment();
         } else {
             throw new TimeoutException();
         }
@@ -90,10 +99,14 @@ public class InProcessRequests implements Closeable {
         Predicate<Map.Entry<Integer, ResponseFuture>> predicate = new Predicate<Map.Entry<Integer, ResponseFuture>>() {
             @Override
             public boolean test(Map.Entry<Integer, ResponseFuture> entry) {
-                // 超时10秒，释放信号量
-                if (System.nanoTime() - entry.getValue().getTimestamp() > TIMEOUT_SEC * 1000000000L) {
+                // 超过请求的截止时间（默认10秒），释放信号量，服务端不会再返回过期请求的响应
+                ResponseFuture future = entry.getValue();
+                long timeoutNanos = future.getTimeoutNanos() > 0 ? future.getTimeoutNanos() : TIMEOUT_SEC * 1000000000L;
+                if (System.nanoTime() - future.getTimestamp() > timeoutNanos) {
                     semaphore.release();
-                    logger.info("定时删除超时的请求: {}", entry.getKey());
+                    pending.decrement();
+                    logger.debug("定时删除超时的请求: {}", entry.getKey());
+                    future.getFuture().completeExceptionally(new TimeoutException("Request timeout: " + entry.getKey()));
                     return true;
                 } else {
                     return false;
@@ -111,10 +124,13 @@ public class InProcessRequests implements Closeable {
      * @return ResponseFuture 对象 {@link ResponseFuture}
      */
     public ResponseFuture remove(int requestId) {
-        logger.info("删除进行中的请求: {}", requestId);
+        if (logger.isDebugEnabled()) {
+            logger.debug("删除进行中的请求: {}", requestId);
+        }
         ResponseFuture future = futureMap.remove(requestId);
         if (null != future) {
             semaphore.release();
+            pending.decrement();
         }
         return future;
     }
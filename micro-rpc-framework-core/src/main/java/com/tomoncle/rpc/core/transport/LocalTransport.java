@@ -0,0 +1,180 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.core.transport;
+
+import com.tomoncle.rpc.api.RpcContext;
+import com.tomoncle.rpc.core.transport.command.Code;
+import com.tomoncle.rpc.core.transport.command.Command;
+import com.tomoncle.rpc.core.transport.command.ResponseHeader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 服务提供者和调用方在同一个进程中时使用的 Transport，不经过网络，直接把请求命令交给 {@link RequestHandlerRegistry} 中的请求处理器
+ * <p>
+ * 省掉了编解码、回环网络的读写和 IO 线程；请求数据已经是序列化后的字节，调用双方不会共享参数和返回值对象。
+ * 处理方式和经过网络时一致：同步的请求先经过服务端的准入控制，再交给服务端的业务线程池执行，
+ * 过载时返回 {@link Code#OVERLOADED}，截止时间保存在 {@link RpcContext} 中传递给下游调用，
+ * 已经过期的请求不再处理；异步的请求处理器（{@link AsyncRequestHandler}）不经过准入控制。
+ * <p>
+ * 系统属性 micro.rpc.local.mode 设置为 off 时不使用本地调用，总是经过网络，默认为 direct。
+ * 本进程启动的服务端通过 {@link #serve(URI, RequestHandlerRegistry, TransportServer)} 登记，
+ * 客户端连接这些地址时通过 {@link #connect(URI)} 得到本地调用的 Transport。
+ *
+ * @author tomoncle
+ */
+public class LocalTransport implements Transport {
+    private static final Logger logger = LoggerFactory.getLogger(LocalTransport.class);
+    private static final byte[] EMPTY = new byte[0];
+    private static final Mode MODE = parseMode(System.getProperty("micro.rpc.local.mode"));
+    private static final Map<URI, LocalTransport> transports = new ConcurrentHashMap<>();
+
+    private final RequestHandlerRegistry requestHandlerRegistry;
+    private final AdmissionController admissionController;
+    private final Executor executor;
+    private final CompletableFuture<Transport> connected = CompletableFuture.completedFuture(this);
+
+    private LocalTransport(RequestHandlerRegistry requestHandlerRegistry,
+                           AdmissionController admissionController, Executor executor) {
+        this.requestHandlerRegistry = requestHandlerRegistry;
+        this.admissionController = admissionController;
+        this.executor = executor;
+    }
+
+    /**
+     * 本地调用的模式
+     */
+    public enum Mode {
+        DIRECT, OFF
+    }
+
+    private static Mode parseMode(String value) {
+        if (null == value) {
+            return Mode.DIRECT;
+        }
+        try {
+            return Mode.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            logger.warn("micro.rpc.local.mode 的值无效: {}, 使用默认值: direct", value);
+            return Mode.DIRECT;
+        }
+    }
+
+    /**
+     * 登记本进程提供服务的地址；服务端没有业务线程池（例如共享内存服务端）时不登记，调用仍然经过服务端
+     *
+     * @param uri                    服务端地址
+     * @param requestHandlerRegistry 请求处理器
+     * @param server                 服务端，本地调用使用它的准入控制和业务线程池
+     */
+    public static void serve(URI uri, RequestHandlerRegistry requestHandlerRegistry, TransportServer server) {
+        if (MODE == Mode.OFF || null == server.getWorkerExecutor() || null == server.getAdmissionController()) {
+            return;
+        }
+        LocalTransport transport = new LocalTransport(requestHandlerRegistry,
+                server.getAdmissionController(), server.getWorkerExecutor());
+        if (null == transports.put(uri, transport)) {
+            logger.info("本地服务地址: {}", uri);
+        }
+    }
+
+    /**
+     * 服务端停止后取消登记
+     *
+     * @param uri 服务端地址
+     */
+    public static void unserve(URI uri) {
+        transports.remove(uri);
+    }
+
+    /**
+     * @param uri 服务端地址
+     * @return 地址由本进程提供服务时返回本地调用的 Transport，否则返回 null
+     */
+    public static CompletableFuture<Transport> connect(URI uri) {
+        LocalTransport transport = transports.get(uri);
+        return null == transport ? null : transport.connected;
+    }
+
+    @Override
+    public CompletableFuture<Command> send(Command request) {
+        RequestHandler handler = requestHandlerRegistry.get(request.getHeader().getType());
+        if (null == handler) {
+            CompletableFuture<Command> future = new CompletableFuture<>();
+            future.completeExceptionally(new IllegalStateException(
+                    String.format("No handler for request with type: %d!", request.getHeader().getType())));
+            return future;
+        }
+        long enqueueNanos = System.nanoTime();
+        int timeoutMillis = request.getHeader().getTimeoutMillis();
+        long deadlineNanos = enqueueNanos + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        if (handler instanceof AsyncRequestHandler) {
+            return ((AsyncRequestHandler) handler).handleAsync(request);
+        }
+        if (!admissionController.tryAcquire()) {
+            return CompletableFuture.completedFuture(overloaded(request));
+        }
+        CompletableFuture<Command> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    if (timeoutMillis > 0 && expired(deadlineNanos)) {
+                        admissionController.recordExpired();
+                        future.completeExceptionally(new TimeoutException("Deadline exceeded before handling request"));
+                    } else if (admissionController.shouldDrop(System.nanoTime() - enqueueNanos)) {
+                        future.complete(overloaded(request));
+                    } else if (timeoutMillis > 0) {
+                        Command response;
+                        try (RpcContext.Scope ignored = RpcContext.withDeadline(deadlineNanos)) {
+                            response = handler.handle(request);
+                        }
+                        if (expired(deadlineNanos)) {
+                            admissionController.recordExpired();
+                        }
+                        future.complete(response);
+                    } else {
+                        future.complete(handler.handle(request));
+                    }
+                } catch (Throwable t) {
+                    future.completeExceptionally(t);
+                } finally {
+                    admissionController.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            admissionController.release();
+            future.complete(overloaded(request));
+        }
+        return future;
+    }
+
+    private static boolean expired(long deadlineNanos) {
+        return System.nanoTime() - deadlineNanos >= 0;
+    }
+
+    private static Command overloaded(Command request) {
+        return new Command(new ResponseHeader.Builder().setHeader(request.getHeader())
+                .setCode(Code.OVERLOADED.getCode()).setError(Code.OVERLOADED.getMessage()).build(), EMPTY);
+    }
+}
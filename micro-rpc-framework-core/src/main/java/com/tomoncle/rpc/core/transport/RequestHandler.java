@@ -22,6 +22,9 @@ import com.tomoncle.rpc.core.transport.command.Command;
 public interface RequestHandler {
     /**
      * 处理请求
+     * <p>
+     * 系统属性 micro.rpc.server.pooledRequests=true 时请求命令在处理完成后会被回收复用，
+     * 不能在返回之后继续持有它和它的 Header，需要的值在返回之前复制出来。
      * @param requestCommand 请求命令
      * @return 响应命令
      */
@@ -37,14 +37,17 @@ import java.util.Map;
  */
 public class RequestHandlerRegistry {
     private static final Logger logger = LoggerFactory.getLogger(RequestHandlerRegistry.class);
-    private Map<Integer, RequestHandler> handlerMap = new HashMap<>();
-    private static RequestHandlerRegistry instance = null;
+    private final Map<Integer, RequestHandler> handlerMap = new HashMap<>();
 
+    /**
+     * 第一次调用时才加载所有的 RequestHandler，类的初始化由 JVM 保证只执行一次，多个线程同时调用不会创建多个实例
+     */
     public static RequestHandlerRegistry getInstance() {
-        if (null == instance) {
-            instance = new RequestHandlerRegistry();
-        }
-        return instance;
+        return Holder.INSTANCE;
+    }
+
+    private static class Holder {
+        private static final RequestHandlerRegistry INSTANCE = new RequestHandlerRegistry();
     }
 
     private RequestHandlerRegistry() {
@@ -11,10 +11,19 @@ public class ResponseFuture {
     private final int requestId;
     private final CompletableFuture<Command> future;
     private final long timestamp;
+    private final long timeoutNanos;
 
     public ResponseFuture(int requestId, CompletableFuture<Command> future) {
+        this(requestId, future, 0L);
+    }
+
+    /**
+     * @param timeoutNanos 请求的超时时间，0 表示使用默认的超时时间
+     */
+    public ResponseFuture(int requestId, CompletableFuture<Command> future, long timeoutNanos) {
         this.requestId = requestId;
         this.future = future;
+        this.timeoutNanos = timeoutNanos;
         timestamp = System.nanoTime();
     }
 
@@ -29,4 +38,8 @@ public class ResponseFuture {
     long getTimestamp() {
         return timestamp;
     }
+
+    long getTimeoutNanos() {
+        return timeoutNanos;
+    }
 }
@@ -2,6 +2,8 @@ package com.tomoncle.rpc.core.transport;
 
 import com.tomoncle.rpc.core.transport.command.Command;
 
+import java.net.URI;
+import java.util.Collection;
 import java.util.concurrent.CompletableFuture;
 
 /**
@@ -15,4 +17,32 @@ public interface Transport {
      * @return 返回值是一个Future，Future
      */
     CompletableFuture<Command> send(Command request);
+
+    /**
+     * 发送请求命令，尽量避开已经尝试过的提供者，用于对冲或者重试请求
+     * <p>
+     * 只连接了一个提供者的 Transport 直接发送即可。
+     *
+     * @param request 请求命令
+     * @param tried   已经尝试过的提供者，本次选择的提供者会加入其中
+     * @return 返回值是一个Future，Future
+     */
+    default CompletableFuture<Command> send(Command request, Collection<URI> tried) {
+        return send(request);
+    }
+
+    /**
+     * 连接断开（例如心跳超时）之后不可用，调用方应该丢弃它，重新创建一个 Transport
+     *
+     * @return 是否还可以发送请求
+     */
+    default boolean isAvailable() {
+        return true;
+    }
+
+    /**
+     * 关闭连接，之后不能再发送请求；调用方丢弃 Transport 之前调用
+     */
+    default void close() {
+    }
 }
@@ -15,6 +15,7 @@ package com.tomoncle.rpc.core.transport;
 
 import java.io.Closeable;
 import java.net.SocketAddress;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeoutException;
 
 /**
@@ -34,6 +35,23 @@ public interface TransportClient extends Closeable {
      */
     Transport createTransport(SocketAddress address, long connectionTimeout) throws InterruptedException, TimeoutException;
 
+    /**
+     * 异步创建 Transport，建立连接期间不阻塞调用线程；默认实现在调用线程中同步创建
+     *
+     * @param address           socket地址
+     * @param connectionTimeout 超时时间
+     * @return 连接建立后完成的 Future，超时失败时异常为 {@link TimeoutException}
+     */
+    default CompletableFuture<Transport> createTransportAsync(SocketAddress address, long connectionTimeout) {
+        CompletableFuture<Transport> future = new CompletableFuture<>();
+        try {
+            future.complete(createTransport(address, connectionTimeout));
+        } catch (Throwable t) {
+            future.completeExceptionally(t);
+        }
+        return future;
+    }
+
     @Override
     void close();
 }
@@ -13,6 +13,10 @@
  */
 package com.tomoncle.rpc.core.transport;
 
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.concurrent.Executor;
+
 /**
  * 定义服务端接口
  * @author tomoncle
@@ -24,7 +28,31 @@ public interface TransportServer {
      * @param port 端口号
      * @throws Exception 异常
      */
-    void start(RequestHandlerRegistry requestHandlerRegistry, int port) throws Exception;
+    default void start(RequestHandlerRegistry requestHandlerRegistry, int port) throws Exception {
+        start(requestHandlerRegistry, new InetSocketAddress(port));
+    }
+
+    /**
+     * 启动后端服务，监听指定的地址
+     * @param requestHandlerRegistry 请求处理器注册中心
+     * @param address 监听的地址，TCP 地址或者 Unix domain socket 地址
+     * @throws Exception 异常
+     */
+    void start(RequestHandlerRegistry requestHandlerRegistry, SocketAddress address) throws Exception;
 
     void stop();
+
+    /**
+     * @return 执行同步请求的业务线程池，没有时返回 null；本进程中的调用（{@link LocalTransport}）也交给它执行
+     */
+    default Executor getWorkerExecutor() {
+        return null;
+    }
+
+    /**
+     * @return 服务端的准入控制，没有时返回 null
+     */
+    default AdmissionController getAdmissionController() {
+        return null;
+    }
 }
@@ -24,6 +24,10 @@ public enum Code {
 
     SUCCESS(0, "SUCCESS"),
     NO_PROVIDER(-2, "NO_PROVIDER"),
+    /**
+     * 服务端过载，请求没有被处理，客户端可以换一个提供者重试
+     */
+    OVERLOADED(-3, "OVERLOADED"),
     UNKNOWN_ERROR(-1, "UNKNOWN_ERROR");
 
     private static Map<Integer, Code> codes = new HashMap<>();
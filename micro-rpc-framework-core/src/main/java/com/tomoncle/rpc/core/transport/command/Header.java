@@ -24,6 +24,11 @@ import lombok.NoArgsConstructor;
  */
 @Data
 public class Header {
+    /**
+     * 从这个版本开始，请求头中带有超时时间
+     */
+    public static final int VERSION_DEADLINE = 2;
+
     /**
      * 用于唯一标识一个请求命令
      */
@@ -36,6 +41,10 @@ public class Header {
      * 标识这条命令的类型
      */
     private int type;
+    /**
+     * 请求剩余的超时时间，单位毫秒，0 表示没有截止时间，只在请求头中传输
+     */
+    private int timeoutMillis;
 
     public static class Builder{
         private Header header= new Header();
@@ -55,6 +64,11 @@ public class Header {
             return this;
         }
 
+        public Builder setTimeoutMillis(int timeoutMillis) {
+            header.setTimeoutMillis(timeoutMillis);
+            return this;
+        }
+
         public Header build(){
             return header;
         }
@@ -64,7 +78,8 @@ public class Header {
     public int length() {
         return Integer.BYTES
                 + Integer.BYTES
-                + Integer.BYTES;
+                + Integer.BYTES
+                + (version >= VERSION_DEADLINE ? Integer.BYTES : 0);
     }
 
 }
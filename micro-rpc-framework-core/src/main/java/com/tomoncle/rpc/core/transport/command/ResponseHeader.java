@@ -79,7 +79,7 @@ public class ResponseHeader extends Header {
                 + Integer.BYTES
                 + Integer.BYTES
                 + Integer.BYTES
-                + (error == null ? 0 : error.getBytes(StandardCharsets.UTF_8).length);
+                + (error == null || error.isEmpty() ? 0 : error.getBytes(StandardCharsets.UTF_8).length);
     }
 
 
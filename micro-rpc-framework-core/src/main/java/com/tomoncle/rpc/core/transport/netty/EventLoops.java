@@ -0,0 +1,108 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.core.transport.netty;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Function;
+
+/**
+ * 创建客户端和服务端的 IO 线程组（EventLoopGroup）
+ * <p>
+ * Netty 默认每个 EventLoopGroup 有 CPU 核数 * 2 个线程，同时是客户端和服务端的进程原来有三个这样的线程组，
+ * IO 线程数是核数的 6 倍，线程切换的开销很大。IO 线程只做编解码，业务在线程池中执行，每个核一个 IO 线程就够了，
+ * 线程数可以用系统属性设置：
+ * <ul>
+ * <li>micro.rpc.server.ioThreads：服务端的 IO 线程数，默认 CPU 核数</li>
+ * <li>micro.rpc.client.ioThreads：客户端的 IO 线程数，默认 CPU 核数</li>
+ * <li>micro.rpc.io.shared：设置为 true 时，同一个进程中的客户端和服务端（包括服务端接受连接）共用一个 IO 线程组，默认 false</li>
+ * <li>micro.rpc.io.threads：共用的 IO 线程组的线程数，默认 CPU 核数</li>
+ * </ul>
+ * 线程按用途命名（rpc-server-accept、rpc-server-io、rpc-client-io、rpc-io），方便按名字绑定 CPU；
+ * 需要自己创建线程（例如设置亲和性）时，在启动服务端和客户端之前调用 {@link #setThreadFactory(Function)}。
+ *
+ * @author tomoncle
+ */
+public final class EventLoops {
+    private static final Logger logger = LoggerFactory.getLogger(EventLoops.class);
+    private static final int CORES = Runtime.getRuntime().availableProcessors();
+    static final int SERVER_IO_THREADS = Integer.getInteger("micro.rpc.server.ioThreads", CORES);
+    static final int CLIENT_IO_THREADS = Integer.getInteger("micro.rpc.client.ioThreads", CORES);
+    static final boolean SHARED = Boolean.getBoolean("micro.rpc.io.shared");
+    private static final int SHARED_IO_THREADS = Integer.getInteger("micro.rpc.io.threads", CORES);
+    private static volatile Function<String, ThreadFactory> threadFactory = name -> new DefaultThreadFactory(name);
+    private static EventLoopGroup shared;
+    private static int sharedReferences;
+
+    private EventLoops() {
+    }
+
+    /**
+     * 设置创建 IO 线程的工厂，只影响之后创建的线程组
+     *
+     * @param threadFactory 线程组的名称 -> 创建线程的工厂
+     */
+    public static void setThreadFactory(Function<String, ThreadFactory> threadFactory) {
+        EventLoops.threadFactory = threadFactory;
+    }
+
+    /**
+     * @param name    线程组的名称，也是线程名称的前缀
+     * @param threads 线程数，0 表示使用 Netty 的默认值（CPU 核数 * 2）
+     * @return 新的线程组，支持 epoll 时使用 epoll
+     */
+    static EventLoopGroup newGroup(String name, int threads) {
+        ThreadFactory factory = threadFactory.apply(name);
+        if (Epoll.isAvailable()) {
+            return new EpollEventLoopGroup(threads, factory);
+        } else {
+            return new NioEventLoopGroup(threads, factory);
+        }
+    }
+
+    /**
+     * 获取客户端和服务端共用的线程组，用完后调用 {@link #release(EventLoopGroup)}
+     */
+    static synchronized EventLoopGroup acquireShared() {
+        if (null == shared) {
+            shared = newGroup("rpc-io", SHARED_IO_THREADS);
+            logger.info("Create shared io event loop group, threads: {}", SHARED_IO_THREADS);
+        }
+        sharedReferences++;
+        return shared;
+    }
+
+    /**
+     * 释放线程组：共用的线程组在最后一个使用者释放后关闭，其他的线程组直接关闭
+     */
+    static void release(EventLoopGroup group) {
+        synchronized (EventLoops.class) {
+            if (group == shared) {
+                if (--sharedReferences == 0) {
+                    shared = null;
+                    group.shutdownGracefully();
+                }
+                return;
+            }
+        }
+        group.shutdownGracefully();
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.core.transport.netty;
+
+import com.tomoncle.rpc.core.client.RequestIdSupport;
+import com.tomoncle.rpc.core.client.ServiceTypes;
+import com.tomoncle.rpc.core.metrics.Metrics;
+import com.tomoncle.rpc.core.transport.command.Command;
+import com.tomoncle.rpc.core.transport.command.Header;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.timeout.IdleState;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.handler.timeout.IdleStateHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 客户端的心跳处理
+ * <p>
+ * 连接上 {@link #INTERVAL_MILLIS} 毫秒没有读写时发送一个心跳请求（类型为 {@link ServiceTypes#TYPE_HEARTBEAT}，没有请求体），
+ * 服务端在 IO 线程中直接返回心跳响应。{@link #TIMEOUT_MILLIS} 毫秒没有收到任何数据时认为对端已经失效
+ * （例如对端主机掉电后留下的半开连接，TCP 本身发现不了），关闭连接：连接上的在途请求立即失败，
+ * 之后的调用重新建立连接，不用等到每个请求都超时。
+ * <p>
+ * 心跳间隔和超时时间用系统属性 micro.rpc.heartbeat.intervalMillis（默认 5000）和
+ * micro.rpc.heartbeat.timeoutMillis（默认 15000）设置，间隔设置为 0 时关闭心跳。
+ *
+ * @author tomoncle
+ */
+public class HeartbeatHandler extends ChannelInboundHandlerAdapter {
+    private static final Logger logger = LoggerFactory.getLogger(HeartbeatHandler.class);
+    static final long INTERVAL_MILLIS = Long.getLong("micro.rpc.heartbeat.intervalMillis", 5000L);
+    static final long TIMEOUT_MILLIS = Long.getLong("micro.rpc.heartbeat.timeoutMillis", 15000L);
+    private static final byte[] EMPTY = new byte[0];
+    private static final LongAdder sent = Metrics.counter("rpc_client_heartbeats_total");
+    private static final LongAdder timeouts = Metrics.counter("rpc_client_heartbeat_timeouts_total");
+
+    static boolean isEnabled() {
+        return INTERVAL_MILLIS > 0;
+    }
+
+    /**
+     * @return 检测读写空闲的处理器，需要放在 {@link HeartbeatHandler} 之前
+     */
+    static IdleStateHandler newIdleStateHandler() {
+        return new IdleStateHandler(TIMEOUT_MILLIS, 0L, INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        // 心跳响应只用来刷新读空闲的时间，不再往后传递
+        if (msg instanceof Command && ((Command) msg).getHeader().getType() == ServiceTypes.TYPE_HEARTBEAT) {
+            return;
+        }
+        super.channelRead(ctx, msg);
+    }
+
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (!(evt instanceof IdleStateEvent)) {
+            super.userEventTriggered(ctx, evt);
+            return;
+        }
+        if (((IdleStateEvent) evt).state() == IdleState.READER_IDLE) {
+            timeouts.increment();
+            logger.warn("{} 毫秒没有收到服务端的数据，关闭连接: {}", TIMEOUT_MILLIS, ctx.channel());
+            ctx.close();
+        } else if (((IdleStateEvent) evt).state() == IdleState.ALL_IDLE) {
+            sent.increment();
+            Header header = new Header.Builder()
+                    .setType(ServiceTypes.TYPE_HEARTBEAT)
+                    .setVersion(1)
+                    .setRequestId(RequestIdSupport.next())
+                    .build();
+            ctx.writeAndFlush(new Command(header, EMPTY)).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+        }
+    }
+}
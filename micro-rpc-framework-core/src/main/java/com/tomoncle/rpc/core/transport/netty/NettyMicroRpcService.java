@@ -14,25 +14,60 @@
 package com.tomoncle.rpc.core.transport.netty;
 
 
+import com.tomoncle.rpc.api.MicroNameService;
 import com.tomoncle.rpc.api.MicroRpcService;
 import com.tomoncle.rpc.api.spi.ServiceLoadSupport;
 import com.tomoncle.rpc.core.client.StubFactory;
+import com.tomoncle.rpc.core.client.balance.LoadBalancedTransport;
+import com.tomoncle.rpc.core.metrics.Metrics;
 import com.tomoncle.rpc.core.server.ServiceProviderRegistry;
 import com.tomoncle.rpc.core.transport.*;
+import com.tomoncle.rpc.core.transport.command.Command;
+import com.tomoncle.rpc.core.transport.shm.ShmAddress;
+import com.tomoncle.rpc.core.transport.shm.ShmTransportClient;
+import com.tomoncle.rpc.core.transport.shm.ShmTransportServer;
+import io.netty.channel.unix.DomainSocketAddress;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.net.SocketAddress;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.TimeoutException;
-import java.util.function.Function;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * RPC框架对外提供的服务接口Netty实现
+ * <p>
+ * 客户端访问的服务端就在本进程中时，使用 {@link LocalTransport} 直接调用，不经过网络。
+ * <p>
+ * 服务地址有三种：rpc://host:port 使用 TCP；unix:///path 使用 Unix domain socket，
+ * 适合客户端和服务端部署在同一台机器上（例如 sidecar）；shm:///path 使用共享内存（见 {@link ShmTransportServer}），
+ * 适合同一台机器上对延迟要求极高的调用。
+ * 设置系统属性 micro.rpc.server.unixSocket（socket 文件的路径）后，服务端监听这个 Unix domain socket，
+ * 注册的服务地址为 unix:///path；设置 micro.rpc.server.shm（连接文件所在的目录）后，
+ * 服务端通过共享内存接受连接，注册的服务地址为 shm:///path。
+ * <p>
+ * 每个服务地址复用一个 Transport，连接异步建立，不同地址的连接并行建立、互不阻塞；
+ * 连接断开（对端关闭、心跳超时）后从 clientMap 中移除，
+ * 下一次调用时透明地重新建立连接；建立连接失败后 micro.rpc.client.reconnectBackoffMillis 毫秒（默认 1000）内
+ * 对这个地址的调用直接失败，不会每个调用都等待一次连接超时。
  *
  * @author tomoncle
  */
@@ -40,35 +75,241 @@ public class NettyMicroRpcService implements MicroRpcService {
     private static final Logger logger = LoggerFactory.getLogger(NettyMicroRpcService.class);
     private final String host = "localhost";
     private final int port = 9999;
-    private final URI uri = URI.create("rpc://" + host + ":" + port);
+    private static final String UNIX_SOCKET = System.getProperty("micro.rpc.server.unixSocket");
+    private static final String SHM_DIRECTORY = System.getProperty("micro.rpc.server.shm");
+    private static final String SCHEME_UNIX = "unix";
+    private static final String SCHEME_SHM = "shm";
+    private static final int WARM_UP_THREADS = 16;
+    private static final long CONNECT_TIMEOUT_MILLIS = 30000L;
+    private static final long RECONNECT_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(
+            Long.getLong("micro.rpc.client.reconnectBackoffMillis", 1000L));
+    private final URI uri = serverUri();
     private TransportServer server = null;
-    private TransportClient client = ServiceLoadSupport.load(TransportClient.class);
-    private final Map<URI, Transport> clientMap = new ConcurrentHashMap<>();
+    // 只提供服务、不调用远程服务的进程不创建客户端（和它的 EventLoopGroup）
+    private TransportClient client = null;
+    private ShmTransportClient shmClient = null;
+    private final Map<URI, CompletableFuture<Transport>> clientMap = new ConcurrentHashMap<>();
+    // 建立连接失败的地址，在这个时间（System.nanoTime()）之前不再尝试连接
+    private final Map<URI, Long> reconnectAfter = new ConcurrentHashMap<>();
     private final StubFactory stubFactory = ServiceLoadSupport.load(StubFactory.class);
     private final ServiceProviderRegistry serviceProviderRegistry = ServiceLoadSupport.load(ServiceProviderRegistry.class);
 
+    public NettyMicroRpcService() {
+        // 按配置开启 JMX、Prometheus 等指标导出
+        Metrics.startExporters();
+    }
+
     @Override
     public <T> T getRemoteService(URI uri, Class<T> serviceClass) {
         logger.info("客户端获取远程服务的引用, URI: {}, Service:{}", uri.toASCIIString(), serviceClass.getName());
-        // 如果transport不存在，就创建一个 transport， 并加入到clientMap
-        Transport transport = clientMap.computeIfAbsent(uri, new Function<URI, Transport>() {
-            @Override
-            public Transport apply(URI uri1) {
-                return NettyMicroRpcService.this.createTransport(uri1);
+        Transport transport = getTransport(uri);
+        if (transport instanceof LocalTransport) {
+            return stubFactory.createStub(transport, serviceClass);
+        }
+        // 返回一个 stub 实例，每次调用时从 clientMap 中获取 transport，连接断开后自动使用新的连接
+        return stubFactory.createStub(request -> send(uri, request), serviceClass);
+    }
+
+    /**
+     * 并行地查询所有服务的提供者、生成 stub，再并行地和所有提供者建立连接；
+     * 个别提供者连接失败只记录日志，调用时负载均衡会避开它们
+     */
+    @Override
+    public Map<Class<?>, Object> warmUp(MicroNameService nameService, Collection<Class<?>> serviceClasses) {
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(WARM_UP_THREADS, new DefaultThreadFactory("rpc-warm-up", true));
+        try {
+            Map<Class<?>, CompletableFuture<Object>> stubs = new LinkedHashMap<>();
+            List<CompletableFuture<List<URI>>> lookups = new ArrayList<>();
+            for (Class<?> serviceClass : serviceClasses) {
+                stubs.put(serviceClass, CompletableFuture.supplyAsync(() -> getRemoteService(nameService, serviceClass), executor));
+                lookups.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return nameService.lookupAll(serviceClass.getCanonicalName());
+                    } catch (IOException e) {
+                        throw new IllegalStateException("Lookup providers failed: " + serviceClass.getCanonicalName(), e);
+                    }
+                }, executor));
             }
-        });
-        // 返回一个 stub 实例
+            Set<URI> providers = new LinkedHashSet<>();
+            for (CompletableFuture<List<URI>> lookup : lookups) {
+                providers.addAll(lookup.join());
+            }
+            AtomicInteger failures = new AtomicInteger();
+            List<CompletableFuture<Void>> connects = new ArrayList<>();
+            for (URI provider : providers) {
+                connects.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        getTransport(provider);
+                    } catch (RuntimeException e) {
+                        failures.incrementAndGet();
+                        logger.warn("预热时连接服务提供者失败: {}", provider, e);
+                    }
+                }, executor));
+            }
+            CompletableFuture.allOf(connects.toArray(new CompletableFuture[0])).join();
+            Map<Class<?>, Object> services = new LinkedHashMap<>();
+            for (Map.Entry<Class<?>, CompletableFuture<Object>> stub : stubs.entrySet()) {
+                services.put(stub.getKey(), stub.getValue().join());
+            }
+            logger.info("预热完成: {} 个服务, {} 个服务提供者, 连接失败 {} 个, 用时 {} ms", services.size(), providers.size(),
+                    failures.get(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            return services;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * 通过 {@link #getTransportAsync} 发送请求，连接还没有建立好时等连接建立后再发送
+     */
+    private CompletableFuture<Command> send(URI uri, Command request) {
+        CompletableFuture<Transport> transport = getTransportAsync(uri);
+        if (transport.isDone() && !transport.isCompletedExceptionally()) {
+            return transport.join().send(request);
+        }
+        // 发送可能因为背压阻塞，不在完成连接的 IO 线程中发送
+        return transport.thenComposeAsync(t -> t.send(request));
+    }
+
+    /**
+     * @return 负载均衡中一个提供者的 Transport，每次发送时获取这个提供者当前的连接
+     */
+    private Transport endpoint(URI uri) {
+        return request -> send(uri, request);
+    }
+
+    @Override
+    public <T> T getRemoteService(MicroNameService nameService, Class<T> serviceClass) {
+        String serviceName = serviceClass.getCanonicalName();
+        logger.info("客户端获取远程服务的引用, Service:{}, 在所有提供者之间负载均衡", serviceName);
+        // stub 持有服务的所有提供者，每次调用时选择一个提供者的 transport，提供者的变化由注册中心推送
+        LoadBalancedTransport transport = new LoadBalancedTransport(serviceName, this::endpoint);
+        try {
+            nameService.subscribe(serviceName, transport);
+        } catch (IOException e) {
+            logger.warn("订阅服务失败，改为定期查询注册中心: {}", serviceName, e);
+            transport = new LoadBalancedTransport(serviceName, () -> nameService.lookupAll(serviceName), this::endpoint);
+        }
         return stubFactory.createStub(transport, serviceClass);
     }
 
-    private Transport createTransport(URI uri) {
+    /**
+     * 同步获取 Transport，等待连接建立
+     */
+    private Transport getTransport(URI uri) {
+        try {
+            return getTransportAsync(uri).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * 获取服务地址的 Transport
+     * <p>
+     * clientMap 中保存的是每个地址建立连接的 Future，同一个地址同时只有一个线程建立连接，其他线程等待同一个 Future；
+     * 建立连接时不持有任何锁，不同地址的连接并行建立，一个连不上的地址不影响其他地址。
+     * 连接断开后重新建立连接，连接失败后的 {@link #RECONNECT_BACKOFF_NANOS} 内直接返回失败的 Future。
+     */
+    private CompletableFuture<Transport> getTransportAsync(URI uri) {
+        CompletableFuture<Transport> local = LocalTransport.connect(uri);
+        if (null != local) {
+            // 服务端就在本进程中，不经过网络，直接交给服务端的业务线程池处理
+            return local;
+        }
+        while (true) {
+            CompletableFuture<Transport> current = clientMap.get(uri);
+            if (null != current && isUsable(uri, current)) {
+                return current;
+            }
+            CompletableFuture<Transport> created = new CompletableFuture<>();
+            // 如果transport不存在或者连接已经断开，就创建一个 transport， 并加入到clientMap；
+            // 其他线程抢先替换时使用它创建的 transport
+            if (null == current ? null == clientMap.putIfAbsent(uri, created) : clientMap.replace(uri, current, created)) {
+                connect(uri, created);
+                return created;
+            }
+        }
+    }
+
+    private boolean isUsable(URI uri, CompletableFuture<Transport> transport) {
+        if (!transport.isDone()) {
+            // 正在建立连接
+            return true;
+        }
+        if (transport.isCompletedExceptionally()) {
+            Long after = reconnectAfter.get(uri);
+            return null != after && System.nanoTime() - after < 0;
+        }
+        return transport.join().isAvailable();
+    }
+
+    private void connect(URI uri, CompletableFuture<Transport> created) {
         logger.info("客户端创建Transport, URI: {}", uri.toASCIIString());
+        CompletableFuture<Transport> connecting;
         try {
-            return client.createTransport(new InetSocketAddress(uri.getHost(), uri.getPort()),30000L);
-        } catch (InterruptedException | TimeoutException e) {
-            throw new RuntimeException(e);
+            connecting = client(uri).createTransportAsync(socketAddress(uri), CONNECT_TIMEOUT_MILLIS);
+        } catch (Throwable t) {
+            connecting = new CompletableFuture<>();
+            connecting.completeExceptionally(t);
         }
+        connecting.whenComplete((transport, throwable) -> {
+            if (null != throwable) {
+                logger.warn("客户端创建Transport失败, URI: {}, {}", uri.toASCIIString(), throwable.toString());
+                reconnectAfter.put(uri, System.nanoTime() + RECONNECT_BACKOFF_NANOS);
+                created.completeExceptionally(throwable);
+                return;
+            }
+            reconnectAfter.remove(uri);
+            if (transport instanceof NettyTransport) {
+                // 连接断开后立即从 clientMap 中移除
+                ((NettyTransport) transport).closeFuture().addListener(future -> {
+                    if (clientMap.remove(uri, created)) {
+                        logger.info("连接已断开，移除Transport, URI: {}", uri.toASCIIString());
+                    }
+                });
+            }
+            created.complete(transport);
+        });
     }
+
+    private synchronized TransportClient client(URI uri) {
+        if (!SCHEME_SHM.equals(uri.getScheme())) {
+            if (null == client) {
+                client = ServiceLoadSupport.load(TransportClient.class);
+            }
+            return client;
+        }
+        if (null == shmClient) {
+            shmClient = new ShmTransportClient();
+        }
+        return shmClient;
+    }
+
+    private static SocketAddress socketAddress(URI uri) {
+        if (SCHEME_UNIX.equals(uri.getScheme())) {
+            return new DomainSocketAddress(uri.getPath());
+        }
+        if (SCHEME_SHM.equals(uri.getScheme())) {
+            return new ShmAddress(uri.getPath());
+        }
+        return new InetSocketAddress(uri.getHost(), uri.getPort());
+    }
+
+    private URI serverUri() {
+        if (null != SHM_DIRECTORY) {
+            return URI.create(SCHEME_SHM + "://" + new File(SHM_DIRECTORY).getAbsolutePath());
+        }
+        if (null != UNIX_SOCKET) {
+            return URI.create(SCHEME_UNIX + "://" + new File(UNIX_SOCKET).getAbsolutePath());
+        }
+        return URI.create("rpc://" + host + ":" + port);
+    }
+
     @Override
     public synchronized <T> URI addServiceProvider(T service, Class<T> serviceClass) {
         logger.info("服务端注册服务的实例,Service-> {}:{} ；并返回注册的服务地址, URI: {}",
@@ -82,14 +323,17 @@ public class NettyMicroRpcService implements MicroRpcService {
     @Override
     public synchronized Closeable startServer() throws Exception {
         if (null == server) {
-            logger.info("启动NettyTransportServer: [::{}]",port);
-            server = ServiceLoadSupport.load(TransportServer.class);
-            server.start(RequestHandlerRegistry.getInstance(), port);
+            server = null == SHM_DIRECTORY ? ServiceLoadSupport.load(TransportServer.class) : new ShmTransportServer();
+            logger.info("启动{}: {}", server.getClass().getSimpleName(), uri);
+            server.start(RequestHandlerRegistry.getInstance(),
+                    "rpc".equals(uri.getScheme()) ? new InetSocketAddress(port) : socketAddress(uri));
+            LocalTransport.serve(uri, RequestHandlerRegistry.getInstance(), server);
         }
         return new Closeable() {
             @Override
             public void close() throws IOException {
                 if (null != server) {
+                    LocalTransport.unserve(uri);
                     server.stop();
                 }
             }
@@ -100,8 +344,16 @@ public class NettyMicroRpcService implements MicroRpcService {
     public void close() {
         logger.info("关闭NettyTransportServer！");
         if(null != server) {
+            LocalTransport.unserve(uri);
             server.stop();
         }
-        client.close();
+        synchronized (this) {
+            if (null != client) {
+                client.close();
+            }
+            if (null != shmClient) {
+                shmClient.close();
+            }
+        }
     }
 }
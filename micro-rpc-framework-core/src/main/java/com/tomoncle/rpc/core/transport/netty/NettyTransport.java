@@ -8,34 +8,55 @@ import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 
+import java.io.IOException;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * netty 实现 rpc 通信
+ * <p>
+ * 连接关闭（对端关闭、心跳超时等）时，这个连接上所有在途的请求立即失败，不再等待超时。
+ * 取消返回的 Future 会删除在途的请求，之后收到的响应直接丢弃。
  * @author tomoncle
  */
 public class NettyTransport implements Transport {
     private final Channel channel;
     private final InProcessRequests inProcessRequests;
+    // 这个连接上在途请求的 ID
+    private final Set<Integer> pendingRequests = ConcurrentHashMap.newKeySet();
 
     NettyTransport(Channel channel, InProcessRequests inProcessRequests) {
         this.channel = channel;
         this.inProcessRequests = inProcessRequests;
+        channel.closeFuture().addListener(future -> failPendingRequests());
     }
 
     @Override
     public  CompletableFuture<Command> send(Command request) {
         // 构建返回值
         CompletableFuture<Command> completableFuture = new CompletableFuture<>();
+        int requestId = request.getHeader().getRequestId();
         try {
             // 将处理中的请求放入inProcessRequests
-            inProcessRequests.put(new ResponseFuture(request.getHeader().getRequestId(), completableFuture));
-            // 发送命令
+            inProcessRequests.put(new ResponseFuture(requestId, completableFuture,
+                    TimeUnit.MILLISECONDS.toNanos(request.getHeader().getTimeoutMillis())));
+            pendingRequests.add(requestId);
+            completableFuture.whenComplete((response, throwable) -> {
+                pendingRequests.remove(requestId);
+                if (completableFuture.isCancelled()) {
+                    // 调用方取消了请求（例如对冲请求中较慢的那个），不再等待响应，归还在途请求的许可
+                    inProcessRequests.remove(requestId);
+                }
+            });
+            // 发送命令，连接已经关闭时发送会失败
             channel.writeAndFlush(request).addListener(new ChannelFutureListener() {
                 @Override
                 public void operationComplete(ChannelFuture channelFuture) throws Exception {
                     // 处理发送失败的情况
                     if (!channelFuture.isSuccess()) {
+                        inProcessRequests.remove(requestId);
                         completableFuture.completeExceptionally(channelFuture.cause());
                         channel.close();
                     }
@@ -43,10 +64,39 @@ public class NettyTransport implements Transport {
             });
         } catch (Throwable t) {
             // 处理发送异常
-            inProcessRequests.remove(request.getHeader().getRequestId());
+            inProcessRequests.remove(requestId);
             completableFuture.completeExceptionally(t);
         }
         return completableFuture;
     }
 
+    @Override
+    public boolean isAvailable() {
+        return channel.isActive();
+    }
+
+    @Override
+    public void close() {
+        channel.close();
+    }
+
+    /**
+     * @return 连接关闭时完成的 Future
+     */
+    ChannelFuture closeFuture() {
+        return channel.closeFuture();
+    }
+
+    private void failPendingRequests() {
+        if (pendingRequests.isEmpty()) {
+            return;
+        }
+        IOException cause = new IOException("Connection closed: " + channel.remoteAddress());
+        for (Integer requestId : pendingRequests) {
+            ResponseFuture future = inProcessRequests.remove(requestId);
+            if (null != future) {
+                future.getFuture().completeExceptionally(cause);
+            }
+        }
+    }
 }
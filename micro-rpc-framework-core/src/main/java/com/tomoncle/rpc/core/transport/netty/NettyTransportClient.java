@@ -23,20 +23,27 @@ import io.netty.bootstrap.Bootstrap;
 import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.*;
 import io.netty.channel.epoll.Epoll;
-import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollDomainSocketChannel;
 import io.netty.channel.epoll.EpollSocketChannel;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.channel.unix.DomainSocketAddress;
+import io.netty.util.concurrent.GlobalEventExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.SocketAddress;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeoutException;
 
 /**
  * netty客户端实现
+ * <p>
+ * 连接的地址是 {@link DomainSocketAddress} 时使用 Unix domain socket（需要 epoll），否则使用 TCP。
+ * 空闲的连接定期发送心跳，及时发现失效的连接（见 {@link HeartbeatHandler}）。
+ * IO 线程数和是否与服务端共用 IO 线程见 {@link EventLoops}。
  *
  * @author tomoncle
  */
@@ -44,17 +51,20 @@ public class NettyTransportClient implements TransportClient {
     private static final Logger logger = LoggerFactory.getLogger(NettyTransportClient.class);
     private EventLoopGroup ioEventGroup;
     private Bootstrap bootstrap;
+    private Bootstrap domainSocketBootstrap;
     private final InProcessRequests inProcessRequests;
-    private List<Channel> channels = new LinkedList<>();
+    // 关闭的连接会自动从 ChannelGroup 中移除
+    private final ChannelGroup channels = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
 
     public NettyTransportClient() {
         logger.info("init NettyTransportClient");
         inProcessRequests = new InProcessRequests();
     }
 
-    private Bootstrap newBootstrap(ChannelHandler channelHandler, EventLoopGroup ioEventGroup) {
+    private Bootstrap newBootstrap(ChannelHandler channelHandler, EventLoopGroup ioEventGroup,
+                                   Class<? extends Channel> channelClass) {
         Bootstrap bootstrap = new Bootstrap();
-        bootstrap.channel(Epoll.isAvailable() ? EpollSocketChannel.class : NioSocketChannel.class)
+        bootstrap.channel(channelClass)
                 .group(ioEventGroup)
                 .handler(channelHandler)
                 .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT);
@@ -63,64 +73,94 @@ public class NettyTransportClient implements TransportClient {
 
     @Override
     public Transport createTransport(SocketAddress address, long connectionTimeout) throws InterruptedException, TimeoutException {
-        return new NettyTransport(createChannel(address, connectionTimeout), inProcessRequests);
+        try {
+            return createTransportAsync(address, connectionTimeout).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TimeoutException) {
+                throw (TimeoutException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
     }
 
-    private synchronized Channel createChannel(SocketAddress address, long connectionTimeout) throws InterruptedException, TimeoutException {
+    /**
+     * 连接在 IO 线程中异步建立，不持有锁，不同地址的连接互不影响；
+     * 超时由 Netty 的 {@link ChannelOption#CONNECT_TIMEOUT_MILLIS} 控制，超时后关闭连接
+     */
+    @Override
+    public CompletableFuture<Transport> createTransportAsync(SocketAddress address, long connectionTimeout) {
         if (address == null) {
             throw new IllegalArgumentException("address must not be null!");
         }
+        CompletableFuture<Transport> future = new CompletableFuture<>();
+        bootstrap(address).clone()
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) Math.min(Integer.MAX_VALUE, connectionTimeout))
+                .connect(address)
+                .addListener((ChannelFutureListener) channelFuture -> {
+                    if (channelFuture.isSuccess()) {
+                        channels.add(channelFuture.channel());
+                        future.complete(new NettyTransport(channelFuture.channel(), inProcessRequests));
+                    } else if (channelFuture.cause() instanceof ConnectTimeoutException) {
+                        future.completeExceptionally(new TimeoutException("Connect to " + address + " timed out!"));
+                    } else {
+                        future.completeExceptionally(new IllegalStateException("Connect to " + address + " failed!",
+                                channelFuture.cause()));
+                    }
+                });
+        return future;
+    }
+
+    private synchronized Bootstrap bootstrap(SocketAddress address) {
         if (ioEventGroup == null) {
-            ioEventGroup = newIoEventGroup();
-        }
-        if (bootstrap == null){
-            ChannelHandler channelHandlerPipeline = newChannelHandlerPipeline();
-            bootstrap = newBootstrap(channelHandlerPipeline, ioEventGroup);
+            ioEventGroup = EventLoops.SHARED ? EventLoops.acquireShared()
+                    : EventLoops.newGroup("rpc-client-io", EventLoops.CLIENT_IO_THREADS);
         }
-            ChannelFuture channelFuture;
-            Channel channel;
-            channelFuture = bootstrap.connect(address);
-            if (!channelFuture.await(connectionTimeout)) {
-                throw new TimeoutException();
+        if (!(address instanceof DomainSocketAddress)) {
+            if (bootstrap == null) {
+                bootstrap = newBootstrap(newChannelHandlerPipeline(), ioEventGroup,
+                        Epoll.isAvailable() ? EpollSocketChannel.class : NioSocketChannel.class);
             }
-            channel = channelFuture.channel();
-            if (channel == null || !channel.isActive()) {
-                throw new IllegalStateException();
-            }
-            channels.add(channel);
-            return channel;
+            return bootstrap;
+        }
+        if (!Epoll.isAvailable()) {
+            throw new IllegalStateException("Unix domain socket requires epoll: " + address);
+        }
+        if (domainSocketBootstrap == null) {
+            // 和 TCP 共用 IO 线程，只是 Channel 类型不同
+            domainSocketBootstrap = newBootstrap(newChannelHandlerPipeline(), ioEventGroup, EpollDomainSocketChannel.class);
+        }
+        return domainSocketBootstrap;
     }
+
     private ChannelHandler newChannelHandlerPipeline() {
         return new ChannelInitializer<Channel>() {
             @Override
             protected void initChannel(Channel channel) {
                 channel.pipeline()
                         .addLast(new ResponseDecoder())
-                        .addLast(new RequestEncoder())
-                        .addLast(new ResponseInvocationHandler(inProcessRequests));
+                        .addLast(new RequestEncoder());
+                if (HeartbeatHandler.isEnabled()) {
+                    channel.pipeline()
+                            .addLast(HeartbeatHandler.newIdleStateHandler())
+                            .addLast(new HeartbeatHandler());
+                }
+                channel.pipeline().addLast(new ResponseInvocationHandler(inProcessRequests));
             }
         };
     }
 
-    private EventLoopGroup newIoEventGroup() {
-
-        if (Epoll.isAvailable()) {
-            return new EpollEventLoopGroup();
-        } else {
-            return new NioEventLoopGroup();
-        }
-    }
-
     @Override
     public void close() {
-        for (Channel channel : channels) {
-            if(null != channel) {
-                channel.close();
+        channels.close();
+        synchronized (this) {
+            if (ioEventGroup != null) {
+                EventLoops.release(ioEventGroup);
+                ioEventGroup = null;
             }
         }
-        if (ioEventGroup != null) {
-            ioEventGroup.shutdownGracefully();
-        }
         inProcessRequests.close();
     }
 }
@@ -13,6 +13,8 @@
  */
 package com.tomoncle.rpc.core.transport.netty;
 
+import com.tomoncle.rpc.core.metrics.Metrics;
+import com.tomoncle.rpc.core.transport.AdmissionController;
 import com.tomoncle.rpc.core.transport.RequestHandlerRegistry;
 import com.tomoncle.rpc.core.transport.TransportServer;
 import com.tomoncle.rpc.core.transport.netty.codec.request.RequestDecoder;
@@ -21,68 +23,164 @@ import io.netty.bootstrap.ServerBootstrap;
 import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.*;
 import io.netty.channel.epoll.Epoll;
-import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollServerDomainSocketChannel;
 import io.netty.channel.epoll.EpollServerSocketChannel;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.unix.DomainSocketAddress;
+import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
 /**
  * netty服务端实现
+ * <p>
+ * 同步的请求处理器在业务线程池中执行，线程数可以用系统属性 micro.rpc.server.workerThreads 设置，
+ * 队列长度由准入控制 {@link AdmissionController} 限制。
+ * <p>
+ * 监听的地址可以是 TCP 地址，也可以是 Unix domain socket 地址（{@link DomainSocketAddress}，需要 epoll），
+ * 同一台机器上的客户端通过 Unix domain socket 访问，不经过 TCP 协议栈。
+ * <p>
+ * 连接上 micro.rpc.server.idleTimeoutMillis 毫秒（默认 60000，0 表示不检查）没有收到任何数据时关闭连接，
+ * 清理客户端失效后留下的连接；正常的客户端空闲时会发送心跳（见 {@link HeartbeatHandler}），不会被关闭。
+ * <p>
+ * 一个监听 channel 只由一个线程接受连接，发布后大量客户端同时重连时这个线程会成为瓶颈。
+ * 使用 epoll 监听 TCP 地址时，可以用系统属性 micro.rpc.server.acceptors 设置接受连接的线程数（默认 1），
+ * 大于 1 时用 SO_REUSEPORT 在同一个端口上绑定多个监听 channel，每个线程一个，由内核把新连接分散到这些 channel 上。
+ * 不支持 epoll 或者监听 Unix domain socket 时只使用一个线程。
+ * <p>
+ * IO 线程数和是否与客户端共用 IO 线程见 {@link EventLoops}。
  *
  * @author tomoncle
  */
 public class NettyTransportServer implements TransportServer {
     private static final Logger logger = LoggerFactory.getLogger(NettyTransportServer.class);
-    private int port;
+    private static final int WORKER_THREADS = Integer.getInteger("micro.rpc.server.workerThreads",
+            Runtime.getRuntime().availableProcessors() * 2);
+    private static final long IDLE_TIMEOUT_MILLIS = Long.getLong("micro.rpc.server.idleTimeoutMillis", 60000L);
+    private static final int ACCEPTORS = Math.max(1, Integer.getInteger("micro.rpc.server.acceptors", 1));
+    private SocketAddress address;
     private EventLoopGroup acceptEventGroup;
     private EventLoopGroup ioEventGroup;
-    private Channel channel;
+    private final List<Channel> channels = new ArrayList<>();
     private RequestHandlerRegistry requestHandlerRegistry;
+    private final AdmissionController admissionController = new AdmissionController();
+    private ExecutorService workerExecutor;
 
     @Override
-    public void start(RequestHandlerRegistry requestHandlerRegistry, int port) throws Exception {
-        this.port = port;
+    public void start(RequestHandlerRegistry requestHandlerRegistry, SocketAddress address) throws Exception {
+        if (address instanceof DomainSocketAddress) {
+            if (!Epoll.isAvailable()) {
+                throw new IllegalStateException("Unix domain socket requires epoll: " + address);
+            }
+            // 删除上次没有正常退出时留下的 socket 文件，否则无法绑定
+            File socketFile = new File(((DomainSocketAddress) address).path());
+            if (socketFile.exists() && !socketFile.delete()) {
+                throw new IllegalStateException("Cannot delete stale socket file: " + socketFile);
+            }
+        }
+        this.address = address;
         this.requestHandlerRegistry = requestHandlerRegistry;
-        EventLoopGroup acceptEventGroup = newEventLoopGroup();
-        EventLoopGroup ioEventGroup = newEventLoopGroup();
+        int acceptors = acceptors(address);
+        EventLoopGroup acceptEventGroup;
+        EventLoopGroup ioEventGroup;
+        if (EventLoops.SHARED) {
+            // 和客户端共用 IO 线程组，接受连接也在这个线程组中
+            ioEventGroup = EventLoops.acquireShared();
+            acceptEventGroup = ioEventGroup;
+        } else {
+            // 每个监听 channel 只使用一个线程，接受连接的线程数和监听 channel 的数量相同
+            acceptEventGroup = EventLoops.newGroup("rpc-server-accept", acceptors);
+            ioEventGroup = EventLoops.newGroup("rpc-server-io", EventLoops.SERVER_IO_THREADS);
+        }
+        ThreadPoolExecutor workerExecutor = new ThreadPoolExecutor(WORKER_THREADS, WORKER_THREADS, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), new DefaultThreadFactory("rpc-server-worker", true));
+        // 预先创建线程，第一批请求的排队时间不包含创建线程的时间
+        workerExecutor.prestartAllCoreThreads();
+        this.workerExecutor = workerExecutor;
+        registerMetrics(workerExecutor);
         ChannelHandler channelHandlerPipeline = newChannelHandlerPipeline();
         ServerBootstrap serverBootstrap = newBootstrap(channelHandlerPipeline, acceptEventGroup, ioEventGroup);
-        Channel channel = doBind(serverBootstrap);
-
+        if (acceptors > 1) {
+            serverBootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+        }
         this.acceptEventGroup = acceptEventGroup;
         this.ioEventGroup = ioEventGroup;
-        this.channel = channel;
-        logger.info("TransportServer start success! bind address ::"+port);
+        // 每次绑定从 acceptEventGroup 中依次取一个线程；端口为 0 时其余的 channel 绑定第一个 channel 实际使用的端口
+        Channel channel = doBind(serverBootstrap, address);
+        channels.add(channel);
+        for (int i = 1; i < acceptors; i++) {
+            channels.add(doBind(serverBootstrap, channel.localAddress()));
+        }
+        logger.info("TransportServer start success! bind address: {}, acceptors: {}", address, acceptors);
 
     }
 
     @Override
     public void stop() {
-        if (acceptEventGroup != null) {
-            acceptEventGroup.shutdownGracefully();
+        if (acceptEventGroup != null && acceptEventGroup != ioEventGroup) {
+            EventLoops.release(acceptEventGroup);
         }
         if (ioEventGroup != null) {
-            ioEventGroup.shutdownGracefully();
+            EventLoops.release(ioEventGroup);
         }
-        if (channel != null) {
+        acceptEventGroup = null;
+        ioEventGroup = null;
+        for (Channel channel : channels) {
             channel.close();
         }
+        if (workerExecutor != null) {
+            workerExecutor.shutdown();
+        }
+        if (address instanceof DomainSocketAddress) {
+            //noinspection ResultOfMethodCallIgnored
+            new File(((DomainSocketAddress) address).path()).delete();
+        }
     }
 
-    private Channel doBind(ServerBootstrap serverBootstrap) throws Exception {
-        return serverBootstrap.bind(port)
+    /**
+     * @return 准入控制，用于查看拒绝、丢弃的请求数等指标
+     */
+    @Override
+    public AdmissionController getAdmissionController() {
+        return admissionController;
+    }
+
+    @Override
+    public Executor getWorkerExecutor() {
+        return workerExecutor;
+    }
+
+    private void registerMetrics(ThreadPoolExecutor workerExecutor) {
+        admissionController.registerMetrics();
+        Metrics.gauge("rpc_server_worker_queue_size", () -> workerExecutor.getQueue().size());
+        Metrics.gauge("rpc_server_worker_active_threads", workerExecutor::getActiveCount);
+    }
+
+    private Channel doBind(ServerBootstrap serverBootstrap, SocketAddress address) throws Exception {
+        return serverBootstrap.bind(address)
                 .sync()
                 .channel();
     }
 
-    private EventLoopGroup newEventLoopGroup() {
-        if (Epoll.isAvailable()) {
-            return new EpollEventLoopGroup();
-        } else {
-            return new NioEventLoopGroup();
+    private static int acceptors(SocketAddress address) {
+        if (ACCEPTORS > 1 && !(Epoll.isAvailable() && address instanceof InetSocketAddress)) {
+            logger.warn("SO_REUSEPORT requires epoll and a TCP address, use 1 acceptor instead of {}: {}", ACCEPTORS, address);
+            return 1;
         }
+        return ACCEPTORS;
     }
 
     private ChannelHandler newChannelHandlerPipeline() {
@@ -91,16 +189,23 @@ public class NettyTransportServer implements TransportServer {
             protected void initChannel(Channel channel) {
                 channel.pipeline()
                         .addLast(new RequestDecoder())
-                        .addLast(new ResponseEncoder())
-                        .addLast(new RequestInvocationHandler(requestHandlerRegistry));
+                        .addLast(new ResponseEncoder());
+                if (IDLE_TIMEOUT_MILLIS > 0) {
+                    channel.pipeline().addLast(new IdleStateHandler(IDLE_TIMEOUT_MILLIS, 0L, 0L, TimeUnit.MILLISECONDS));
+                }
+                channel.pipeline().addLast(new RequestInvocationHandler(requestHandlerRegistry, admissionController, workerExecutor));
             }
         };
     }
 
     private ServerBootstrap newBootstrap(ChannelHandler channelHandler, EventLoopGroup acceptEventGroup, EventLoopGroup ioEventGroup) {
         ServerBootstrap serverBootstrap = new ServerBootstrap();
-        serverBootstrap.channel(Epoll.isAvailable() ? EpollServerSocketChannel.class : NioServerSocketChannel.class)
-                .group(acceptEventGroup, ioEventGroup)
+        if (address instanceof DomainSocketAddress) {
+            serverBootstrap.channel(EpollServerDomainSocketChannel.class);
+        } else {
+            serverBootstrap.channel(Epoll.isAvailable() ? EpollServerSocketChannel.class : NioServerSocketChannel.class);
+        }
+        serverBootstrap.group(acceptEventGroup, ioEventGroup)
                 .childHandler(channelHandler)
                 .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT);
         return serverBootstrap;
@@ -13,56 +13,180 @@
  */
 package com.tomoncle.rpc.core.transport.netty;
 
+import com.tomoncle.rpc.api.RpcContext;
+import com.tomoncle.rpc.core.client.ServiceTypes;
+import com.tomoncle.rpc.core.transport.AdmissionController;
+import com.tomoncle.rpc.core.transport.AsyncRequestHandler;
 import com.tomoncle.rpc.core.transport.RequestHandler;
 import com.tomoncle.rpc.core.transport.RequestHandlerRegistry;
+import com.tomoncle.rpc.core.transport.command.Code;
 import com.tomoncle.rpc.core.transport.command.Command;
+import com.tomoncle.rpc.core.transport.command.ResponseHeader;
+import com.tomoncle.rpc.core.transport.netty.codec.PooledCommand;
 import io.netty.channel.*;
+import io.netty.handler.timeout.IdleStateEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Netty 接收所有请求数据的处理类
+ * <p>
+ * 同步的请求处理器在业务线程池中执行，不阻塞 IO 线程；请求先经过准入控制，
+ * 服务端过载时直接返回 {@link Code#OVERLOADED}，不会反序列化请求。
+ * 异步的请求处理器（{@link AsyncRequestHandler}，例如长轮询）不占用业务线程，不经过准入控制。
+ * <p>
+ * 请求带有截止时间时，从队列中取出时已经过期的请求不再处理，处理完成时已经过期的响应也不再发送，
+ * 客户端已经放弃了这些请求；处理期间截止时间保存在 {@link RpcContext} 中，传递给下游调用。
+ * <p>
+ * 心跳请求在 IO 线程中直接响应，不经过准入控制和业务线程池；连接长时间没有收到数据（客户端已经失效）时关闭连接。
+ * <p>
+ * 请求处理完成（响应已经生成，或者请求被丢弃）后回收解码得到的请求命令（{@link PooledCommand}）。
  * @author tomoncle
  */
 @ChannelHandler.Sharable
 public class RequestInvocationHandler extends SimpleChannelInboundHandler<Command> {
     private static final Logger logger = LoggerFactory.getLogger(RequestInvocationHandler.class);
+    private static final byte[] EMPTY = new byte[0];
     private final RequestHandlerRegistry requestHandlerRegistry;
+    private final AdmissionController admissionController;
+    private final Executor executor;
 
-    public RequestInvocationHandler(RequestHandlerRegistry requestHandlerRegistry) {
+    public RequestInvocationHandler(RequestHandlerRegistry requestHandlerRegistry,
+                                    AdmissionController admissionController, Executor executor) {
         this.requestHandlerRegistry = requestHandlerRegistry;
+        this.admissionController = admissionController;
+        this.executor = executor;
     }
 
     @Override
     protected void channelRead0(ChannelHandlerContext channelHandlerContext, Command request) throws Exception {
-        logger.info("服务端收到客户端请求："+ request);
+        logger.debug("服务端收到客户端请求：{}", request);
+        if (request.getHeader().getType() == ServiceTypes.TYPE_HEARTBEAT) {
+            writeResponse(channelHandlerContext, new Command(
+                    new ResponseHeader.Builder().setHeader(request.getHeader()).build(), EMPTY));
+            recycle(request);
+            return;
+        }
         // 根据请求命令的 Header 中的请求类型 type，去 requestHandlerRegistry 中查找对应的请求处理器 RequestHandler
         RequestHandler handler = requestHandlerRegistry.get(request.getHeader().getType());
         if(null != handler) {
-            // 然后调用请求处理器去处理请求，最后把结果发送给客户端。
-            Command response = handler.handle(request);
-            if(null != response) {
-                channelHandlerContext.writeAndFlush(response).addListener(new ChannelFutureListener() {
-                    @Override
-                    public void operationComplete(ChannelFuture channelFuture) throws Exception {
-                        if (!channelFuture.isSuccess()) {
-                            logger.warn("Write response failed!", channelFuture.cause());
-                            channelHandlerContext.channel().close();
+            long enqueueNanos = System.nanoTime();
+            int timeoutMillis = request.getHeader().getTimeoutMillis();
+            long deadlineNanos = enqueueNanos + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            if (handler instanceof AsyncRequestHandler) {
+                // 异步处理的请求，处理完成后在回调中发送响应，不阻塞 IO 线程；
+                // 和心跳一样不经过准入控制：长轮询（例如注册中心的 WATCH）挂起期间只是在等待，不占用业务线程，
+                // 如果占用在途请求数，订阅者一多就会把上限占满，注册、续约、查询都被当成过载拒绝
+                ((AsyncRequestHandler) handler).handleAsync(request).whenComplete((response, throwable) -> {
+                    recycle(request);
+                    if (null != throwable) {
+                        logger.warn("Handle request failed!", throwable);
+                        channelHandlerContext.channel().close();
+                    } else if (timeoutMillis > 0 && expired(deadlineNanos)) {
+                        admissionController.recordExpired();
+                    } else {
+                        writeResponse(channelHandlerContext, response);
+                    }
+                });
+                return;
+            }
+            if (!admissionController.tryAcquire()) {
+                writeResponse(channelHandlerContext, overloaded(request));
+                recycle(request);
+                return;
+            }
+            // 然后在业务线程池中调用请求处理器去处理请求，最后把结果发送给客户端。
+            try {
+                executor.execute(() -> {
+                    try {
+                        if (timeoutMillis > 0 && expired(deadlineNanos)) {
+                            admissionController.recordExpired();
+                        } else if (admissionController.shouldDrop(System.nanoTime() - enqueueNanos)) {
+                            writeResponse(channelHandlerContext, overloaded(request));
+                        } else if (timeoutMillis > 0) {
+                            Command response;
+                            try (RpcContext.Scope ignored = RpcContext.withDeadline(deadlineNanos)) {
+                                response = handler.handle(request);
+                            }
+                            if (expired(deadlineNanos)) {
+                                admissionController.recordExpired();
+                            } else {
+                                writeResponse(channelHandlerContext, response);
+                            }
+                        } else {
+                            writeResponse(channelHandlerContext, handler.handle(request));
                         }
+                    } catch (Throwable t) {
+                        channelHandlerContext.fireExceptionCaught(t);
+                    } finally {
+                        admissionController.release();
+                        recycle(request);
                     }
                 });
-            } else {
-                logger.warn("Response is null!");
+            } catch (RejectedExecutionException e) {
+                admissionController.release();
+                writeResponse(channelHandlerContext, overloaded(request));
+                recycle(request);
             }
         } else {
             throw new Exception(String.format("No handler for request with type: %d!", request.getHeader().getType()));
         }
     }
 
+    private static boolean expired(long deadlineNanos) {
+        return System.nanoTime() - deadlineNanos >= 0;
+    }
+
+    private static Command overloaded(Command request) {
+        return new Command(new ResponseHeader.Builder().setHeader(request.getHeader())
+                .setCode(Code.OVERLOADED.getCode()).setError(Code.OVERLOADED.getMessage()).build(), EMPTY);
+    }
+
+    private static void recycle(Command request) {
+        if (request instanceof PooledCommand) {
+            ((PooledCommand) request).recycle();
+        }
+    }
+
+    private void writeResponse(ChannelHandlerContext channelHandlerContext, Command response) {
+        if(null != response) {
+            channelHandlerContext.writeAndFlush(response).addListener(new ChannelFutureListener() {
+                @Override
+                public void operationComplete(ChannelFuture channelFuture) throws Exception {
+                    if (!channelFuture.isSuccess()) {
+                        logger.warn("Write response failed!", channelFuture.cause());
+                        channelHandlerContext.channel().close();
+                    }
+                }
+            });
+        } else {
+            logger.warn("Response is null!");
+        }
+    }
+
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (evt instanceof IdleStateEvent) {
+            logger.info("连接空闲超时，关闭连接: {}", ctx.channel());
+            ctx.close();
+        } else {
+            super.userEventTriggered(ctx, evt);
+        }
+    }
+
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
-        logger.error("Exception: ", cause);
-        super.exceptionCaught(ctx, cause);
+        if (cause instanceof IOException) {
+            // 客户端异常退出、重连时连接被重置，大量客户端同时重连时不能每个连接都输出一次异常栈
+            logger.debug("Connection error: {}, {}", ctx.channel().remoteAddress(), cause.toString());
+        } else {
+            logger.error("Exception: ", cause);
+        }
         Channel channel = ctx.channel();
         if(channel.isActive()){
             ctx.close();
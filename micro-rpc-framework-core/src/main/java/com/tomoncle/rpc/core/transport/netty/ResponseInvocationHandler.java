@@ -38,7 +38,7 @@ public class ResponseInvocationHandler extends SimpleChannelInboundHandler<Comma
 
     @Override
     protected void channelRead0(ChannelHandlerContext channelHandlerContext, Command response) {
-        logger.info("客户端收到服务端响应："+ response);
+        logger.debug("客户端收到服务端响应：{}", response);
         ResponseFuture future = inProcessRequests.remove(response.getHeader().getRequestId());
         if(null != future) {
             future.getFuture().complete(response);
@@ -40,11 +40,23 @@ public abstract class CommandDecoder extends ByteToMessageDecoder {
             return;
         }
 
+        list.add(decodeCommand(channelHandlerContext, byteBuf, length));
+    }
+
+    /**
+     * 解码一个完整的命令
+     *
+     * @param length 命令的长度（不包括长度字段），byteBuf 中至少有这么多字节
+     */
+    protected Command decodeCommand(ChannelHandlerContext channelHandlerContext, ByteBuf byteBuf, int length) {
         Header header = decodeHeader(channelHandlerContext, byteBuf);
-        int payloadLength  = length - header.length();
+        return new Command(header, readPayload(byteBuf, length - header.length()));
+    }
+
+    protected static byte [] readPayload(ByteBuf byteBuf, int payloadLength) {
         byte [] payload = new byte[payloadLength];
         byteBuf.readBytes(payload);
-        list.add(new Command(header, payload));
+        return payload;
     }
 
     protected abstract Header decodeHeader(ChannelHandlerContext channelHandlerContext, ByteBuf byteBuf) ;
@@ -0,0 +1,64 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.core.transport.netty.codec;
+
+import com.tomoncle.rpc.core.transport.command.Command;
+import com.tomoncle.rpc.core.transport.command.Header;
+import io.netty.util.Recycler;
+
+/**
+ * 可以回收复用的命令，系统属性 micro.rpc.server.pooledRequests=true 时服务端解码请求时使用
+ * <p>
+ * 每个请求原来都要创建新的 Command 和 Header，这里用 Netty 的 {@link Recycler} 复用这两个对象，
+ * 解码器直接把请求头读到复用的 Header 中。请求处理完成（响应已经生成）后由
+ * RequestInvocationHandler 调用 {@link #recycle()} 放回对象池，
+ * 之后不能再使用这个命令和它的 Header：请求处理器（包括服务端拦截器）不能在处理完成后继续持有请求命令。
+ * <p>
+ * 对象池按线程划分，IO 线程中取出、业务线程中回收的对象会还给 IO 线程。
+ *
+ * @author tomoncle
+ */
+public final class PooledCommand extends Command {
+    private static final Recycler<PooledCommand> RECYCLER = new Recycler<PooledCommand>() {
+        @Override
+        protected PooledCommand newObject(Handle<PooledCommand> handle) {
+            return new PooledCommand(handle);
+        }
+    };
+    private final Recycler.Handle<PooledCommand> handle;
+
+    private PooledCommand(Recycler.Handle<PooledCommand> handle) {
+        this.handle = handle;
+        this.header = new Header();
+    }
+
+    /**
+     * @return 对象池中的命令，Header 中是上一次使用时的值，需要全部重新设置
+     */
+    public static PooledCommand newInstance() {
+        return RECYCLER.get();
+    }
+
+    /**
+     * 放回对象池，同一个命令只能回收一次
+     */
+    public void recycle() {
+        setPayload(null);
+        if (null == header || header.getClass() != Header.class) {
+            // Header 被替换过，不能确定还有没有人引用它，换一个新的
+            header = new Header();
+        }
+        handle.recycle(this);
+    }
+}
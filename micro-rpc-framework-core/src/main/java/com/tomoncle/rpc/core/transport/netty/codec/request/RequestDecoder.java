@@ -13,23 +13,46 @@
  */
 package com.tomoncle.rpc.core.transport.netty.codec.request;
 
+import com.tomoncle.rpc.core.transport.command.Command;
 import com.tomoncle.rpc.core.transport.command.Header;
 import com.tomoncle.rpc.core.transport.netty.codec.CommandDecoder;
+import com.tomoncle.rpc.core.transport.netty.codec.PooledCommand;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 
 /**
  * request 解码
+ * <p>
+ * 默认每个请求创建新的对象；系统属性 micro.rpc.server.pooledRequests=true 时解码得到的请求是 {@link PooledCommand}，
+ * 处理完成后回收复用。回收后请求处理器和服务端拦截器不能再持有请求命令，确认所有的处理器都遵守这个约定之后才能打开，
+ * 节省的分配很少（见 AllocationBenchmark），所以默认关闭。
  * @author tomoncle
  */
 public class RequestDecoder extends CommandDecoder {
+    private static final boolean POOLED = Boolean.getBoolean("micro.rpc.server.pooledRequests");
+
+    @Override
+    protected Command decodeCommand(ChannelHandlerContext channelHandlerContext, ByteBuf byteBuf, int length) {
+        if (!POOLED) {
+            return super.decodeCommand(channelHandlerContext, byteBuf, length);
+        }
+        PooledCommand command = PooledCommand.newInstance();
+        Header header = readHeader(byteBuf, command.getHeader());
+        command.setPayload(readPayload(byteBuf, length - header.length()));
+        return command;
+    }
 
     @Override
     protected Header decodeHeader(ChannelHandlerContext channelHandlerContext, ByteBuf byteBuf) {
-        return new Header.Builder()
-                .setType(byteBuf.readInt())
-                .setVersion(byteBuf.readInt())
-                .setRequestId(byteBuf.readInt())
-                .build();
+        return readHeader(byteBuf, new Header());
+    }
+
+    private static Header readHeader(ByteBuf byteBuf, Header header) {
+        header.setType(byteBuf.readInt());
+        header.setVersion(byteBuf.readInt());
+        header.setRequestId(byteBuf.readInt());
+        // 复用的 Header 中可能还有上一个请求的超时时间
+        header.setTimeoutMillis(header.getVersion() >= Header.VERSION_DEADLINE ? byteBuf.readInt() : 0);
+        return header;
     }
 }
@@ -26,5 +26,8 @@ public class RequestEncoder extends CommandEncoder {
     @Override
     protected void encodeHeader(ChannelHandlerContext channelHandlerContext, Header header, ByteBuf byteBuf) throws Exception {
         super.encodeHeader(channelHandlerContext, header, byteBuf);
+        if (header.getVersion() >= Header.VERSION_DEADLINE) {
+            byteBuf.writeInt(header.getTimeoutMillis());
+        }
     }
 }
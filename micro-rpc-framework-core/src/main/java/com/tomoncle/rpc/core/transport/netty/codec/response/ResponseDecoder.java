@@ -34,15 +34,14 @@ public class ResponseDecoder extends CommandDecoder {
         int requestId = byteBuf.readInt();
         int code = byteBuf.readInt();
         int errorLength = byteBuf.readInt();
-        byte [] errorBytes = new byte[errorLength];
-        byteBuf.readBytes(errorBytes);
-        String error = new String(errorBytes, StandardCharsets.UTF_8);
-        return new ResponseHeader.Builder()
-                .setRequestId(requestId)
-                .setVersion(version)
-                .setType(type)
-                .setCode(code)
-                .setError(error)
-                .build();
+        // 成功的响应没有错误信息，不用每次创建一个空字符串；有错误信息时直接从 ByteBuf 解码，不经过临时的 byte 数组
+        String error = errorLength == 0 ? "" : byteBuf.readCharSequence(errorLength, StandardCharsets.UTF_8).toString();
+        ResponseHeader header = new ResponseHeader();
+        header.setRequestId(requestId);
+        header.setVersion(version);
+        header.setType(type);
+        header.setCode(code);
+        header.setError(error);
+        return header;
     }
 }
@@ -35,7 +35,9 @@ public class ResponseEncoder extends CommandEncoder {
             int errorLength = header.length() - (Integer.BYTES + Integer.BYTES + Integer.BYTES + Integer.BYTES +
                     Integer.BYTES);
             byteBuf.writeInt(errorLength);
-            byteBuf.writeBytes(responseHeader.getError() == null ? new byte[0]: responseHeader.getError().getBytes(StandardCharsets.UTF_8));
+            if (errorLength > 0) {
+                byteBuf.writeBytes(responseHeader.getError().getBytes(StandardCharsets.UTF_8));
+            }
         } else {
             throw new Exception(String.format("Invalid header type: %s!", header.getClass().getCanonicalName()));
         }
@@ -0,0 +1,45 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.core.transport.shm;
+
+import java.io.File;
+import java.net.SocketAddress;
+
+/**
+ * 共享内存通信的地址：服务端和客户端约定的目录，客户端在目录中创建连接文件，服务端扫描目录接受连接
+ * <p>
+ * 对应的服务地址为 shm:///path。
+ *
+ * @author tomoncle
+ */
+public class ShmAddress extends SocketAddress {
+    private static final long serialVersionUID = 1L;
+    private final File directory;
+
+    public ShmAddress(String path) {
+        this.directory = new File(path).getAbsoluteFile();
+    }
+
+    /**
+     * @return 存放连接文件的目录
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public String toString() {
+        return "shm://" + directory.getPath();
+    }
+}
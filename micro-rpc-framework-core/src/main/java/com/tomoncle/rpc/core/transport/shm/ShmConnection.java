@@ -0,0 +1,149 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.core.transport.shm;
+
+import io.netty.util.internal.PlatformDependent;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * 一个共享内存连接：一个内存映射文件，包含控制区和两个环形缓冲区
+ * <p>
+ * 文件布局：
+ * <pre>
+ * 0     控制区（4096 字节）：魔数、版本、环形缓冲区容量、服务端已接受、客户端已关闭、服务端已关闭
+ * 4096  请求环形缓冲区（客户端写，服务端读）
+ * ...   响应环形缓冲区（服务端写，客户端读）
+ * </pre>
+ * 客户端先写好临时文件再改名为 *.ring，服务端只会看到完整初始化的文件。
+ *
+ * @author tomoncle
+ */
+final class ShmConnection {
+    static final String SUFFIX = ".ring";
+    private static final int MAGIC = 0x52504353;
+    private static final int VERSION = 1;
+    private static final int CONTROL_BYTES = 4096;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int ACCEPTED_OFFSET = 64;
+    private static final int CLIENT_CLOSED_OFFSET = 128;
+    private static final int SERVER_CLOSED_OFFSET = 192;
+
+    private final File file;
+    /**
+     * 持有映射的引用，映射的内存在它被回收之前一直有效
+     */
+    private final MappedByteBuffer buffer;
+    private final long address;
+    private final ShmRing requests;
+    private final ShmRing responses;
+
+    private ShmConnection(File file, MappedByteBuffer buffer, int ringCapacity) {
+        this.file = file;
+        this.buffer = buffer;
+        this.address = PlatformDependent.directBufferAddress(buffer);
+        this.requests = new ShmRing(address + CONTROL_BYTES, ringCapacity);
+        this.responses = new ShmRing(address + CONTROL_BYTES + ShmRing.HEADER_BYTES + ringCapacity, ringCapacity);
+    }
+
+    /**
+     * 客户端创建连接文件
+     *
+     * @param file         连接文件，以 {@link #SUFFIX} 结尾
+     * @param ringCapacity 环形缓冲区的容量，2 的幂
+     */
+    static ShmConnection create(File file, int ringCapacity) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        MappedByteBuffer buffer = map(tmp, size(ringCapacity));
+        buffer.putInt(VERSION_OFFSET, VERSION);
+        buffer.putInt(CAPACITY_OFFSET, ringCapacity);
+        buffer.putInt(MAGIC_OFFSET, MAGIC);
+        buffer.force();
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        return new ShmConnection(file, buffer, ringCapacity);
+    }
+
+    /**
+     * 服务端打开客户端创建的连接文件
+     */
+    static ShmConnection open(File file) throws IOException {
+        MappedByteBuffer buffer = map(file, 0L);
+        if (buffer.capacity() < CONTROL_BYTES || buffer.getInt(MAGIC_OFFSET) != MAGIC
+                || buffer.getInt(VERSION_OFFSET) != VERSION) {
+            throw new IOException("Invalid shared memory connection file: " + file);
+        }
+        int ringCapacity = buffer.getInt(CAPACITY_OFFSET);
+        if (buffer.capacity() != size(ringCapacity)) {
+            throw new IOException("Invalid shared memory connection file size: " + file);
+        }
+        return new ShmConnection(file, buffer, ringCapacity);
+    }
+
+    private static MappedByteBuffer map(File file, long size) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            if (size > 0) {
+                randomAccessFile.setLength(size);
+            }
+            return randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, randomAccessFile.length());
+        }
+    }
+
+    private static int size(int ringCapacity) {
+        return CONTROL_BYTES + 2 * (ShmRing.HEADER_BYTES + ringCapacity);
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    ShmRing getRequests() {
+        return requests;
+    }
+
+    ShmRing getResponses() {
+        return responses;
+    }
+
+    void accept() {
+        ShmRing.putLongVolatile(address + ACCEPTED_OFFSET, 1L);
+    }
+
+    boolean isAccepted() {
+        return ShmRing.getLongVolatile(address + ACCEPTED_OFFSET) != 0L;
+    }
+
+    void closeClient() {
+        ShmRing.putLongVolatile(address + CLIENT_CLOSED_OFFSET, 1L);
+    }
+
+    boolean isClientClosed() {
+        return ShmRing.getLongVolatile(address + CLIENT_CLOSED_OFFSET) != 0L;
+    }
+
+    void closeServer() {
+        ShmRing.putLongVolatile(address + SERVER_CLOSED_OFFSET, 1L);
+    }
+
+    boolean isServerClosed() {
+        return ShmRing.getLongVolatile(address + SERVER_CLOSED_OFFSET) != 0L;
+    }
+}
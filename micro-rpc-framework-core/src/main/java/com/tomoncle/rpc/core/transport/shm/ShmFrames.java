@@ -0,0 +1,150 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.core.transport.shm;
+
+import com.tomoncle.rpc.core.transport.command.Command;
+import com.tomoncle.rpc.core.transport.netty.codec.request.RequestDecoder;
+import com.tomoncle.rpc.core.transport.netty.codec.request.RequestEncoder;
+import com.tomoncle.rpc.core.transport.netty.codec.response.ResponseDecoder;
+import com.tomoncle.rpc.core.transport.netty.codec.response.ResponseEncoder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 在一对环形缓冲区上收发命令，编码格式和 Netty 传输完全相同（复用同样的编解码器）
+ * <p>
+ * 写入时先编码到复用的堆内存缓冲区，再复制到共享内存；读取时从共享内存复制出来再解码。
+ * 多个线程可以同时写（加锁），只能有一个线程读。
+ *
+ * @author tomoncle
+ */
+final class ShmFrames {
+    private final ShmRing inbound;
+    private final ShmRing outbound;
+    private final FrameDecoder decoder;
+    private final FrameEncoder encoder;
+    private final WaitStrategy waitStrategy;
+    private final ByteBuf encodeBuffer = Unpooled.buffer(256);
+    private final List<Object> decoded = new ArrayList<>(1);
+    private byte[] decodeBuffer = new byte[256];
+
+    private ShmFrames(ShmRing inbound, ShmRing outbound, FrameDecoder decoder, FrameEncoder encoder,
+                      WaitStrategy waitStrategy) {
+        this.inbound = inbound;
+        this.outbound = outbound;
+        this.decoder = decoder;
+        this.encoder = encoder;
+        this.waitStrategy = waitStrategy;
+    }
+
+    /**
+     * 客户端：写请求，读响应
+     */
+    static ShmFrames client(ShmConnection connection, WaitStrategy waitStrategy) {
+        return new ShmFrames(connection.getResponses(), connection.getRequests(),
+                new ShmResponseDecoder(), new ShmRequestEncoder(), waitStrategy);
+    }
+
+    /**
+     * 服务端：读请求，写响应
+     */
+    static ShmFrames server(ShmConnection connection, WaitStrategy waitStrategy) {
+        return new ShmFrames(connection.getRequests(), connection.getResponses(),
+                new ShmRequestDecoder(), new ShmResponseEncoder(), waitStrategy);
+    }
+
+    /**
+     * 写入一个命令，环形缓冲区满时等待对方读取
+     *
+     * @param command 命令
+     * @param closed  连接是否已经关闭，关闭后不再等待
+     */
+    synchronized void write(Command command, BooleanSupplier closed) throws Exception {
+        encodeBuffer.clear();
+        encoder.encode(command, encodeBuffer);
+        int idleCount = 0;
+        while (!outbound.offer(encodeBuffer.array(), encodeBuffer.readableBytes())) {
+            if (closed.getAsBoolean()) {
+                throw new IOException("Shared memory connection closed!");
+            }
+            waitStrategy.idle(idleCount++);
+        }
+    }
+
+    /**
+     * @return 读取到的命令，没有数据时返回 null
+     */
+    Command read() {
+        decoded.clear();
+        inbound.poll(this::decode);
+        return decoded.isEmpty() ? null : (Command) decoded.get(0);
+    }
+
+    private void decode(long address, int length) {
+        if (decodeBuffer.length < length) {
+            decodeBuffer = new byte[Math.max(length, decodeBuffer.length * 2)];
+        }
+        ShmRing.copy(address, decodeBuffer, length);
+        decoder.decode(Unpooled.wrappedBuffer(decodeBuffer, 0, length), decoded);
+    }
+
+    WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+
+    private interface FrameEncoder {
+        void encode(Command command, ByteBuf byteBuf) throws Exception;
+    }
+
+    private interface FrameDecoder {
+        void decode(ByteBuf byteBuf, List<Object> out);
+    }
+
+    /**
+     * 编解码器不使用 ChannelHandlerContext，这里传入 null
+     */
+    private static final class ShmRequestEncoder extends RequestEncoder implements FrameEncoder {
+        @Override
+        public void encode(Command command, ByteBuf byteBuf) throws Exception {
+            encode((ChannelHandlerContext) null, command, byteBuf);
+        }
+    }
+
+    private static final class ShmResponseEncoder extends ResponseEncoder implements FrameEncoder {
+        @Override
+        public void encode(Command command, ByteBuf byteBuf) throws Exception {
+            encode((ChannelHandlerContext) null, command, byteBuf);
+        }
+    }
+
+    private static final class ShmRequestDecoder extends RequestDecoder implements FrameDecoder {
+        @Override
+        public void decode(ByteBuf byteBuf, List<Object> out) {
+            decode(null, byteBuf, out);
+        }
+    }
+
+    private static final class ShmResponseDecoder extends ResponseDecoder implements FrameDecoder {
+        @Override
+        public void decode(ByteBuf byteBuf, List<Object> out) {
+            decode(null, byteBuf, out);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.core.transport.shm;
+
+import sun.misc.Unsafe;
+
+import java.lang.reflect.Field;
+import java.nio.ByteOrder;
+
+/**
+ * 内存映射文件中的单生产者、单消费者环形缓冲区
+ * <p>
+ * 内存布局：0 位置是消费者的读位置（head），64 位置是生产者的写位置（tail），各占一个缓存行，
+ * 128 位置开始是数据区，容量是 2 的幂。读写位置只增不减，对容量取模得到数据区中的偏移。
+ * <p>
+ * 每条记录就是一帧编码后的命令，帧的第一个 int 是帧的长度（见 CommandEncoder，网络字节序），
+ * 记录按 8 字节对齐；数据区末尾放不下一条记录时，写入长度为 -1 的填充标记，从数据区开头继续写。
+ * <p>
+ * 生产者先写数据，再用有序写（release）更新 tail；消费者用 volatile 读（acquire）读取 tail 之后再读数据，
+ * 读完之后更新 head 归还空间。两个进程映射同一个文件时同样适用。
+ * 同一时刻只能有一个线程写、一个线程读，多个线程写时由调用方加锁。
+ *
+ * @author tomoncle
+ */
+final class ShmRing {
+    static final int HEADER_BYTES = 128;
+    private static final int HEAD_OFFSET = 0;
+    private static final int TAIL_OFFSET = 64;
+    private static final int ALIGNMENT = Long.BYTES;
+    private static final int PADDING = -1;
+    private static final Unsafe UNSAFE = unsafe();
+    private static final long BYTE_ARRAY_OFFSET = UNSAFE.arrayBaseOffset(byte[].class);
+    private static final boolean BIG_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN;
+
+    private final long headAddress;
+    private final long tailAddress;
+    private final long dataAddress;
+    private final int capacity;
+    private final int mask;
+
+    /**
+     * @param address  环形缓冲区在映射内存中的起始地址
+     * @param capacity 数据区的容量，2 的幂
+     */
+    ShmRing(long address, int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of 2: " + capacity);
+        }
+        this.headAddress = address + HEAD_OFFSET;
+        this.tailAddress = address + TAIL_OFFSET;
+        this.dataAddress = address + HEADER_BYTES;
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * @return 数据区的容量
+     */
+    int capacity() {
+        return capacity;
+    }
+
+    /**
+     * 写入一条记录
+     *
+     * @param frame  编码后的帧
+     * @param length 帧的长度
+     * @return 空间不够时返回 false，需要等待消费者读取之后重试
+     */
+    boolean offer(byte[] frame, int length) {
+        int recordLength = align(length);
+        if (recordLength > capacity) {
+            throw new IllegalArgumentException("Frame too large: " + length + ", ring capacity: " + capacity);
+        }
+        long tail = UNSAFE.getLong(tailAddress);
+        long head = UNSAFE.getLongVolatile(null, headAddress);
+        int offset = (int) (tail & mask);
+        int toEnd = capacity - offset;
+        // 末尾放不下时需要先填充到末尾
+        int required = recordLength > toEnd ? toEnd + recordLength : recordLength;
+        if (tail + required - head > capacity) {
+            return false;
+        }
+        if (recordLength > toEnd) {
+            UNSAFE.putInt(dataAddress + offset, PADDING);
+            tail += toEnd;
+            offset = 0;
+        }
+        UNSAFE.copyMemory(frame, BYTE_ARRAY_OFFSET, null, dataAddress + offset, length);
+        UNSAFE.putOrderedLong(null, tailAddress, tail + recordLength);
+        return true;
+    }
+
+    /**
+     * 读取一条记录
+     *
+     * @param reader 读取记录的回调，参数是帧在映射内存中的地址和长度，回调返回之后空间就会被生产者复用
+     * @return 没有记录时返回 false
+     */
+    boolean poll(FrameReader reader) {
+        long head = UNSAFE.getLong(headAddress);
+        long tail = UNSAFE.getLongVolatile(null, tailAddress);
+        if (head == tail) {
+            return false;
+        }
+        int offset = (int) (head & mask);
+        int length = frameLength(dataAddress + offset);
+        if (length == PADDING) {
+            head += capacity - offset;
+            offset = 0;
+            length = frameLength(dataAddress);
+        }
+        reader.read(dataAddress + offset, length);
+        UNSAFE.putOrderedLong(null, headAddress, head + align(length));
+        return true;
+    }
+
+    /**
+     * 从映射内存复制到数组
+     */
+    static void copy(long address, byte[] destination, int length) {
+        UNSAFE.copyMemory(null, address, destination, BYTE_ARRAY_OFFSET, length);
+    }
+
+    static long getLongVolatile(long address) {
+        return UNSAFE.getLongVolatile(null, address);
+    }
+
+    static void putLongVolatile(long address, long value) {
+        UNSAFE.putLongVolatile(null, address, value);
+    }
+
+    /**
+     * 帧的长度是网络字节序（大端）写入的，填充标记 -1 在两种字节序下相同
+     */
+    private static int frameLength(long address) {
+        int length = UNSAFE.getInt(address);
+        return BIG_ENDIAN ? length : Integer.reverseBytes(length);
+    }
+
+    private static int align(int length) {
+        return (length + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+
+    private static Unsafe unsafe() {
+        try {
+            Field field = Unsafe.class.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            return (Unsafe) field.get(null);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * 读取映射内存中的一帧
+     */
+    interface FrameReader {
+        void read(long address, int length);
+    }
+}
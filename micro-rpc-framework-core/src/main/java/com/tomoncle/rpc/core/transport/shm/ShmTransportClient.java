@@ -0,0 +1,174 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.core.transport.shm;
+
+import com.tomoncle.rpc.core.transport.InProcessRequests;
+import com.tomoncle.rpc.core.transport.ResponseFuture;
+import com.tomoncle.rpc.core.transport.Transport;
+import com.tomoncle.rpc.core.transport.TransportClient;
+import com.tomoncle.rpc.core.transport.command.Command;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.SocketAddress;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 基于共享内存的客户端
+ * <p>
+ * 每个 Transport 是一个连接：在服务端的目录中创建一个内存映射文件，包含请求和响应两个环形缓冲区，
+ * 发送请求的线程把请求写入请求环形缓冲区，每个连接有一个读线程从响应环形缓冲区中读取响应。
+ * 环形缓冲区的容量用系统属性 micro.rpc.shm.ringBytes 设置（2 的幂，默认 1MB），
+ * 等待策略用 micro.rpc.shm.wait 设置：park（默认）或 spin。
+ *
+ * @author tomoncle
+ */
+public class ShmTransportClient implements TransportClient {
+    private static final Logger logger = LoggerFactory.getLogger(ShmTransportClient.class);
+    private static final int RING_BYTES = Integer.getInteger("micro.rpc.shm.ringBytes", 1 << 20);
+    private static final String PROCESS_ID = ManagementFactory.getRuntimeMXBean().getName().split("@")[0];
+    private static final AtomicInteger connectionIds = new AtomicInteger();
+    private final ThreadFactory threadFactory = new DefaultThreadFactory("rpc-shm-client", true);
+    private final InProcessRequests inProcessRequests = new InProcessRequests();
+    private final List<ShmTransport> transports = new CopyOnWriteArrayList<>();
+
+    @Override
+    public Transport createTransport(SocketAddress address, long connectionTimeout) throws InterruptedException, TimeoutException {
+        if (!(address instanceof ShmAddress)) {
+            throw new IllegalArgumentException("Unsupported address: " + address);
+        }
+        File file = new File(((ShmAddress) address).getDirectory(),
+                PROCESS_ID + "-" + connectionIds.incrementAndGet() + ShmConnection.SUFFIX);
+        ShmConnection connection;
+        try {
+            connection = ShmConnection.create(file, RING_BYTES);
+        } catch (IOException e) {
+            throw new IllegalStateException("Create shared memory connection failed: " + file, e);
+        }
+        // 等待服务端接受连接
+        long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(connectionTimeout);
+        while (!connection.isAccepted()) {
+            if (System.nanoTime() - deadlineNanos > 0) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+                throw new TimeoutException("Shared memory connection not accepted: " + file);
+            }
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        ShmTransport transport = new ShmTransport(connection, ShmFrames.client(connection, WaitStrategy.DEFAULT));
+        transports.add(transport);
+        threadFactory.newThread(transport::readLoop).start();
+        logger.info("建立共享内存连接: {}", file);
+        return transport;
+    }
+
+    @Override
+    public void close() {
+        for (ShmTransport transport : transports) {
+            transport.close();
+        }
+        transports.clear();
+        inProcessRequests.close();
+    }
+
+    /**
+     * 一个共享内存连接
+     */
+    private final class ShmTransport implements Transport {
+        private final ShmConnection connection;
+        private final ShmFrames frames;
+        private volatile boolean closed;
+
+        private ShmTransport(ShmConnection connection, ShmFrames frames) {
+            this.connection = connection;
+            this.frames = frames;
+        }
+
+        @Override
+        public CompletableFuture<Command> send(Command request) {
+            CompletableFuture<Command> completableFuture = new CompletableFuture<>();
+            try {
+                if (isClosed()) {
+                    throw new IOException("Shared memory connection closed: " + connection.getFile());
+                }
+                int requestId = request.getHeader().getRequestId();
+                inProcessRequests.put(new ResponseFuture(requestId, completableFuture,
+                        TimeUnit.MILLISECONDS.toNanos(request.getHeader().getTimeoutMillis())));
+                completableFuture.whenComplete((response, throwable) -> {
+                    if (completableFuture.isCancelled()) {
+                        // 调用方取消了请求，归还在途请求的许可，之后收到的响应直接丢弃
+                        inProcessRequests.remove(requestId);
+                    }
+                });
+                frames.write(request, this::isClosed);
+            } catch (Throwable t) {
+                inProcessRequests.remove(request.getHeader().getRequestId());
+                completableFuture.completeExceptionally(t);
+            }
+            return completableFuture;
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return !isClosed();
+        }
+
+        private boolean isClosed() {
+            return closed || connection.isServerClosed();
+        }
+
+        /**
+         * 读取响应，直到连接关闭
+         */
+        private void readLoop() {
+            int idleCount = 0;
+            while (!isClosed()) {
+                Command response = frames.read();
+                if (null == response) {
+                    frames.getWaitStrategy().idle(idleCount++);
+                    continue;
+                }
+                idleCount = 0;
+                ResponseFuture future = inProcessRequests.remove(response.getHeader().getRequestId());
+                if (null != future) {
+                    future.getFuture().complete(response);
+                } else {
+                    logger.warn("Drop response: {}", response);
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            connection.closeClient();
+            //noinspection ResultOfMethodCallIgnored
+            connection.getFile().delete();
+        }
+    }
+}
@@ -0,0 +1,246 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.core.transport.shm;
+
+import com.tomoncle.rpc.api.RpcContext;
+import com.tomoncle.rpc.core.transport.AdmissionController;
+import com.tomoncle.rpc.core.transport.AsyncRequestHandler;
+import com.tomoncle.rpc.core.transport.RequestHandler;
+import com.tomoncle.rpc.core.transport.RequestHandlerRegistry;
+import com.tomoncle.rpc.core.transport.TransportServer;
+import com.tomoncle.rpc.core.transport.command.Code;
+import com.tomoncle.rpc.core.transport.command.Command;
+import com.tomoncle.rpc.core.transport.command.ResponseHeader;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于共享内存的服务端，适合同一台机器上对延迟要求极高的调用方
+ * <p>
+ * 服务端监听一个目录（{@link ShmAddress}），接受线程定期扫描目录中客户端新建的连接文件，
+ * 每个连接由一个线程读取请求，同步的请求处理器直接在这个线程中执行，处理完把响应写回响应环形缓冲区，
+ * 没有系统调用，也没有线程切换；处理慢的请求会阻塞同一个连接上后面的请求。
+ * 异步的请求处理器在处理完成的线程中写回响应。
+ * <p>
+ * 请求带有截止时间时，处理期间截止时间保存在 {@link RpcContext} 中，处理完成时已经过期的响应不再发送。
+ * <p>
+ * 和 Netty 服务端一样，同步的请求先经过准入控制（{@link AdmissionController}），在途请求数超过上限时返回
+ * {@link Code#OVERLOADED}；请求直接在读取它的线程中处理，没有排队，不做排队时间的检查。
+ * 请求处理器抛出异常时返回 {@link Code#UNKNOWN_ERROR}，客户端不用等到超时。
+ * 方法的指标和访问日志由请求处理器记录，和 Netty 服务端相同。
+ *
+ * @author tomoncle
+ */
+public class ShmTransportServer implements TransportServer {
+    private static final Logger logger = LoggerFactory.getLogger(ShmTransportServer.class);
+    private static final long ACCEPT_INTERVAL_MILLIS = 10L;
+    private static final byte[] EMPTY = new byte[0];
+    private final Map<File, ShmConnection> connections = new ConcurrentHashMap<>();
+    private final ThreadFactory threadFactory = new DefaultThreadFactory("rpc-shm-server", true);
+    private final AdmissionController admissionController = new AdmissionController();
+    private volatile boolean running;
+    private RequestHandlerRegistry requestHandlerRegistry;
+    private File directory;
+    private Thread acceptor;
+
+    @Override
+    public void start(RequestHandlerRegistry requestHandlerRegistry, SocketAddress address) throws Exception {
+        if (!(address instanceof ShmAddress)) {
+            throw new IllegalArgumentException("Unsupported address: " + address);
+        }
+        File directory = ((ShmAddress) address).getDirectory();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create directory: " + directory);
+        }
+        // 删除上次没有正常退出时留下的连接文件
+        File[] stale = directory.listFiles((dir, name) -> name.endsWith(ShmConnection.SUFFIX));
+        if (null != stale) {
+            for (File file : stale) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+        this.requestHandlerRegistry = requestHandlerRegistry;
+        this.directory = directory;
+        this.running = true;
+        admissionController.registerMetrics();
+        acceptor = threadFactory.newThread(this::acceptLoop);
+        acceptor.start();
+        logger.info("TransportServer start success! bind address: {}", address);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (null != acceptor) {
+            acceptor.interrupt();
+        }
+        for (ShmConnection connection : connections.values()) {
+            connection.closeServer();
+            //noinspection ResultOfMethodCallIgnored
+            connection.getFile().delete();
+        }
+        connections.clear();
+    }
+
+    @Override
+    public AdmissionController getAdmissionController() {
+        return admissionController;
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            File[] files = directory.listFiles((dir, name) -> name.endsWith(ShmConnection.SUFFIX));
+            if (null != files) {
+                for (File file : files) {
+                    if (!connections.containsKey(file)) {
+                        accept(file);
+                    }
+                }
+            }
+            try {
+                TimeUnit.MILLISECONDS.sleep(ACCEPT_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void accept(File file) {
+        ShmConnection connection;
+        try {
+            connection = ShmConnection.open(file);
+        } catch (IOException e) {
+            logger.warn("Open shared memory connection failed: {}", file, e);
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+            return;
+        }
+        connections.put(file, connection);
+        threadFactory.newThread(() -> serve(connection)).start();
+        connection.accept();
+        logger.info("接受共享内存连接: {}", file);
+    }
+
+    /**
+     * 读取并处理一个连接上的请求，直到客户端或者服务端关闭
+     */
+    private void serve(ShmConnection connection) {
+        ShmFrames frames = ShmFrames.server(connection, WaitStrategy.DEFAULT);
+        int idleCount = 0;
+        while (running && !connection.isClientClosed()) {
+            Command request = frames.read();
+            if (null == request) {
+                frames.getWaitStrategy().idle(idleCount++);
+                continue;
+            }
+            idleCount = 0;
+            try {
+                handle(connection, frames, request);
+            } catch (Throwable t) {
+                logger.warn("Handle request failed!", t);
+            }
+        }
+        connections.remove(connection.getFile());
+        //noinspection ResultOfMethodCallIgnored
+        connection.getFile().delete();
+        logger.info("关闭共享内存连接: {}", connection.getFile());
+    }
+
+    private void handle(ShmConnection connection, ShmFrames frames, Command request) throws Exception {
+        RequestHandler handler = requestHandlerRegistry.get(request.getHeader().getType());
+        if (null == handler) {
+            logger.warn("No handler for request with type: {}!", request.getHeader().getType());
+            return;
+        }
+        int timeoutMillis = request.getHeader().getTimeoutMillis();
+        long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        if (handler instanceof AsyncRequestHandler) {
+            // 异步的请求处理器不经过准入控制，见 RequestInvocationHandler
+            CompletableFuture<Command> future;
+            try {
+                future = ((AsyncRequestHandler) handler).handleAsync(request);
+            } catch (Throwable t) {
+                future = new CompletableFuture<>();
+                future.completeExceptionally(t);
+            }
+            future.whenComplete((response, throwable) -> {
+                if (null == throwable && timeoutMillis > 0 && expired(deadlineNanos)) {
+                    admissionController.recordExpired();
+                    return;
+                }
+                if (null != throwable) {
+                    logger.warn("Handle request failed!", throwable);
+                }
+                try {
+                    frames.write(null == throwable ? response : error(request, throwable), connection::isClientClosed);
+                } catch (Exception e) {
+                    logger.warn("Write response failed!", e);
+                }
+            });
+            return;
+        }
+        if (!admissionController.tryAcquire()) {
+            frames.write(overloaded(request), connection::isClientClosed);
+            return;
+        }
+        try {
+            Command response;
+            try {
+                if (timeoutMillis > 0) {
+                    try (RpcContext.Scope ignored = RpcContext.withDeadline(deadlineNanos)) {
+                        response = handler.handle(request);
+                    }
+                } else {
+                    response = handler.handle(request);
+                }
+            } catch (Throwable t) {
+                logger.warn("Handle request failed!", t);
+                response = error(request, t);
+            }
+            if (timeoutMillis > 0 && expired(deadlineNanos)) {
+                // 客户端已经放弃了过期的请求
+                admissionController.recordExpired();
+            } else {
+                frames.write(response, connection::isClientClosed);
+            }
+        } finally {
+            admissionController.release();
+        }
+    }
+
+    private static boolean expired(long deadlineNanos) {
+        return System.nanoTime() - deadlineNanos >= 0;
+    }
+
+    private static Command overloaded(Command request) {
+        return new Command(new ResponseHeader.Builder().setHeader(request.getHeader())
+                .setCode(Code.OVERLOADED.getCode()).setError(Code.OVERLOADED.getMessage()).build(), EMPTY);
+    }
+
+    private static Command error(Command request, Throwable t) {
+        return new Command(new ResponseHeader.Builder().setHeader(request.getHeader())
+                .setCode(Code.UNKNOWN_ERROR.getCode()).setError(t.getMessage()).build(), EMPTY);
+    }
+}
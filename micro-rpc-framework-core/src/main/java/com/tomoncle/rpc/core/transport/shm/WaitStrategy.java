@@ -0,0 +1,62 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.core.transport.shm;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 读线程没有数据可读、写线程等待空间时的等待策略，用系统属性 micro.rpc.shm.wait 设置
+ *
+ * @author tomoncle
+ */
+enum WaitStrategy {
+    /**
+     * 忙等，延迟最低，每个连接的读线程一直占用一个 CPU；
+     * 只适合 CPU 核心比读写线程多的机器，核心不够时忙等的线程会抢走对端的 CPU，延迟反而大幅上升
+     */
+    SPIN {
+        @Override
+        void idle(int idleCount) {
+        }
+    },
+    /**
+     * 先忙等一会儿，再让出 CPU，最后每次休眠 {@link #PARK_NANOS} 纳秒，空闲时几乎不占用 CPU
+     */
+    PARK {
+        @Override
+        void idle(int idleCount) {
+            if (idleCount < SPIN_TRIES) {
+                return;
+            }
+            if (idleCount < SPIN_TRIES + YIELD_TRIES) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+        }
+    };
+
+    private static final int SPIN_TRIES = 1000;
+    private static final int YIELD_TRIES = 100;
+    private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    static final WaitStrategy DEFAULT = valueOf(System.getProperty("micro.rpc.shm.wait", "park").toUpperCase(Locale.ROOT));
+
+    /**
+     * @param idleCount 连续空闲的次数，有数据时重新从 0 开始
+     */
+    abstract void idle(int idleCount);
+}
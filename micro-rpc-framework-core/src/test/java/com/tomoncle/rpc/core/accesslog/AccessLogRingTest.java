@@ -0,0 +1,103 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.core.accesslog;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 访问日志缓冲区满时丢弃记录，取出记录后归还槽位
+ *
+ * @author tomoncle
+ */
+public class AccessLogRingTest {
+
+    @Test
+    public void rejectWhenFull() {
+        AccessLogRing ring = new AccessLogRing(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(offer(ring, i));
+        }
+        assertFalse(offer(ring, 4));
+
+        // 取出一条之后空出一个槽位
+        assertEquals(1, drain(ring, 1).size());
+        assertTrue(offer(ring, 4));
+        assertFalse(offer(ring, 5));
+    }
+
+    @Test
+    public void drainInOrder() {
+        AccessLogRing ring = new AccessLogRing(4);
+        List<Integer> drained = new ArrayList<>();
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 3; i++) {
+                assertTrue(offer(ring, round * 3 + i));
+            }
+            drained.addAll(drain(ring, Integer.MAX_VALUE));
+        }
+        for (int i = 0; i < drained.size(); i++) {
+            assertEquals(Integer.valueOf(i), drained.get(i));
+        }
+        assertEquals(9, drained.size());
+        assertFalse(ring.poll(slot -> {
+            throw new AssertionError("Ring should be empty");
+        }));
+    }
+
+    @Test
+    public void clearReferencesAfterPoll() {
+        AccessLogRing ring = new AccessLogRing(2);
+        assertTrue(offer(ring, 1));
+        AccessLogRing.Slot[] polled = new AccessLogRing.Slot[1];
+        assertTrue(ring.poll(slot -> {
+            assertEquals("com.x.HelloService", slot.serviceName);
+            polled[0] = slot;
+        }));
+        // 槽位不再引用记录中的字符串
+        assertNull(polled[0].serviceName);
+        assertNull(polled[0].methodName);
+        assertNull(polled[0].outcome);
+    }
+
+    @Test
+    public void roundCapacityUpToPowerOfTwo() {
+        AccessLogRing ring = new AccessLogRing(5);
+        int accepted = 0;
+        while (offer(ring, accepted)) {
+            accepted++;
+        }
+        assertEquals(8, accepted);
+    }
+
+    private static boolean offer(AccessLogRing ring, int requestId) {
+        return ring.offer(System.currentTimeMillis(), true, "com.x.HelloService", "sayHello", requestId,
+                "SUCCESS", 1000L, 10L, 20L);
+    }
+
+    private static List<Integer> drain(AccessLogRing ring, int max) {
+        List<Integer> requestIds = new ArrayList<>();
+        while (requestIds.size() < max && ring.poll(slot -> requestIds.add(slot.requestId))) {
+            // 取出记录
+        }
+        return requestIds;
+    }
+}
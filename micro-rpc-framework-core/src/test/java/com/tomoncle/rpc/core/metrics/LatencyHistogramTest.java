@@ -0,0 +1,66 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.core.metrics;
+
+import org.junit.Test;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 直方图的桶序号和桶上界互相转换
+ *
+ * @author tomoncle
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void highestValueMapsBackToSameBucket() {
+        for (int index = 0; index < LatencyHistogram.BUCKETS; index++) {
+            assertEquals(index, LatencyHistogram.indexOf(LatencyHistogram.highestValueOf(index)));
+        }
+        assertEquals(LatencyHistogram.MAX_VALUE_NANOS, LatencyHistogram.highestValueOf(LatencyHistogram.BUCKETS - 1));
+    }
+
+    @Test
+    public void bucketsAreContiguous() {
+        for (int index = 1; index < LatencyHistogram.BUCKETS; index++) {
+            // 每个桶从上一个桶的上界加一开始
+            assertEquals(index, LatencyHistogram.indexOf(LatencyHistogram.highestValueOf(index - 1) + 1));
+        }
+    }
+
+    @Test
+    public void relativeErrorWithinSubBucket() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < 100_000; i++) {
+            long value = random.nextLong(LatencyHistogram.MAX_VALUE_NANOS + 1);
+            int index = LatencyHistogram.indexOf(value);
+            long highest = LatencyHistogram.highestValueOf(index);
+            assertTrue(value + " > " + highest, value <= highest);
+            assertTrue(index == 0 || LatencyHistogram.highestValueOf(index - 1) < value);
+            assertTrue(value + " in bucket " + highest, highest - value <= value / 16);
+        }
+    }
+
+    @Test
+    public void smallValuesHaveOwnBuckets() {
+        for (int value = 0; value < LatencyHistogram.SUB_BUCKETS; value++) {
+            assertEquals(value, LatencyHistogram.indexOf(value));
+            assertEquals(value, LatencyHistogram.highestValueOf(value));
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.core.nameservice;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 租约表的续约、过期回收和槽位复用
+ *
+ * @author tomoncle
+ */
+public class LeaseTableTest {
+    private static final long TTL_MILLIS = 3000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void expireLeasesNotRenewed() throws Exception {
+        LeaseTable leases = new LeaseTable(folder.newFile("registry.leases"));
+        try {
+            int first = leases.claim(1L, 1000L);
+            int second = leases.claim(2L, 1000L);
+            assertEquals(0, first);
+            assertEquals(1, second);
+            assertEquals(new HashSet<>(Arrays.asList(1L, 2L)), leases.reap(1000L + TTL_MILLIS, TTL_MILLIS));
+
+            assertTrue(leases.renew(second, 2L, 5000L));
+            assertEquals(Collections.singleton(2L), leases.reap(6000L, TTL_MILLIS));
+            // 被回收的租约不能再续约，槽位可以被新的租约占用
+            assertFalse(leases.renew(first, 1L, 6000L));
+            assertEquals(first, leases.claim(3L, 6000L));
+        } finally {
+            leases.close();
+        }
+    }
+
+    @Test
+    public void releaseOnlyOwnSlot() throws Exception {
+        LeaseTable leases = new LeaseTable(folder.newFile("registry.leases"));
+        try {
+            int slot = leases.claim(1L, 1000L);
+            leases.release(slot, 2L);
+            assertTrue(leases.renew(slot, 1L, 2000L));
+            leases.release(slot, 1L);
+            assertFalse(leases.renew(slot, 1L, 2000L));
+            assertTrue(leases.reap(2000L, TTL_MILLIS).isEmpty());
+        } finally {
+            leases.close();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.core.nameservice;
+
+import com.tomoncle.rpc.core.serialize.SerializeSupport;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 注册日志的追加、压缩和旧格式文件的转换
+ *
+ * @author tomoncle
+ */
+public class RegistryLogTest {
+    private static final String SERVICE = "com.tomoncle.rpc.HelloService";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void appendRegisterAndDeregister() throws Exception {
+        File file = folder.newFile("registry");
+        RegistryLog log = RegistryLog.open(file);
+        try {
+            URI a = URI.create("rpc://a:1");
+            URI b = URI.create("rpc://b:1");
+            log.register(SERVICE, a);
+            log.register(SERVICE, b);
+            // 重复注册不写入新的记录
+            log.register(SERVICE, a);
+            assertEquals(Arrays.asList(a, b), log.lookup(SERVICE));
+            assertEquals(2L, readLong(file, 24));
+
+            log.deregister(SERVICE, a);
+            assertEquals(Collections.singletonList(b), log.lookup(SERVICE));
+            log.deregister(SERVICE, b);
+            assertTrue(log.lookup(SERVICE).isEmpty());
+            assertTrue(log.current().isEmpty());
+        } finally {
+            log.close();
+        }
+    }
+
+    @Test
+    public void compactAndReplay() throws Exception {
+        File file = folder.newFile("registry");
+        URI live = URI.create("rpc://live:1");
+        RegistryLog log = RegistryLog.open(file);
+        try {
+            log.register(SERVICE, live);
+            for (int i = 0; i < 600; i++) {
+                URI uri = URI.create("rpc://dead:" + i);
+                log.register(SERVICE, uri);
+                log.deregister(SERVICE, uri);
+            }
+            assertEquals(Collections.singletonList(live), log.lookup(SERVICE));
+        } finally {
+            log.close();
+        }
+        // 注销的记录超过阈值后压缩过一次，generation 增加，文件中只剩下压缩之后追加的记录
+        assertEquals(1L, readLong(file, 8));
+        assertTrue(readLong(file, 24) < 600L);
+
+        // 重新打开时从文件重放
+        log = RegistryLog.open(file);
+        try {
+            assertEquals(Collections.singletonList(live), log.lookup(SERVICE));
+        } finally {
+            log.close();
+        }
+    }
+
+    @Test
+    public void convertLegacyFile() throws Exception {
+        File file = folder.newFile("registry");
+        Metadata metadata = new Metadata();
+        metadata.put(SERVICE, Arrays.asList(URI.create("rpc://a:1"), URI.create("rpc://b:1")));
+        Files.write(file.toPath(), SerializeSupport.serialize(metadata));
+
+        RegistryLog log = RegistryLog.open(file);
+        try {
+            assertEquals(Arrays.asList(URI.create("rpc://a:1"), URI.create("rpc://b:1")), log.lookup(SERVICE));
+            // 转换后的文件是日志格式，可以继续追加
+            log.register(SERVICE, URI.create("rpc://c:1"));
+            assertEquals(3, log.lookup(SERVICE).size());
+        } finally {
+            log.close();
+        }
+        assertEquals(0x4D525247, readInt(file, 0));
+    }
+
+    private static long readLong(File file, long position) throws Exception {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(position);
+            return raf.readLong();
+        }
+    }
+
+    private static int readInt(File file, long position) throws Exception {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(position);
+            return raf.readInt();
+        }
+    }
+}
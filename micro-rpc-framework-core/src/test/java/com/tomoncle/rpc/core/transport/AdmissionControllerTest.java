@@ -0,0 +1,99 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.core.transport;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 准入控制的在途请求数上限和 CoDel 的状态转换，使用默认参数：目标 5 毫秒，时间窗口 100 毫秒
+ *
+ * @author tomoncle
+ */
+public class AdmissionControllerTest {
+    private final AtomicLong now = new AtomicLong();
+    private final AdmissionController controller = new AdmissionController(now::get);
+
+    @Test
+    public void rejectOverMaxInFlight() {
+        for (int i = 0; i < 1024; i++) {
+            assertTrue(controller.tryAcquire());
+        }
+        assertFalse(controller.tryAcquire());
+        assertEquals(1024, controller.getInFlight());
+        assertEquals(1L, controller.getRejectedCount());
+
+        controller.release();
+        assertTrue(controller.tryAcquire());
+        assertEquals(1025L, controller.getAdmittedCount());
+    }
+
+    @Test
+    public void dropOnlyVeryLongSojournWhenNotOverloaded() {
+        assertFalse(controller.shouldDrop(millis(50)));
+        assertTrue(controller.shouldDrop(millis(150)));
+        assertEquals(1L, controller.getDroppedCount());
+    }
+
+    @Test
+    public void enterAndLeaveOverloadedState() {
+        // 整个时间窗口内最短的排队时间都超过了目标值
+        assertFalse(controller.shouldDrop(millis(20)));
+        assertFalse(controller.shouldDrop(millis(50)));
+        advance(150);
+
+        // 进入过载状态，超过目标值的请求都被丢弃
+        assertTrue(controller.shouldDrop(millis(10)));
+        assertFalse(controller.shouldDrop(millis(1)));
+        advance(101);
+
+        // 上一个时间窗口中队列排空过，退出过载状态
+        assertFalse(controller.shouldDrop(millis(10)));
+        assertEquals(1L, controller.getDroppedCount());
+    }
+
+    @Test
+    public void stayOverloadedWhileQueueNeverDrains() {
+        assertFalse(controller.shouldDrop(millis(20)));
+        for (int i = 0; i < 5; i++) {
+            advance(101);
+            assertTrue(controller.shouldDrop(millis(20)));
+        }
+    }
+
+    @Test
+    public void leaveOverloadedStateAfterIdleWindow() {
+        assertFalse(controller.shouldDrop(millis(20)));
+        advance(150);
+        assertTrue(controller.shouldDrop(millis(20)));
+
+        // 之后一个完整的时间窗口内没有请求，说明队列是空的
+        advance(300);
+        assertFalse(controller.shouldDrop(millis(20)));
+    }
+
+    private void advance(long millis) {
+        now.addAndGet(millis(millis));
+    }
+
+    private static long millis(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tomoncle.rpc.core.transport.shm;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import sun.misc.Unsafe;
+
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 环形缓冲区的回绕和末尾填充
+ *
+ * @author tomoncle
+ */
+public class ShmRingTest {
+    private static final int CAPACITY = 64;
+    private static final Unsafe UNSAFE = unsafe();
+
+    private long address;
+    private ShmRing ring;
+
+    @Before
+    public void setUp() {
+        address = UNSAFE.allocateMemory(ShmRing.HEADER_BYTES + CAPACITY);
+        UNSAFE.setMemory(address, ShmRing.HEADER_BYTES + CAPACITY, (byte) 0);
+        ring = new ShmRing(address, CAPACITY);
+    }
+
+    @After
+    public void tearDown() {
+        UNSAFE.freeMemory(address);
+    }
+
+    @Test
+    public void offerAndPollInOrder() {
+        byte[] a = frame(12, (byte) 1);
+        byte[] b = frame(20, (byte) 2);
+        assertTrue(ring.offer(a, a.length));
+        assertTrue(ring.offer(b, b.length));
+        assertArrayEquals(a, poll());
+        assertArrayEquals(b, poll());
+        assertFalse(ring.poll((frameAddress, length) -> {
+            throw new AssertionError("Ring should be empty");
+        }));
+    }
+
+    @Test
+    public void wrapWithPadding() {
+        byte[] a = frame(24, (byte) 1);
+        byte[] b = frame(24, (byte) 2);
+        byte[] c = frame(24, (byte) 3);
+        assertTrue(ring.offer(a, a.length));
+        assertTrue(ring.offer(b, b.length));
+        // 末尾只剩 16 字节，需要填充到末尾再从开头写，加上填充之后空间不够
+        assertFalse(ring.offer(c, c.length));
+
+        assertArrayEquals(a, poll());
+        assertTrue(ring.offer(c, c.length));
+        assertArrayEquals(b, poll());
+        // 跳过填充，从数据区开头读取
+        assertArrayEquals(c, poll());
+        assertFalse(ring.poll((frameAddress, length) -> {
+            throw new AssertionError("Ring should be empty");
+        }));
+    }
+
+    @Test
+    public void wrapManyTimes() {
+        for (int i = 0; i < 100; i++) {
+            byte[] frame = frame(8 + i % 20, (byte) i);
+            assertTrue(ring.offer(frame, frame.length));
+            assertArrayEquals(frame, poll());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectFrameLargerThanCapacity() {
+        byte[] frame = frame(CAPACITY + 1, (byte) 0);
+        ring.offer(frame, frame.length);
+    }
+
+    /**
+     * @return 长度为 length 的帧，第一个 int 是网络字节序的帧长度，其余字节都是 fill
+     */
+    private static byte[] frame(int length, byte fill) {
+        byte[] frame = new byte[length];
+        for (int i = Integer.BYTES; i < length; i++) {
+            frame[i] = fill;
+        }
+        ByteBuffer.wrap(frame).putInt(0, length);
+        return frame;
+    }
+
+    private byte[] poll() {
+        byte[][] result = new byte[1][];
+        assertTrue(ring.poll((frameAddress, length) -> {
+            result[0] = new byte[length];
+            ShmRing.copy(frameAddress, result[0], length);
+        }));
+        return result[0];
+    }
+
+    private static Unsafe unsafe() {
+        try {
+            Field field = Unsafe.class.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            return (Unsafe) field.get(null);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+}
@@ -28,7 +28,8 @@ public class ClientApplication {
         AtomicInteger size = new AtomicInteger(1);
         List<Thread> threadList = new ArrayList<>();
         MicroRpcService microRpcService = ServiceLoadSupport.load(MicroRpcService.class);
-        MicroNameService microNameService = microRpcService.getNameService(file.toURI());
+        MicroNameService microNameService = microRpcService.getNameService(
+                args.length > 0 ? URI.create(args[0]) : file.toURI());
         assert microNameService != null;
         URI uri = microNameService.lookupService(serviceName);
         for (int i = 1; i <= 10; i++) {
@@ -0,0 +1,190 @@
+package com.tomoncle.rpc.sample.client;
+
+import com.tomoncle.rpc.api.MicroNameService;
+import com.tomoncle.rpc.api.MicroRpcService;
+import com.tomoncle.rpc.api.spi.ServiceLoadSupport;
+import com.tomoncle.rpc.sample.service.HelloService;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 开环（open-loop）压测工具：按固定的速率发送请求，不管之前的请求有没有返回
+ * <p>
+ * 闭环压测（每个线程等上一个请求返回再发下一个）在服务端变慢时会自动降低发送速率，
+ * 慢请求期间本该发出的请求没有发出，也就没有被统计，结果会严重低估高分位的响应时间（coordinated omission）。
+ * 这里每个请求都有一个计划的发送时间（开始时间 + 序号 / 速率），响应时间从计划的发送时间开始计算，
+ * 请求因为工作线程不够、连接的在途请求达到上限而排队的时间都计入响应时间。
+ * 同时也统计从实际发送开始计算的响应时间（服务时间），两者差距越大，说明排队越严重，已经超过了服务的容量。
+ * <p>
+ * 每秒输出一次这一秒的吞吐量和响应时间分位数，结束时输出汇总报告和完整的分位数分布（HdrHistogram 格式，单位微秒），
+ * 报告直接输出到标准输出，不受日志配置的影响。
+ * <p>
+ * 压测开始前先预热（{@link MicroRpcService#warmUp}）：建立连接、生成 stub，并发送 {@link #WARM_UP_CALLS} 次调用，
+ * 第一秒的结果不包含建立连接、编译 stub 和 JIT 编译的时间。
+ * <p>
+ * 用法: LoadGenerator [注册中心 URI] [每秒请求数, 默认 1000] [持续秒数, 默认 30] [连接数, 默认 1]
+ * [请求大小（字节）, 默认 64] [工作线程数, 默认 连接数 * 10]
+ *
+ * @author tomoncle
+ */
+public class LoadGenerator {
+    private static final Logger logger = LoggerFactory.getLogger(LoadGenerator.class);
+    private static final long NANOS_PER_MICRO = TimeUnit.MICROSECONDS.toNanos(1);
+    private static final int WARM_UP_CALLS = 2000;
+
+    private final Recorder corrected = new Recorder(3);
+    private final Recorder uncorrected = new Recorder(3);
+    private final Histogram correctedTotal = new Histogram(3);
+    private final Histogram uncorrectedTotal = new Histogram(3);
+    private final AtomicLong errors = new AtomicLong();
+    private Histogram correctedInterval;
+    private Histogram uncorrectedInterval;
+    private long lastErrors;
+    private int seconds;
+
+    public static void main(String[] args) throws Exception {
+        File file = new File(new File(System.getProperty("java.io.tmpdir")), "simple_rpc_name_service.data");
+        URI nameServiceUri = args.length > 0 ? URI.create(args[0]) : file.toURI();
+        int rate = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int duration = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+        int connections = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+        int payloadSize = args.length > 4 ? Integer.parseInt(args[4]) : 64;
+        int threads = args.length > 5 ? Integer.parseInt(args[5]) : connections * 10;
+
+        String serviceName = HelloService.class.getCanonicalName();
+        String payload = payload(payloadSize);
+        // 每个 MicroRpcService 有自己的 TransportClient，和服务端建立一个单独的连接
+        List<MicroRpcService> rpcServices = new ArrayList<>(connections);
+        HelloService[] stubs = new HelloService[connections];
+        try {
+            for (int i = 0; i < connections; i++) {
+                MicroRpcService rpcService = ServiceLoadSupport.load(MicroRpcService.class);
+                rpcServices.add(rpcService);
+                MicroNameService nameService = rpcService.getNameService(nameServiceUri);
+                rpcService.warmUp(nameService, HelloService.class, service -> service.sayHello(payload), WARM_UP_CALLS);
+                URI uri = nameService.lookupService(serviceName);
+                if (null == uri) {
+                    throw new IllegalStateException("No provider of " + serviceName + "!");
+                }
+                stubs[i] = rpcService.getRemoteService(uri, HelloService.class);
+            }
+            System.out.printf("开始压测: %s, 速率: %d/s, 持续: %ds, 连接数: %d, 请求大小: %dB, 工作线程数: %d%n",
+                    serviceName, rate, duration, connections, payloadSize, threads);
+            new LoadGenerator().run(stubs, payload, rate, duration, threads);
+        } finally {
+            for (MicroRpcService rpcService : rpcServices) {
+                rpcService.close();
+            }
+        }
+    }
+
+    private void run(HelloService[] stubs, String payload, int rate, int duration, int threads)
+            throws InterruptedException {
+        ExecutorService workers = Executors.newFixedThreadPool(threads, daemon("load-worker"));
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(daemon("load-reporter"));
+        reporter.scheduleAtFixedRate(this::report, 1, 1, TimeUnit.SECONDS);
+
+        long startNanos = System.nanoTime();
+        long total = (long) rate * duration;
+        for (long i = 0; i < total; i++) {
+            long intendedNanos = startNanos + (long) (i * (double) TimeUnit.SECONDS.toNanos(1) / rate);
+            long delay;
+            while ((delay = intendedNanos - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(delay);
+            }
+            HelloService stub = stubs[(int) (i % stubs.length)];
+            // 工作线程都在忙时请求在队列中等待，等待的时间也计入响应时间
+            workers.execute(() -> call(stub, payload, intendedNanos));
+        }
+        long sentNanos = System.nanoTime() - startNanos;
+        workers.shutdown();
+        if (!workers.awaitTermination(60, TimeUnit.SECONDS)) {
+            logger.warn("等待未完成的请求超时，放弃剩余的请求");
+            workers.shutdownNow();
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+        reporter.shutdown();
+        reporter.awaitTermination(5, TimeUnit.SECONDS);
+        report();
+        summary(rate, total, sentNanos, elapsedNanos);
+    }
+
+    private void call(HelloService stub, String payload, long intendedNanos) {
+        long startNanos = System.nanoTime();
+        try {
+            stub.sayHello(payload);
+        } catch (Throwable t) {
+            if (errors.getAndIncrement() == 0) {
+                logger.warn("请求失败: ", t);
+            }
+        } finally {
+            long endNanos = System.nanoTime();
+            corrected.recordValue(endNanos - intendedNanos);
+            uncorrected.recordValue(endNanos - startNanos);
+        }
+    }
+
+    /**
+     * 输出上一秒的吞吐量和响应时间，并累加到汇总的直方图中
+     */
+    private synchronized void report() {
+        correctedInterval = corrected.getIntervalHistogram(correctedInterval);
+        uncorrectedInterval = uncorrected.getIntervalHistogram(uncorrectedInterval);
+        correctedTotal.add(correctedInterval);
+        uncorrectedTotal.add(uncorrectedInterval);
+        long currentErrors = errors.get();
+        System.out.printf("[%ds] 完成: %d, 失败: %d, 响应时间(us) p50: %d, p99: %d, p99.9: %d, max: %d, 服务时间(us) p99: %d%n",
+                ++seconds, correctedInterval.getTotalCount(), currentErrors - lastErrors,
+                micros(correctedInterval, 50), micros(correctedInterval, 99), micros(correctedInterval, 99.9),
+                correctedInterval.getMaxValue() / NANOS_PER_MICRO, micros(uncorrectedInterval, 99));
+        lastErrors = currentErrors;
+    }
+
+    private synchronized void summary(int rate, long total, long sentNanos, long elapsedNanos) {
+        long completed = correctedTotal.getTotalCount();
+        System.out.printf("压测结束: 计划速率: %d/s, 实际发送速率: %d/s, 吞吐量: %d/s, 请求: %d, 完成: %d, 失败: %d%n",
+                rate, total * TimeUnit.SECONDS.toNanos(1) / Math.max(1L, sentNanos),
+                completed * TimeUnit.SECONDS.toNanos(1) / Math.max(1L, elapsedNanos),
+                total, completed, errors.get());
+        for (double percentile : new double[]{50, 90, 99, 99.9, 99.99, 100}) {
+            System.out.printf("p%s: 响应时间 %dus, 服务时间 %dus%n",
+                    percentile, micros(correctedTotal, percentile), micros(uncorrectedTotal, percentile));
+        }
+        System.out.println("响应时间分布（已修正 coordinated omission，单位微秒）:");
+        correctedTotal.outputPercentileDistribution(System.out, (double) NANOS_PER_MICRO);
+    }
+
+    private static long micros(Histogram histogram, double percentile) {
+        return histogram.getValueAtPercentile(percentile) / NANOS_PER_MICRO;
+    }
+
+    private static String payload(int size) {
+        char[] chars = new char[size];
+        Arrays.fill(chars, 'x');
+        return new String(chars);
+    }
+
+    private static ThreadFactory daemon(String name) {
+        AtomicLong index = new AtomicLong();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
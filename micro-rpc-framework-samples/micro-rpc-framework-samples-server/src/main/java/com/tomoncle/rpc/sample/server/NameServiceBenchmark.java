@@ -0,0 +1,129 @@
+package com.tomoncle.rpc.sample.server;
+
+import com.tomoncle.rpc.api.MicroNameService;
+import com.tomoncle.rpc.api.spi.ServiceLoadSupport;
+import com.tomoncle.rpc.sample.service.HelloService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 本地注册中心的压测：启动多个进程并发注册服务实例，统计总耗时和吞吐量
+ * <p>
+ * 子进程注册完成后输出一行 {@value #REGISTERED}，然后保持运行（后台任务继续续约），
+ * 直到主进程统计完注册数量、关闭子进程的标准输入；否则子进程退出后租约过期，注册信息可能在统计之前就被注销。
+ * <p>
+ * 用法: NameServiceBenchmark [进程数, 默认 4] [实例总数, 默认 10000]
+ *
+ * @author tomoncle
+ */
+public class NameServiceBenchmark {
+    private static final Logger logger = LoggerFactory.getLogger(NameServiceBenchmark.class);
+    private static final String CHILD = "child";
+    private static final String REGISTERED = "registered";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && CHILD.equals(args[0])) {
+            register(new File(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+            return;
+        }
+        int processes = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int instances = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+        File file = File.createTempFile("name_service_benchmark", ".data");
+        file.deleteOnExit();
+        new File(file.getPath() + ".leases").deleteOnExit();
+
+        logger.info("启动{}个进程，注册{}个服务实例...", processes, instances);
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<Process> children = new ArrayList<>(processes);
+        long start = System.nanoTime();
+        for (int i = 0; i < processes; i++) {
+            int count = instances / processes + (i < instances % processes ? 1 : 0);
+            ProcessBuilder builder = new ProcessBuilder(java,
+                    "-cp", System.getProperty("java.class.path"),
+                    NameServiceBenchmark.class.getName(), CHILD,
+                    file.getAbsolutePath(), String.valueOf(i), String.valueOf(count));
+            children.add(builder.redirectError(ProcessBuilder.Redirect.INHERIT).start());
+        }
+        for (Process child : children) {
+            awaitRegistered(child);
+        }
+        long elapsedNanos = System.nanoTime() - start;
+
+        MicroNameService nameService = nameService(file);
+        int registered = nameService.lookupAll(HelloService.class.getCanonicalName()).size();
+        nameService.close();
+        for (Process child : children) {
+            // 统计完成，通知子进程退出
+            child.getOutputStream().close();
+            if (child.waitFor() != 0) {
+                throw new IllegalStateException("Benchmark process failed: " + child.exitValue());
+            }
+        }
+        logger.info("注册完成: {}/{}, 总耗时: {}ms（包含进程启动）, 吞吐量: {}/s",
+                registered, instances, TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+                instances * TimeUnit.SECONDS.toNanos(1) / elapsedNanos);
+        if (registered != instances) {
+            throw new IllegalStateException("Lost registrations: " + (instances - registered));
+        }
+    }
+
+    /**
+     * 转发子进程的输出，直到它注册完成
+     */
+    private static void awaitRegistered(Process child) throws IOException, InterruptedException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(child.getInputStream(), StandardCharsets.UTF_8));
+        String line;
+        while (null != (line = reader.readLine())) {
+            if (REGISTERED.equals(line)) {
+                return;
+            }
+            System.out.println(line);
+        }
+        throw new IllegalStateException("Benchmark process exited before registering: " + child.waitFor());
+    }
+
+    /**
+     * 子进程：注册 count 个服务实例，然后等待主进程统计完成（标准输入关闭）
+     */
+    private static void register(File file, int process, int count) throws Exception {
+        MicroNameService nameService = nameService(file);
+        String serviceName = HelloService.class.getCanonicalName();
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            nameService.registerService(serviceName, URI.create("rpc://10." + process + "." + (i >> 8) + "." + (i & 0xFF) + ":9999"));
+        }
+        long elapsedNanos = System.nanoTime() - start;
+        logger.info("进程{}注册{}个服务实例, 耗时: {}ms, 平均: {}us",
+                process, count, TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+                count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(elapsedNanos / count));
+        System.out.println(REGISTERED);
+        System.out.flush();
+        while (System.in.read() >= 0) {
+            // 等待主进程关闭标准输入，期间后台任务继续续约
+        }
+        nameService.close();
+    }
+
+    private static MicroNameService nameService(File file) {
+        URI uri = file.toURI();
+        Collection<MicroNameService> nameServices = ServiceLoadSupport.loadAll(MicroNameService.class);
+        for (MicroNameService nameService : nameServices) {
+            if (nameService.supportedSchemes().contains(uri.getScheme())) {
+                nameService.connect(uri);
+                return nameService;
+            }
+        }
+        throw new IllegalStateException("No name service for " + uri);
+    }
+}
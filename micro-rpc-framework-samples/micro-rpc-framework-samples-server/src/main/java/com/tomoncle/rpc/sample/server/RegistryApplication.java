@@ -0,0 +1,33 @@
+package com.tomoncle.rpc.sample.server;
+
+import com.tomoncle.rpc.api.spi.ServiceLoadSupport;
+import com.tomoncle.rpc.core.transport.RequestHandlerRegistry;
+import com.tomoncle.rpc.core.transport.TransportServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 本地注册中心进程：一个只用来处理注册中心请求的 RPC 服务端
+ * <p>
+ * 用法: RegistryApplication [端口, 默认 9998]，
+ * 服务端和客户端使用 rpc://localhost:9998 作为注册中心地址即可订阅服务提供者的变化。
+ *
+ * @author tomoncle
+ */
+public class RegistryApplication {
+    private static final Logger logger = LoggerFactory.getLogger(RegistryApplication.class);
+
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 9998;
+        TransportServer server = ServiceLoadSupport.load(TransportServer.class);
+        server.start(RequestHandlerRegistry.getInstance(), port);
+        logger.info("注册中心已启动: rpc://localhost:{}，按任何键退出.", port);
+        try {
+            //noinspection ResultOfMethodCallIgnored
+            System.in.read();
+        } finally {
+            server.stop();
+            logger.info("Bye!");
+        }
+    }
+}
@@ -37,7 +37,8 @@ public class ServerApplication {
         logger.info("创建并启动RpcAccessPoint...");
         try (MicroRpcService microRpcService = ServiceLoadSupport.load(MicroRpcService.class);
              Closeable ignored = microRpcService.startServer()) {
-            MicroNameService microNameService = microRpcService.getNameService(file.toURI());
+            MicroNameService microNameService = microRpcService.getNameService(
+                    args.length > 0 ? URI.create(args[0]) : file.toURI());
             assert microNameService != null;
             logger.info("向RpcAccessPoint注册{}服务...", serviceName);
             URI uri = microRpcService.addServiceProvider(helloService, HelloService.class);